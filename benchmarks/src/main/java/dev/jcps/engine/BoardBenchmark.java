@@ -0,0 +1,171 @@
+package dev.jcps.engine;
+
+/*
+*****************************************************************************
+
+ Desdemona: The Java Othello game.
+ Copyright (C) 2001 Kenneth D. Huffman.
+
+ This program is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 2 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License (gnu.org/copyleft/gpl.html) for more details.
+
+ The author can be reached at www.huffmancoding.com.
+ *****************************************************************************
+ */
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class measures the board operations at the bottom of every search:
+ * finding the legal moves, finding and applying the flips of a move, and
+ * scoring a leaf with the corner evaluation or the pattern evaluator.
+ * Each invocation works through the same mix of opening, middle game and
+ * endgame positions.
+ *
+ * @author Ken Huffman
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BoardBenchmark {
+    /**
+     * the number of positions from each phase of the game
+     */
+    private static final int PER_PHASE = 64;
+    /**
+     * the number of positions in each invocation
+     */
+    private static final int POSITIONS = PER_PHASE * 3;
+
+    /**
+     * the pieces of the player to move in each position
+     */
+    private long[] itsPlayers;
+    /**
+     * the pieces of his opponent in each position
+     */
+    private long[] itsOpponents;
+    /**
+     * a legal move in each position
+     */
+    private int[] itsMoves;
+    /**
+     * the pattern evaluator, with all weights zero since only the speed
+     * matters
+     */
+    private final PatternEvaluator itsEvaluator = new PatternEvaluator();
+
+    /**
+     * Makes the positions, 10, 30 and 50 moves into the game.
+     */
+    @Setup
+    public void setUp() {
+        itsPlayers = new long[POSITIONS];
+        itsOpponents = new long[POSITIONS];
+        itsMoves = new int[POSITIONS];
+        int i = 0;
+        for (int plies = 10; plies <= 50; plies += 20) {
+            for (long[] position : Positions.make(PER_PHASE, plies)) {
+                itsPlayers[i] = position[0];
+                itsOpponents[i] = position[1];
+                long moves = BitBoard.moves(position[0], position[1]);
+                itsMoves[i] = moves != 0 ? Long.numberOfTrailingZeros(moves) : -1;
+                ++i;
+            }
+        }
+    }
+
+    /**
+     * Finds the legal moves of each position.
+     *
+     * @return a combination of the results, so none are optimized away
+     */
+    @Benchmark
+    @OperationsPerInvocation(POSITIONS)
+    public long moveGeneration() {
+        long result = 0;
+        for (int i = 0; i < POSITIONS; ++i) {
+            result += BitBoard.moves(itsPlayers[i], itsOpponents[i]);
+        }
+
+        return result;
+    }
+
+    /**
+     * Finds the flips of a move in each position and applies them to a
+     * copy of the position, as the search does for every move it tries.
+     *
+     * @return a combination of the results, so none are optimized away
+     */
+    @Benchmark
+    @OperationsPerInvocation(POSITIONS)
+    public long flipApplication() {
+        long result = 0;
+        for (int i = 0; i < POSITIONS; ++i) {
+            int sq = itsMoves[i];
+            if (sq >= 0) {
+                long flipped = BitBoard.flips(itsPlayers[i], itsOpponents[i], sq);
+                long me = itsPlayers[i] | flipped | (1L << sq);
+                long opponent = itsOpponents[i] & ~flipped;
+                result += me ^ opponent;
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Scores each position as a leaf of the search.
+     *
+     * @return a combination of the results, so none are optimized away
+     */
+    @Benchmark
+    @OperationsPerInvocation(POSITIONS)
+    public long leafEvaluation() {
+        long result = 0;
+        for (int i = 0; i < POSITIONS; ++i) {
+            result += Search.evaluate(itsPlayers[i], itsOpponents[i]);
+        }
+
+        return result;
+    }
+
+    /**
+     * Scores each position as a leaf of the search with the pattern
+     * evaluator.
+     *
+     * @return a combination of the results, so none are optimized away
+     */
+    @Benchmark
+    @OperationsPerInvocation(POSITIONS)
+    public long patternEvaluation() {
+        long result = 0;
+        for (int i = 0; i < POSITIONS; ++i) {
+            result += itsEvaluator.evaluate(itsPlayers[i], itsOpponents[i]);
+        }
+
+        return result;
+    }
+}
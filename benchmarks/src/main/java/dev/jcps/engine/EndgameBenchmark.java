@@ -0,0 +1,110 @@
+package dev.jcps.engine;
+
+/*
+*****************************************************************************
+
+ Desdemona: The Java Othello game.
+ Copyright (C) 2001 Kenneth D. Huffman.
+
+ This program is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 2 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License (gnu.org/copyleft/gpl.html) for more details.
+
+ The author can be reached at www.huffmancoding.com.
+ *****************************************************************************
+ */
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class measures exact solves of endgame positions with 14 empty
+ * squares, with and without a transposition table.  The table is cleared
+ * before every invocation so each one does the same work.
+ *
+ * @author Ken Huffman
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EndgameBenchmark {
+    /**
+     * the number of positions solved by each invocation
+     */
+    private static final int POSITIONS = 4;
+
+    /**
+     * the size of the transposition table, 0 for none
+     */
+    @Param({"0", "16"})
+    private int itsHashMegabytes;
+
+    /**
+     * the endgame positions
+     */
+    private long[][] itsPositions;
+    /**
+     * the table used by the solver, or null
+     */
+    private TranspositionTable itsTable;
+    /**
+     * the solver
+     */
+    private EndgameSolver itsSolver;
+
+    /**
+     * Makes the positions and the solver.
+     */
+    @Setup
+    public void setUp() {
+        itsPositions = Positions.make(POSITIONS, 46);
+        itsTable = itsHashMegabytes > 0 ? new TranspositionTable(itsHashMegabytes) : null;
+        itsSolver = new EndgameSolver(itsTable);
+    }
+
+    /**
+     * Forgets the results of the last invocation.
+     */
+    @Setup(Level.Invocation)
+    public void clear() {
+        if (itsTable != null) {
+            itsTable.clear();
+        }
+    }
+
+    /**
+     * Solves each position for the exact score.
+     *
+     * @return a combination of the results, so none are optimized away
+     */
+    @Benchmark
+    public long exactSolve() {
+        long result = 0;
+        for (long[] position : itsPositions) {
+            result += itsSolver.solve(position[0], position[1], true, Long.MAX_VALUE);
+        }
+
+        return result;
+    }
+}
@@ -0,0 +1,85 @@
+package dev.jcps.engine;
+
+/*
+*****************************************************************************
+
+ Desdemona: The Java Othello game.
+ Copyright (C) 2001 Kenneth D. Huffman.
+
+ This program is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 2 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License (gnu.org/copyleft/gpl.html) for more details.
+
+ The author can be reached at www.huffmancoding.com.
+ *****************************************************************************
+ */
+
+import java.util.SplittableRandom;
+
+/**
+ * This class makes the standard positions every benchmark runs on.  They
+ * come from random games with a fixed seed, so every run and every version
+ * of the engine sees the same positions.
+ *
+ * @author Ken Huffman
+ */
+final class Positions {
+    /**
+     * the seed of the random games
+     */
+    private static final long SEED = 20010101L;
+
+    /**
+     * Prevents instantiation, everything is static.
+     */
+    private Positions() {
+    }
+
+    /**
+     * Plays random games and keeps the position after a number of moves.
+     * Games that end too soon are replaced by new ones.
+     *
+     * @param count the number of positions
+     * @param plies the number of moves, including passes, to play
+     * @return pairs of masks, the player to move first
+     */
+    static long[][] make(int count, int plies) {
+        SplittableRandom random = new SplittableRandom(SEED + plies);
+        long[][] positions = new long[count][];
+        for (int i = 0; i < count; ) {
+            long me = BitBoard.START_PLAYER;
+            long opponent = BitBoard.START_OPPONENT;
+            int ply = 0;
+            for (; ply < plies; ++ply) {
+                long moves = BitBoard.moves(me, opponent);
+                if (moves == 0 && BitBoard.moves(opponent, me) == 0) {
+                    break;
+                }
+                if (moves != 0) {
+                    for (int skip = random.nextInt(BitBoard.count(moves)); skip > 0; --skip) {
+                        moves &= moves - 1;
+                    }
+                    int sq = Long.numberOfTrailingZeros(moves);
+                    long flipped = BitBoard.flips(me, opponent, sq);
+                    me |= flipped | (1L << sq);
+                    opponent &= ~flipped;
+                }
+
+                long swap = me;
+                me = opponent;
+                opponent = swap;
+            }
+            if (ply == plies && (BitBoard.moves(me, opponent) | BitBoard.moves(opponent, me)) != 0) {
+                positions[i++] = new long[]{me, opponent};
+            }
+        }
+
+        return positions;
+    }
+}
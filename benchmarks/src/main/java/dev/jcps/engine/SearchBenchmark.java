@@ -0,0 +1,132 @@
+package dev.jcps.engine;
+
+/*
+*****************************************************************************
+
+ Desdemona: The Java Othello game.
+ Copyright (C) 2001 Kenneth D. Huffman.
+
+ This program is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 2 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License (gnu.org/copyleft/gpl.html) for more details.
+
+ The author can be reached at www.huffmancoding.com.
+ *****************************************************************************
+ */
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class measures fixed depth searches of middle game positions, with
+ * and without a transposition table, in one thread or in a pool of threads
+ * splitting the work.  The table is cleared before every invocation so each
+ * one does the same work.  Every node is searched without allocating, so
+ * the gc profiler's bytes per operation are only those of the results.
+ *
+ * @author Ken Huffman
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SearchBenchmark {
+    /**
+     * the number of positions searched by each invocation
+     */
+    private static final int POSITIONS = 4;
+
+    /**
+     * how many plies to look ahead
+     */
+    @Param({"6", "8"})
+    private int itsLevel;
+    /**
+     * the size of the transposition table, 0 for none
+     */
+    @Param({"0", "16"})
+    private int itsHashMegabytes;
+    /**
+     * the number of search threads, 1 to search in the calling thread
+     */
+    @Param({"1", "2"})
+    private int itsThreads;
+
+    /**
+     * the middle game positions
+     */
+    private long[][] itsPositions;
+    /**
+     * the search threads, or null to search in the calling thread
+     */
+    private ForkJoinPool itsPool;
+    /**
+     * the search
+     */
+    private Engine itsEngine;
+
+    /**
+     * Makes the positions and the engine.
+     */
+    @Setup
+    public void setUp() {
+        itsPositions = Positions.make(POSITIONS, 24);
+        itsPool = itsThreads > 1 ? new ForkJoinPool(itsThreads) : null;
+        itsEngine = new Engine(itsHashMegabytes, itsPool);
+    }
+
+    /**
+     * Stops the search threads.
+     */
+    @TearDown
+    public void tearDown() {
+        if (itsPool != null) {
+            itsPool.shutdown();
+        }
+    }
+
+    /**
+     * Forgets the results of the last invocation.
+     */
+    @Setup(Level.Invocation)
+    public void clear() {
+        itsEngine.newGame();
+    }
+
+    /**
+     * Searches each middle game position to the look ahead level.
+     *
+     * @return a combination of the results, so none are optimized away
+     */
+    @Benchmark
+    public long fixedDepthSearch() {
+        long result = 0;
+        for (long[] position : itsPositions) {
+            result += itsEngine.search(position[0], position[1], itsLevel).getScore();
+        }
+
+        return result;
+    }
+}
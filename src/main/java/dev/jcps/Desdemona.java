@@ -23,17 +23,32 @@ package dev.jcps;
  *****************************************************************************
  */
 
+import dev.jcps.engine.BitBoard;
+import dev.jcps.engine.Engine;
+import dev.jcps.engine.EngineExecutor;
+import dev.jcps.engine.OpeningBook;
+import dev.jcps.engine.PatternEvaluator;
+import dev.jcps.engine.ProbCut;
+import dev.jcps.engine.TimeManager;
+import dev.jcps.engine.TranspositionTable;
+
 import javax.swing.*;
+import javax.swing.border.BevelBorder;
 import java.awt.*;
+import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
+import java.awt.event.MouseMotionListener;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
+import java.awt.image.BufferedImage;
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
 import java.beans.PropertyChangeSupport;
-import java.util.ArrayList;
-import java.util.LinkedList;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ForkJoinPool;
 
 /* Original source
 #define D define
@@ -87,6 +102,10 @@ public class Desdemona {
      * the background color of the board
      */
     private static final Color BOARD_COLOR = Color.green.darker().darker();
+    /**
+     * the time between frames of a disc turning over, in milliseconds
+     */
+    private static final int FRAME_MILLIS = 15;
     /**
      * the main board being displayed
      */
@@ -107,6 +126,34 @@ public class Desdemona {
      * the consecutive number of times a player has not been able to play
      */
     private int itsConsecutivePasses;
+    /**
+     * the threads shared by every game's computer search, or null to search
+     * only in the computer's own thread
+     */
+    private final ForkJoinPool itsSearchPool;
+    /**
+     * the thread every game's computer searches are started in
+     */
+    private final EngineExecutor itsEngineExecutor = new EngineExecutor(1);
+    /**
+     * the opening book shared by every game's computer, or null for none
+     */
+    private final OpeningBook itsBook;
+    /**
+     * the evaluator shared by every game's computer, or null for the corner
+     * evaluation
+     */
+    private final PatternEvaluator itsEvaluator;
+    /**
+     * the selective search parameters fitted for itsEvaluator, or null to
+     * search every position to the full level
+     */
+    private final ProbCut itsProbCut;
+    /**
+     * the transposition table kept in a file between runs and shared by
+     * every game's computer, or null for each computer to have its own
+     */
+    private final TranspositionTable itsCache;
 
     /**
      * Constructs an Othello game.
@@ -114,11 +161,119 @@ public class Desdemona {
      * @param exitOnClose whether the JVM should exit when the frame is closed.
      */
     public Desdemona(boolean exitOnClose) {
+        // the desdemona.threads system property limits the search threads
+        int threads = Integer.getInteger("desdemona.threads",
+                Runtime.getRuntime().availableProcessors());
+        itsSearchPool = threads > 1 ? new ForkJoinPool(threads) : null;
+        itsBook = openBook();
+        itsEvaluator = loadWeights();
+        itsProbCut = loadProbCut(itsEvaluator);
+        itsCache = mapCache(itsEvaluator);
         itsBoardView = new BoardView(exitOnClose);
 
         startGame();
     }
 
+    /**
+     * Maps the opening book named by the desdemona.book system property
+     * (default desdemona.book in the current directory), if there is one.
+     *
+     * @return the book, or null if there is none or it cannot be read
+     */
+    private static OpeningBook openBook() {
+        Path file = Path.of(System.getProperty("desdemona.book", "desdemona.book"));
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+
+        try {
+            return OpeningBook.open(file);
+        } catch (IOException e) {
+            System.err.println("Playing without the opening book: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Reads the evaluation weights named by the desdemona.weights system
+     * property (default desdemona.weights in the current directory), if
+     * there are any.
+     *
+     * @return the evaluator, or null if there are none or they cannot be
+     * read
+     */
+    private static PatternEvaluator loadWeights() {
+        Path file = Path.of(System.getProperty("desdemona.weights", "desdemona.weights"));
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+
+        try {
+            return PatternEvaluator.load(file);
+        } catch (IOException e) {
+            System.err.println("Playing with the corner evaluation: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Reads the selective search parameters named by the desdemona.probcut
+     * system property, if it is set and they were fitted for the evaluator.
+     * Unlike the book and the weights there is no default file: ProbCut
+     * has not yet been shown to play better in the same time, so it is
+     * only used when asked for.
+     *
+     * @param evaluator the evaluator the computer plays with
+     * @return the parameters, or null if none were asked for or they cannot
+     * be used
+     */
+    private static ProbCut loadProbCut(PatternEvaluator evaluator) {
+        String name = System.getProperty("desdemona.probcut");
+        if (name == null) {
+            return null;
+        }
+
+        Path file = Path.of(name);
+        try {
+            ProbCut probCut = ProbCut.load(file);
+            if (!probCut.fits(evaluator)) {
+                System.err.println("Searching without ProbCut: " + file
+                        + " was fitted for other weights");
+                return null;
+            }
+            return probCut;
+        } catch (IOException e) {
+            System.err.println("Searching without ProbCut: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Maps the transposition table file named by the desdemona.cache system
+     * property, if there is one, creating it with the size given by the
+     * desdemona.cacheMegabytes system property (default 64).
+     *
+     * @param evaluator the evaluator the computer plays with, whose scores
+     *                  the table holds
+     * @return the table, or null if there is no property or the file cannot
+     * be mapped
+     */
+    private static TranspositionTable mapCache(PatternEvaluator evaluator) {
+        String name = System.getProperty("desdemona.cache");
+        if (name == null) {
+            return null;
+        }
+
+        try {
+            return TranspositionTable.map(Path.of(name),
+                    Integer.getInteger("desdemona.cacheMegabytes", 64),
+                    evaluator != null ? evaluator.fingerprint() : 0);
+        } catch (IOException e) {
+            System.err.println("Playing without the cache: " + e.getMessage());
+            return null;
+        }
+    }
+
     /**
      * Plays a game and exits when the user is done.
      *
@@ -133,6 +288,7 @@ public class Desdemona {
      * the first player.
      */
     public void startGame() {
+        stopThinking();
         itsWhitePlayer = new HumanPlayer();
         itsBlackPlayer = new ComputerPlayer();
 
@@ -146,6 +302,39 @@ public class Desdemona {
         takeTurn();
     }
 
+    /**
+     * Cancels the computer's search or pondering, if it is thinking, so no
+     * CPU is spent on a game that is over and no move is played in it.
+     */
+    public void stopThinking() {
+        for (Player player : new Player[]{itsWhitePlayer, itsBlackPlayer}) {
+            if (player instanceof ComputerPlayer) {
+                ((ComputerPlayer) player).cancel();
+            }
+        }
+    }
+
+    /**
+     * Makes the computer play the best move it has found so far, if it is
+     * searching.
+     */
+    public void moveNow() {
+        if (itsCurrentPlayer instanceof ComputerPlayer) {
+            ((ComputerPlayer) itsCurrentPlayer).moveNow();
+        }
+    }
+
+    /**
+     * Starts the computer's search again at the level the user just chose,
+     * if it is searching.
+     */
+    public void levelChanged() {
+        if (itsCurrentPlayer instanceof ComputerPlayer
+                && ((ComputerPlayer) itsCurrentPlayer).cancel()) {
+            takeTurn();
+        }
+    }
+
     /**
      * Instructs the current player to take a turn.
      */
@@ -275,9 +464,9 @@ public class Desdemona {
      */
     public class HumanPlayer extends Player implements MouseListener {
         /**
-         * The list of possible moves that the player can take for this turn.
+         * the view of the board he is playing, while it is his turn
          */
-        private ArrayList<SquareView> itsPossibleMoves;
+        private BoardPanel itsBoardPanel;
 
         /**
          * Returns a gender-neutral name of the human player.
@@ -289,32 +478,25 @@ public class Desdemona {
         }
 
         /**
-         * Starts a human's turn by highlighting playable squares and turning on
-         * the mouse listener.
+         * Starts a human's turn by letting the playable squares highlight and
+         * turning on the mouse listener.
          *
          * @param bv the view of the board to be played.
          */
         public void requestMove(BoardView bv) {
-            itsPossibleMoves = new ArrayList<>();
-
             Board b = bv.getBoard();
-
-            // add a mouse listener to the playable squares
-            for (int x = 0; x < BOARD_SIZE; ++x) {
-                for (int y = 0; y < BOARD_SIZE; ++y) {
-                    if (b.flip(this, x, y, null)) {
-                        SquareView sv = bv.getSquareView(b.getSquare(x, y));
-                        sv.addMouseListener(this);
-                        itsPossibleMoves.add(sv); // remember for cleanup
-                    }
-                }
-            }
+            long moves = BitBoard.moves(b.getPieces(this), b.getPieces(getOpponent()));
 
             // display message if he can play, otherwise complete his turn now.
-            if (!itsPossibleMoves.isEmpty()) {
+            if (moves != 0) {
+                itsBoardPanel = bv.getBoardPanel();
+                itsBoardPanel.setPlayable(moves);
+                itsBoardPanel.addMouseListener(this);
                 bv.setStatus("Click on a square that highlights.");
+                if (getOpponent() instanceof ComputerPlayer) {
+                    ((ComputerPlayer) getOpponent()).ponder(bv);
+                }
             } else {
-                itsPossibleMoves = null;
                 turnPassed();
             }
         }
@@ -322,37 +504,36 @@ public class Desdemona {
         /**
          * Completes a human's turn when he clicks on a playable square.
          *
-         * @param e event describing the SquareView he clicked on.
+         * @param e event describing where on the board he clicked.
          */
         public void mouseClicked(MouseEvent e) {
-            // turn off the mouse listener to the squares we were listening to.
-            for (SquareView sv : itsPossibleMoves) {
-                sv.removeMouseListener(this);
-                sv.normal();
+            int sq = itsBoardPanel.squareAt(e.getX(), e.getY());
+            if (sq < 0 || (itsBoardPanel.getPlayable() & (1L << sq)) == 0) {
+                return; // not a square he can play
             }
-            itsPossibleMoves = null;
 
-            // find the square he clicked on, and complete the turn
-            Square s = ((SquareView) e.getComponent()).getSquare();
-            turnTaken(s.getX(), s.getY());
+            // turn off the mouse listener and the highlighting
+            itsBoardPanel.removeMouseListener(this);
+            itsBoardPanel.setPlayable(0);
+            itsBoardPanel = null;
+
+            turnTaken(BitBoard.x(sq), BitBoard.y(sq));
         }
 
         /**
-         * Turns on highlighting as the mouse enters the playable square.
+         * Does nothing, the board highlights the square under the mouse.
          *
-         * @param e event describing the SquareView he entered.
+         * @param e ignored.
          */
         public void mouseEntered(MouseEvent e) {
-            ((SquareView) e.getComponent()).highlight();
         }
 
         /**
-         * Turns off highlighting as the mouse exits the playable square.
+         * Does nothing, the board highlights the square under the mouse.
          *
-         * @param e event describing the SquareView he exited.
+         * @param e ignored.
          */
         public void mouseExited(MouseEvent e) {
-            ((SquareView) e.getComponent()).normal();
         }
 
         /**
@@ -376,52 +557,87 @@ public class Desdemona {
      * This class implements a player by ranking each possible move and choosing
      * the highest scoring one.  It determines the value of each possible move
      * by recursively determining and scoring each of its successive moves.
+     * The Search runs on a BitBoard copy of the position, and only the chosen
+     * move is played on the displayed Board.
      */
     public class ComputerPlayer extends Player {
         /**
-         * bigger than the best possible score
-         */
-        private final int BIG_SCORE = 9000;
-        /**
-         * The score for grabbing a corner
-         */
-        private final int CORNER_SCORE = 300;
-        /**
-         * The score for forcing the opponent to grab an inside corner
-         */
-        private final int INSIDE_SCORE = 50;
-        /**
-         * The best score possible
-         */
-        private final int PERFECT_SCORE = 8003;
-        /**
-         * X array indexes of the corner positions we want
+         * the engine that chooses the moves, with its transposition table
+         * kept for the whole game
          */
-        private final int[] cornerX = {0, BOARD_SIZE - 1, 0, BOARD_SIZE - 1};
+        private final Engine itsEngine;
         /**
-         * Y array indexes of the corner positions we want
+         * the thinking time left for the rest of the game
          */
-        private final int[] cornerY = {0, 0, BOARD_SIZE - 1, BOARD_SIZE - 1};
+        private volatile long itsClockMillis;
         /**
-         * X array indexes of the adjacent inner corner positions we don't want
+         * the search for the current move, or null if it is not searching
          */
-        private final int[] insideX = {1, BOARD_SIZE - 2, 1, BOARD_SIZE - 2};
+        private EngineExecutor.Task itsTask;
+
         /**
-         * Y array indexes of the adjacent inner corner positions we don't want
+         * Constructor creates the transposition table with the size given by
+         * the desdemona.hashMegabytes system property (default 16, 0 for no
+         * table), unless the game's table is kept in a file, searches with
+         * the game's search threads, and starts the game clock given by the
+         * desdemona.clockSeconds system property (default 120).  The endgame is solved from the number of empty
+         * squares given by the desdemona.endgameEmpties system property
+         * (default 18, 0 to never solve), for the exact score unless the
+         * desdemona.endgameMode system property is "wld" (win, loss or
+         * draw).  Positions in the opening book are played from the book,
+         * leaves are scored by the pattern weights if there are any, and
+         * positions are cut by ProbCut if parameters for them were asked for.
          */
-        private final int[] insideY = {1, 1, BOARD_SIZE - 2, BOARD_SIZE - 2};
+        public ComputerPlayer() {
+            int megabytes = Integer.getInteger("desdemona.hashMegabytes", 16);
+            itsEngine = itsCache != null ? new Engine(itsCache, itsSearchPool)
+                    : new Engine(megabytes, itsSearchPool);
+            itsEngine.setEndgame(Integer.getInteger("desdemona.endgameEmpties", 18),
+                    !"wld".equalsIgnoreCase(System.getProperty("desdemona.endgameMode")));
+            itsEngine.setBook(itsBook);
+            itsEngine.setEvaluator(itsEvaluator);
+            itsEngine.setProbCut(itsProbCut);
+            itsClockMillis = Integer.getInteger("desdemona.clockSeconds", 120) * 1000L;
+        }
+
         /**
-         * How deep the computer wants us to think
+         * Starts thinking about the replies to the opponent's moves while he
+         * decides, unless the desdemona.ponder system property is false.
+         *
+         * @param bv the view of the board the opponent is to play.
          */
-        private final LinkedList<Board> itsFreeBoards = new LinkedList<>();
+        public void ponder(BoardView bv) {
+            if (!"false".equalsIgnoreCase(System.getProperty("desdemona.ponder"))) {
+                Board b = bv.getBoard();
+                itsEngine.ponder(b.getPieces(getOpponent()), b.getPieces(this), bv.getLevel());
+            }
+        }
+
         /**
-         * How deep the computer wants us to think
+         * Stops thinking, on his own time or the opponent's, without
+         * playing a move.
+         *
+         * @return true, if it was searching for a move
          */
-        private int itsLookAheadLevel;
+        public boolean cancel() {
+            itsEngine.stopPondering();
+            if (itsTask == null) {
+                return false;
+            }
+
+            itsTask.cancel();
+            itsTask = null;
+            return true;
+        }
+
         /**
-         * move with the highest score
+         * Plays the best move found so far, if it is searching.
          */
-        private Square itsBestMove;
+        public void moveNow() {
+            if (itsTask != null) {
+                itsTask.moveNow();
+            }
+        }
 
         /**
          * Returns a gender-neutral name of the computer player.
@@ -433,8 +649,11 @@ public class Desdemona {
         }
 
         /**
-         * Starts a computer's turn by starting a background thread to determine
-         * the best move, then taking it in the AWT Event thread.
+         * Starts a computer's turn by starting a search in the engine thread
+         * to determine the best move, then taking it in the AWT Event thread
+         * unless the search was cancelled meanwhile.  The search deepens up
+         * to the level dictated by the user, but stops when its share of the
+         * game clock is used up or the user says to move now.
          *
          * @param bv the view of the board to be played.
          */
@@ -442,118 +661,39 @@ public class Desdemona {
             bv.setStatus("Computer is cogitating...");
 
             final Board b = bv.getBoard();
-            itsLookAheadLevel = bv.getLevel();
-
-            new Thread(() -> {
-                play(0, b, ComputerPlayer.this, -BIG_SCORE, BIG_SCORE);
-
-                // update the board view in the foreground thread
-                SwingUtilities.invokeLater(
-                        () -> {
-                            if (itsBestMove != null) {
-                                turnTaken(itsBestMove.getX(),
-                                        itsBestMove.getY());
-                            } else {
-                                turnPassed();
-                            }
-                        }
-                );
-            }).start();
-        }
-
-        /**
-         * Sets itsBestMove and returns the best possible score for the board.
-         *
-         * @param nest          the current level of recursion nesting
-         * @param b             the board to be played and scored
-         * @param me            the player taking the turn
-         * @param previousScore the previous best score
-         * @param goodScore     the score to beat
-         */
-        public int play(int nest, Board b, Player me, int previousScore, int goodScore) {
-            Player opponent = me.getOpponent();
-
-            if (nest > itsLookAheadLevel) {
-                // at the deepest level of recursion, the score is determined by
-                // who has the corners and who is likely to give up the empty
-                // corners by occupying the squares diagonally adjacent to the
-                // corners
-                int score = 0;
-                for (int i = 0; i < cornerX.length; ++i) {
-                    Player occupier = b.getSquare(cornerX[i], cornerY[i]).
-                            getOccupier();
-                    if (occupier == me) score += CORNER_SCORE;
-                    else if (occupier == opponent) score -= CORNER_SCORE;
-                    else {
-                        occupier = b.getSquare(insideX[i], insideY[i]).
-                                getOccupier();
-                        if (occupier == me) score -= INSIDE_SCORE;
-                        else if (occupier == opponent) score += INSIDE_SCORE;
-                    }
-                }
-
-                return score;
-            }
-
-            int bestScore = (nest < itsLookAheadLevel - 1) ?
-                    previousScore : -BIG_SCORE;
-            Square tempMove = null;
-            int possibleMoves = 0;
-
-            // Since we not at the lowest level of recursion, our best move is
-            // the square that yields our opponent's lowest scoring best move on
-            // his successive turn.
-
-            // to avoid messing up the original board, we'll create a temporary.
-            // clone()ing new boards is not as efficient as reusing old boards
-            Board scratchBoard;
-            if (itsFreeBoards.isEmpty()) {
-                scratchBoard = new Board();
-            } else {
-                scratchBoard = itsFreeBoards.removeLast();
-            }
-            scratchBoard.copyFrom(b);
-
-            for (int x = 0; x < BOARD_SIZE; ++x) {
-                for (int y = 0; y < BOARD_SIZE; ++y) {
-                    if (b.flip(me, x, y, scratchBoard)) {
-                        ++possibleMoves;
-                        // our score is the opposite of the next player's best
-                        int score = -play(nest + 1, scratchBoard, opponent,
-                                -goodScore, -bestScore);
-                        if (score > bestScore) {
-                            tempMove = b.getSquare(x, y);
-                            bestScore = score;
-                            if (score >= goodScore || score >= PERFECT_SCORE) {
-                                itsFreeBoards.addLast(scratchBoard);
-
-                                return score;
-                            }
-                        }
-
-                        // need new scratch board, cause flip() used the old one
-                        scratchBoard.copyFrom(b);
-                    }
-                }
-            }
-
-            if (possibleMoves == 0) {
-                itsBestMove = null;
-                // since we can't move, the score is just based on his best
-                bestScore = -play(nest + 1, scratchBoard, opponent, -goodScore,
-                        -bestScore);
-            } else {
-                // save off our best move, and bump up our bestScore according to
-                // the number of possible moves we could make.
-                itsBestMove = tempMove;
-                if (nest >= itsLookAheadLevel - 1) {
-                    bestScore += (possibleMoves << 3);
-                }
-            }
-
-            itsFreeBoards.addLast(scratchBoard);
-
-            return bestScore;
+            final long me = b.getPieces(this);
+            final long opponent = b.getPieces(getOpponent());
+            final int lookAheadLevel = bv.getLevel();
+            final long budget = TimeManager.budget(itsClockMillis,
+                    BitBoard.SQUARES - BitBoard.count(me | opponent));
+
+            final long startTime = System.currentTimeMillis();
+            final EngineExecutor.Task[] task = new EngineExecutor.Task[1];
+            task[0] = itsEngineExecutor.submit(itsEngine, me, opponent, lookAheadLevel,
+                    budget, result -> {
+                        int bestMove = result.getMove();
+                        itsClockMillis = Math.max(0, itsClockMillis
+                                - (System.currentTimeMillis() - startTime));
+
+                        // update the board view in the foreground thread,
+                        // where the search can only have been cancelled
+                        // before this runs
+                        SwingUtilities.invokeLater(
+                                () -> {
+                                    if (task[0].isCancelled()) {
+                                        return;
+                                    }
+                                    itsTask = null;
+                                    if (bestMove >= 0) {
+                                        turnTaken(BitBoard.x(bestMove),
+                                                BitBoard.y(bestMove));
+                                    } else {
+                                        turnPassed();
+                                    }
+                                }
+                        );
+                    });
+            itsTask = task[0];
         }
     }
 
@@ -781,6 +921,25 @@ public class Desdemona {
             return (occupier == p) ? flipped : 0;
         }
 
+        /**
+         * Returns the squares occupied by a player as a BitBoard mask.
+         *
+         * @param player the player whose pieces are wanted
+         * @return the mask with bit (y * 8 + x) set for each occupied square
+         */
+        public long getPieces(Player player) {
+            long pieces = 0;
+            for (int x = 0; x < BOARD_SIZE; ++x) {
+                for (int y = 0; y < BOARD_SIZE; ++y) {
+                    if (itsSquares[x][y].getOccupier() == player) {
+                        pieces |= 1L << BitBoard.square(x, y);
+                    }
+                }
+            }
+
+            return pieces;
+        }
+
         /**
          * Returns the square at a particular location.
          *
@@ -794,82 +953,393 @@ public class Desdemona {
     }
 
     /**
-     * This class will display a square.  It listens to the property changes
-     * of a square and responds to anyone who wants to highlight it.
+     * This class draws the whole board as one component.  It listens to the
+     * occupier changes of every square, but only notes which squares
+     * changed: the changes of a move are painted together by one repaint of
+     * the rectangle around them.  The board and the discs are drawn from
+     * images made once for each square size, and a disc changing sides turns
+     * over on a timer for the time given by the desdemona.flipMillis system
+     * property (default 200, 0 to not turn).  A move made while discs are
+     * still turning finishes them at once, so fast games never fall behind.
      */
-    public class SquareView
-            extends JLabel
-            implements PropertyChangeListener {
+    public class BoardPanel
+            extends JComponent
+            implements PropertyChangeListener, MouseMotionListener {
+        /**
+         * the board it is displaying
+         */
+        private final Board itsBoard;
         /**
-         * the square it is displaying
+         * the time a disc takes to turn over, in nanoseconds
          */
-        private final Square itsSquare;
+        private final long itsTurnNanos =
+                Integer.getInteger("desdemona.flipMillis", 200) * 1000000L;
+        /**
+         * the timer that paints each frame of the discs turning over
+         */
+        private final Timer itsTimer = new Timer(FRAME_MILLIS, e -> animate());
+        /**
+         * the squares changed since the last repaint
+         */
+        private long itsChanged;
+        /**
+         * the squares that changed sides since the last repaint
+         */
+        private long itsTurned;
+        /**
+         * true while a repaint of itsChanged is waiting to run
+         */
+        private boolean itsRepaintPending;
+        /**
+         * the squares whose discs are turning over
+         */
+        private long itsTurning;
+        /**
+         * the System.nanoTime the discs started turning over
+         */
+        private long itsTurnStart;
+        /**
+         * the squares the mouse highlights
+         */
+        private long itsPlayable;
+        /**
+         * the highlighted square, or -1 for none
+         */
+        private int itsHighlighted = -1;
+        /**
+         * the width of each square the images were made for
+         */
+        private int itsSquareWidth;
+        /**
+         * the height of each square the images were made for
+         */
+        private int itsSquareHeight;
+        /**
+         * the empty board
+         */
+        private BufferedImage itsBackground;
+        /**
+         * a white disc on a clear square
+         */
+        private BufferedImage itsWhiteDisc;
+        /**
+         * a black disc on a clear square
+         */
+        private BufferedImage itsBlackDisc;
 
         /**
          * Constructor.
          *
-         * @param square the square it is to display
+         * @param board the board it is to display
          */
-        public SquareView(Square square) {
-            itsSquare = square;
+        public BoardPanel(Board board) {
+            itsBoard = board;
+            for (int x = 0; x < BOARD_SIZE; ++x) {
+                for (int y = 0; y < BOARD_SIZE; ++y) {
+                    itsBoard.getSquare(x, y).addPropertyChangeListener(this);
+                }
+            }
 
-            setBorder(BorderFactory.createLoweredBevelBorder());
+            setBorder(BorderFactory.createRaisedBevelBorder());
+            setBackground(BOARD_COLOR);
             setOpaque(true);
-            itsSquare.addPropertyChangeListener(this);
+            addMouseMotionListener(this);
+            addMouseListener(
+                    new MouseAdapter() {
+                        public void mouseExited(MouseEvent e) {
+                            highlight(-1);
+                        }
+                    }
+            );
+        }
 
-            normal();
+        /**
+         * Sets the squares that highlight when the mouse is over them.
+         *
+         * @param moves the mask of squares, 0 for none
+         */
+        public void setPlayable(long moves) {
+            itsPlayable = moves;
+            if (itsHighlighted >= 0 && (moves & (1L << itsHighlighted)) == 0) {
+                highlight(-1);
+            }
         }
 
         /**
-         * Highlights the square.
+         * Returns the squares that highlight when the mouse is over them.
+         *
+         * @return the mask of squares
          */
-        public void highlight() {
-            setBackground(BOARD_COLOR.brighter());
+        public long getPlayable() {
+            return itsPlayable;
         }
 
         /**
-         * Un-highlights the square.
+         * Returns the square at a point of the component.
+         *
+         * @param x the horizontal position of the point
+         * @param y the vertical position of the point
+         * @return the bit number of the square, or -1 if it is off the board
          */
-        public void normal() {
-            setBackground(BOARD_COLOR);
+        public int squareAt(int x, int y) {
+            Insets in = getInsets();
+            int width = (getWidth() - in.left - in.right) / BOARD_SIZE;
+            int height = (getHeight() - in.top - in.bottom) / BOARD_SIZE;
+            if (width <= 0 || height <= 0 || x < in.left || y < in.top) {
+                return -1;
+            }
+
+            int column = (x - in.left) / width;
+            int row = (y - in.top) / height;
+            return (column < BOARD_SIZE && row < BOARD_SIZE) ? BitBoard.square(column, row) : -1;
+        }
+
+        /**
+         * Highlights the playable square under the mouse as it moves.
+         *
+         * @param e event describing where the mouse is.
+         */
+        public void mouseMoved(MouseEvent e) {
+            int sq = squareAt(e.getX(), e.getY());
+            highlight(sq >= 0 && (itsPlayable & (1L << sq)) != 0 ? sq : -1);
+        }
+
+        /**
+         * Highlights the playable square under the mouse as it is dragged.
+         *
+         * @param e event describing where the mouse is.
+         */
+        public void mouseDragged(MouseEvent e) {
+            mouseMoved(e);
         }
 
         /**
-         * Returns the square it is displaying.
+         * Moves the highlight to another square, repainting both.
          *
-         * @return the square being viewed
+         * @param sq the bit number of the square, or -1 for none
          */
-        public Square getSquare() {
-            return itsSquare;
+        private void highlight(int sq) {
+            if (sq != itsHighlighted) {
+                long squares = (itsHighlighted >= 0 ? 1L << itsHighlighted : 0)
+                        | (sq >= 0 ? 1L << sq : 0);
+                itsHighlighted = sq;
+                repaintSquares(squares);
+            }
         }
 
         /**
-         * Responds to a square property change by repainting itself.
+         * Notes a square that changed occupiers, and makes sure one repaint
+         * is waiting for all the changes of the move.
          *
-         * @param e ignored
+         * @param e the change of a square's occupier
          */
         public void propertyChange(PropertyChangeEvent e) {
-            repaint();
+            if (!SwingUtilities.isEventDispatchThread()) {
+                SwingUtilities.invokeLater(() -> propertyChange(e));
+                return;
+            }
+
+            Square s = (Square) e.getSource();
+            long bit = 1L << BitBoard.square(s.getX(), s.getY());
+            itsChanged |= bit;
+            if (e.getOldValue() != null && e.getNewValue() != null) {
+                itsTurned |= bit;
+            }
+            if (!itsRepaintPending) {
+                itsRepaintPending = true;
+                SwingUtilities.invokeLater(this::repaintChanges);
+            }
+        }
+
+        /**
+         * Repaints the squares changed by a move at once, and starts the
+         * discs that changed sides turning over.  Discs still turning from
+         * the move before are finished.
+         */
+        private void repaintChanges() {
+            itsRepaintPending = false;
+            if (itsTurned != 0 && itsTurnNanos > 0) {
+                itsChanged |= itsTurning;
+                itsTurning = itsTurned;
+                itsTurnStart = System.nanoTime();
+                itsTimer.start();
+            }
+            itsTurned = 0;
+
+            repaintSquares(itsChanged);
+            itsChanged = 0;
+        }
+
+        /**
+         * Repaints the discs turning over for the next frame, and stops the
+         * timer once they are done.
+         */
+        private void animate() {
+            long squares = itsTurning;
+            if (System.nanoTime() - itsTurnStart >= itsTurnNanos) {
+                itsTurning = 0;
+                itsTimer.stop();
+            }
+            repaintSquares(squares);
+        }
+
+        /**
+         * Repaints the rectangle around some squares.
+         *
+         * @param squares the mask of squares to repaint
+         */
+        private void repaintSquares(long squares) {
+            if (squares == 0) {
+                return;
+            }
+
+            int left = BOARD_SIZE;
+            int top = BOARD_SIZE;
+            int right = -1;
+            int bottom = -1;
+            for (; squares != 0; squares &= squares - 1) {
+                int sq = Long.numberOfTrailingZeros(squares);
+                left = Math.min(left, BitBoard.x(sq));
+                right = Math.max(right, BitBoard.x(sq));
+                top = Math.min(top, BitBoard.y(sq));
+                bottom = Math.max(bottom, BitBoard.y(sq));
+            }
+
+            Insets in = getInsets();
+            int width = (getWidth() - in.left - in.right) / BOARD_SIZE;
+            int height = (getHeight() - in.top - in.bottom) / BOARD_SIZE;
+            repaint(in.left + left * width, in.top + top * height,
+                    (right - left + 1) * width, (bottom - top + 1) * height);
+        }
+
+        /**
+         * Makes the images of the empty board and of each disc for a square
+         * size, unless they were already made for it.
+         *
+         * @param width  the width of each square
+         * @param height the height of each square
+         */
+        private void makeImages(int width, int height) {
+            if (width == itsSquareWidth && height == itsSquareHeight) {
+                return;
+            }
+            itsSquareWidth = width;
+            itsSquareHeight = height;
+
+            itsBackground = new BufferedImage(width * BOARD_SIZE, height * BOARD_SIZE,
+                    BufferedImage.TYPE_INT_RGB);
+            Graphics g = itsBackground.getGraphics();
+            for (int x = 0; x < BOARD_SIZE; ++x) {
+                for (int y = 0; y < BOARD_SIZE; ++y) {
+                    paintSquare(g, x * width, y * height, BOARD_COLOR);
+                }
+            }
+            g.dispose();
+
+            itsWhiteDisc = makeDisc(Color.white);
+            itsBlackDisc = makeDisc(Color.black);
+        }
+
+        /**
+         * Makes the image of a disc on a clear square.
+         *
+         * @param color the color of the disc
+         * @return the image
+         */
+        private BufferedImage makeDisc(Color color) {
+            BufferedImage disc = new BufferedImage(itsSquareWidth, itsSquareHeight,
+                    BufferedImage.TYPE_INT_ARGB);
+            Graphics2D g = disc.createGraphics();
+            g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            g.setColor(color);
+            g.fillOval(itsSquareWidth / 5, itsSquareHeight / 5,
+                    itsSquareWidth * 3 / 5, itsSquareHeight * 3 / 5);
+            g.dispose();
+
+            return disc;
+        }
+
+        /**
+         * Paints an empty square with a lowered bevel.
+         *
+         * @param g     the graphics context
+         * @param x     the left of the square
+         * @param y     the top of the square
+         * @param color the color of the square
+         */
+        private void paintSquare(Graphics g, int x, int y, Color color) {
+            g.setColor(color);
+            g.fillRect(x, y, itsSquareWidth, itsSquareHeight);
+            BorderFactory.createBevelBorder(BevelBorder.LOWERED,
+                    color.brighter().brighter(), color.brighter(),
+                    color.darker().darker(), color.darker()).paintBorder(this, g, x, y,
+                    itsSquareWidth, itsSquareHeight);
         }
 
         /**
-         * Paints itself by calling super then drawing the occupying piece.
+         * Paints the squares inside the clip: the board, the highlight and
+         * the discs, with the turning ones part of the way over.
          *
          * @param g the graphics context
          */
         protected void paintComponent(Graphics g) {
-            super.paintComponent(g);
-
-            Player p = itsSquare.getOccupier();
-            if (p != null) {
-                if (p == itsWhitePlayer) {
-                    g.setColor(Color.white);
-                } else {
-                    g.setColor(Color.black);
-                }
+            Insets in = getInsets();
+            int width = (getWidth() - in.left - in.right) / BOARD_SIZE;
+            int height = (getHeight() - in.top - in.bottom) / BOARD_SIZE;
+            Rectangle clip = g.getClipBounds();
+            if (clip == null) {
+                clip = new Rectangle(0, 0, getWidth(), getHeight());
+            }
+            g.setColor(BOARD_COLOR);
+            g.fillRect(clip.x, clip.y, clip.width, clip.height);
+            if (width <= 0 || height <= 0) {
+                return;
+            }
+
+            makeImages(width, height);
+            Rectangle board = clip.intersection(new Rectangle(in.left, in.top,
+                    width * BOARD_SIZE, height * BOARD_SIZE));
+            if (board.isEmpty()) {
+                return;
+            }
+            g.drawImage(itsBackground, board.x, board.y, board.x + board.width,
+                    board.y + board.height, board.x - in.left, board.y - in.top,
+                    board.x - in.left + board.width, board.y - in.top + board.height, null);
+
+            // the part of the turn done, from 0 to 1
+            double turned = itsTurning == 0 ? 1 :
+                    Math.min(1.0, (System.nanoTime() - itsTurnStart) / (double) itsTurnNanos);
+            int firstColumn = Math.max(0, (clip.x - in.left) / width);
+            int lastColumn = Math.min(BOARD_SIZE - 1, (clip.x + clip.width - in.left) / width);
+            int firstRow = Math.max(0, (clip.y - in.top) / height);
+            int lastRow = Math.min(BOARD_SIZE - 1, (clip.y + clip.height - in.top) / height);
+            for (int y = firstRow; y <= lastRow; ++y) {
+                for (int x = firstColumn; x <= lastColumn; ++x) {
+                    int left = in.left + x * width;
+                    int top = in.top + y * height;
+                    int sq = BitBoard.square(x, y);
+                    if (sq == itsHighlighted) {
+                        paintSquare(g, left, top, BOARD_COLOR.brighter());
+                    }
 
-                g.fillOval(getWidth() / 5, getHeight() / 5,
-                        getWidth() * 3 / 5, getHeight() * 3 / 5);
+                    Player p = itsBoard.getSquare(x, y).getOccupier();
+                    if (p == null) {
+                        continue;
+                    }
+                    boolean white = p == itsWhitePlayer;
+                    if ((itsTurning & (1L << sq)) == 0 || turned >= 1) {
+                        g.drawImage(white ? itsWhiteDisc : itsBlackDisc, left, top, null);
+                    } else {
+                        // the old side narrows to an edge, then the new side
+                        // widens from it
+                        if (turned < 0.5) {
+                            white = !white;
+                        }
+                        int edge = (int) Math.round(width * Math.abs(1 - 2 * turned));
+                        g.drawImage(white ? itsWhiteDisc : itsBlackDisc,
+                                left + (width - edge) / 2, top, edge, height, null);
+                    }
+                }
             }
         }
     }
@@ -885,10 +1355,9 @@ public class Desdemona {
          */
         private final Board itsBoard = new Board();
         /**
-         * panel containing the SquareViews
+         * the component drawing the board
          */
-        private final JPanel itsBoardPanel =
-                new JPanel(new GridLayout(BOARD_SIZE, BOARD_SIZE));
+        private final BoardPanel itsBoardPanel = new BoardPanel(itsBoard);
         /**
          * the slider for controlling the level
          */
@@ -912,15 +1381,6 @@ public class Desdemona {
             GridBagConstraints c = new GridBagConstraints();
             c.insets = new Insets(10, 10, 0, 10);
 
-            itsBoardPanel.setBorder(BorderFactory.createRaisedBevelBorder());
-            itsBoardPanel.setBackground(BOARD_COLOR);
-
-            for (int y = 0; y < BOARD_SIZE; ++y) {
-                for (int x = 0; x < BOARD_SIZE; ++x) {
-                    itsBoardPanel.add(new SquareView(itsBoard.getSquare(x, y)));
-                }
-            }
-
             c.gridx = 0;
             c.gridy = GridBagConstraints.RELATIVE;
             c.gridwidth = GridBagConstraints.REMAINDER;
@@ -951,26 +1411,44 @@ public class Desdemona {
             getContentPane().add(new JLabel("Hard"), c);
 
             c.gridx = 0;
+            c.gridwidth = 2;
             c.weightx = 1.0;
             getContentPane().add(itsStatus, c);
 
+            c.gridx = GridBagConstraints.RELATIVE;
+            c.gridwidth = GridBagConstraints.REMAINDER;
+            c.weightx = 0.0;
+            JButton moveNow = new JButton("Move now");
+            moveNow.setMargin(new Insets(0, 2, 0, 2));
+            moveNow.addActionListener(e -> moveNow());
+            getContentPane().add(moveNow, c);
+
+            // a new level restarts the computer's search, once the user
+            // lets go of the slider
+            itsLevelSlider.addChangeListener(e -> {
+                if (!itsLevelSlider.getValueIsAdjusting()) {
+                    levelChanged();
+                }
+            });
+
             Dimension screenDim = Toolkit.getDefaultToolkit().getScreenSize();
             Dimension frameDim = getSize();
             setLocation((screenDim.width - frameDim.width) / 2,
                     (screenDim.height - frameDim.height) / 2);
             setVisible(true);
 
-            if (exitOnClose) {
-                addWindowListener(
-                        new WindowAdapter() {
-                            public void windowClosing(
-                                    WindowEvent e
-                            ) {
+            addWindowListener(
+                    new WindowAdapter() {
+                        public void windowClosing(
+                                WindowEvent e
+                        ) {
+                            stopThinking();
+                            if (exitOnClose) {
                                 System.exit(0);
                             }
                         }
-                );
-            }
+                    }
+            );
         }
 
         /**
@@ -1001,12 +1479,12 @@ public class Desdemona {
         }
 
         /**
-         * Returns the view of the square on the board.
+         * Returns the component drawing the board.
          *
-         * @param s the square to get the view of.
+         * @return the board's view.
          */
-        public SquareView getSquareView(Square s) {
-            return (SquareView) itsBoardPanel.getComponent(s.getY() * BOARD_SIZE + s.getX());
+        public BoardPanel getBoardPanel() {
+            return itsBoardPanel;
         }
     }
 }
@@ -0,0 +1,482 @@
+package dev.jcps.engine;
+
+/*
+*****************************************************************************
+
+ Desdemona: The Java Othello game.
+ Copyright (C) 2001 Kenneth D. Huffman.
+
+ This program is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 2 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License (gnu.org/copyleft/gpl.html) for more details.
+
+ The author can be reached at www.huffmancoding.com.
+ *****************************************************************************
+ */
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * This class analyzes a list of positions without any window, many at
+ * once, and prints the best move, score, node count and time of each as it
+ * finishes.  A position is searched to a fixed level, or one level deeper
+ * at a time for a time budget, or solved to the end of the game for the
+ * exact score.
+ * <p>
+ * Every worker thread has an engine and an endgame solver of its own and
+ * takes the next position when it finishes one, so nothing is shared but
+ * the counter and the output.  The positions are started in the order of
+ * the file, but printed in the order they finish, numbered as in the file.
+ * <p>
+ * A positions file has one position per line in the text form read by
+ * Position.parse, then optionally a ';' and a label.  A label token like
+ * "a2:+38" gives the expected score, as in the usual test suites, and a
+ * solve that scores otherwise is reported as wrong, so the published FFO
+ * files can be read as they are.  Lines starting with '#' are ignored.
+ * One set of positions comes with the program: instead of a file name,
+ * "quick" analyzes a few positions from self-play games that solve in a
+ * few minutes on one core.  Run it from the command line:
+ * <pre>
+ *     java -cp desdemona.jar dev.jcps.engine.Analyzer fforum-40-59.obf -solve
+ *     java -cp desdemona.jar dev.jcps.engine.Analyzer quick -solve
+ *     java -cp desdemona.jar dev.jcps.engine.Analyzer positions.txt
+ *             [-level n] [-time ms] [-solve] [-threads n] [-hash mb] [-weights file]
+ *             [-probcut file]
+ * </pre>
+ *
+ * @author Ken Huffman
+ */
+public final class Analyzer {
+    /**
+     * the level searched to unless set otherwise
+     */
+    private static final int DEFAULT_LEVEL = 8;
+    /**
+     * the deepest level of a timed search, which is in practice no limit
+     */
+    private static final int MAX_LEVEL = 60;
+    /**
+     * the positions that come with the program, by name
+     */
+    private static final String[] SUITES = {"quick"};
+    /**
+     * a token of a label giving a move and its score
+     */
+    private static final Pattern EXPECTED = Pattern.compile("[a-hA-H][1-8]:([+-]?\\d+)");
+
+    /**
+     * the level each position is searched to, or the deepest of a timed
+     * search
+     */
+    private final int itsLevel;
+    /**
+     * the time budget of each position in milliseconds, 0 for a fixed level
+     */
+    private final long itsMillis;
+    /**
+     * true to solve each position instead of searching it
+     */
+    private final boolean itsSolve;
+    /**
+     * the size of each worker's transposition table
+     */
+    private int itsHashMegabytes = 16;
+    /**
+     * the weights every engine evaluates with, or null for the corner
+     * evaluation
+     */
+    private PatternEvaluator itsEvaluator;
+    /**
+     * the selective search parameters every engine uses, or null for none
+     */
+    private ProbCut itsProbCut;
+
+    /**
+     * Constructor.
+     *
+     * @param level  the level to search each position to, or the deepest
+     *               of a timed search
+     * @param millis the time budget of each position in milliseconds, 0 to
+     *               search to the level, or with solve the most time to
+     *               spend solving
+     * @param solve  true to solve each position for the exact score
+     */
+    public Analyzer(int level, long millis, boolean solve) {
+        itsLevel = level;
+        itsMillis = millis;
+        itsSolve = solve;
+    }
+
+    /**
+     * Sets the size of each worker's transposition table.
+     *
+     * @param megabytes the size of each table
+     */
+    public void setHashMegabytes(int megabytes) {
+        itsHashMegabytes = megabytes;
+    }
+
+    /**
+     * Sets how the leaves of the search are scored.
+     *
+     * @param evaluator the pattern evaluator, or null for the corner
+     *                  evaluation
+     */
+    public void setEvaluator(PatternEvaluator evaluator) {
+        itsEvaluator = evaluator;
+    }
+
+    /**
+     * Sets whether the search cuts positions predicted by shallow searches.
+     *
+     * @param probCut the parameters fitted for the evaluator, or null to
+     *                search every position to the full level
+     */
+    public void setProbCut(ProbCut probCut) {
+        itsProbCut = probCut;
+    }
+
+    /**
+     * Reads the positions of a file, or of a suite that comes with the
+     * program.
+     *
+     * @param name the file, or the name of a suite
+     * @return the positions
+     * @throws IOException if the positions cannot be read
+     * @throws IllegalArgumentException if a line is not a position
+     */
+    public static List<Problem> read(String name) throws IOException {
+        for (String suite : SUITES) {
+            if (suite.equals(name) && !Files.exists(Path.of(name))) {
+                InputStream stream = Analyzer.class.getResourceAsStream(suite + ".txt");
+                if (stream == null) {
+                    throw new IOException("Missing suite " + suite);
+                }
+                try (BufferedReader reader = new BufferedReader(
+                        new InputStreamReader(stream, StandardCharsets.US_ASCII))) {
+                    return read(reader);
+                }
+            }
+        }
+
+        try (BufferedReader reader = Files.newBufferedReader(Path.of(name))) {
+            return read(reader);
+        }
+    }
+
+    /**
+     * Reads positions, one per line.
+     *
+     * @param reader the lines
+     * @return the positions
+     * @throws IOException if the lines cannot be read
+     * @throws IllegalArgumentException if a line is not a position
+     */
+    private static List<Problem> read(BufferedReader reader) throws IOException {
+        List<Problem> problems = new ArrayList<>();
+        for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+            if (line.isBlank() || line.startsWith("#")) {
+                continue;
+            }
+
+            int semicolon = line.indexOf(';');
+            String label = semicolon >= 0 ? line.substring(semicolon + 1).trim() : "";
+            Position position = Position.parse(semicolon >= 0 ? line.substring(0, semicolon) : line);
+            Matcher matcher = EXPECTED.matcher(label);
+            problems.add(new Problem(problems.size() + 1, position, label,
+                    matcher.find() ? Integer.parseInt(matcher.group(1).replace("+", ""))
+                            : Problem.UNKNOWN));
+        }
+
+        return problems;
+    }
+
+    /**
+     * Analyzes positions on a fixed number of worker threads, printing each
+     * result as it finishes.
+     *
+     * @param problems the positions
+     * @param threads  the number of worker threads
+     * @param out      where to print the results
+     * @return the result of each position, in the same order
+     * @throws InterruptedException if interrupted while waiting for the
+     *                              workers
+     */
+    public SearchResult[] run(List<Problem> problems, int threads, PrintStream out)
+            throws InterruptedException {
+        SearchResult[] results = new SearchResult[problems.size()];
+        AtomicInteger next = new AtomicInteger();
+        ExecutorService workers = Executors.newFixedThreadPool(threads);
+        try {
+            Future<?>[] futures = new Future<?>[threads];
+            for (int i = 0; i < threads; ++i) {
+                futures[i] = workers.submit(() -> {
+                    TranspositionTable table = new TranspositionTable(itsHashMegabytes);
+                    Engine engine = new Engine(table, null);
+                    engine.setEvaluator(itsEvaluator);
+                    engine.setProbCut(itsProbCut);
+                    EndgameSolver solver = new EndgameSolver(table);
+                    for (int p = next.getAndIncrement(); p < results.length; p = next.getAndIncrement()) {
+                        Problem problem = problems.get(p);
+                        engine.newGame();
+                        results[p] = itsSolve ? solve(solver, problem.getPosition())
+                                : search(engine, problem.getPosition());
+                        String line = format(problem, results[p]);
+                        synchronized (out) {
+                            out.println(line);
+                        }
+                    }
+                });
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            workers.shutdownNow();
+        }
+
+        return results;
+    }
+
+    /**
+     * Searches a position to the level, or for the time budget.
+     *
+     * @param engine   the engine to search with
+     * @param position the position
+     * @return the result
+     */
+    private SearchResult search(Engine engine, Position position) {
+        if (itsMillis > 0) {
+            return engine.search(position.getPlayer(), position.getOpponent(),
+                    Math.min(itsLevel, MAX_LEVEL), itsMillis);
+        }
+
+        return engine.search(position.getPlayer(), position.getOpponent(), itsLevel);
+    }
+
+    /**
+     * Solves a position to the end of the game.  A solve that runs out of
+     * the time budget has no move and no completed level.
+     *
+     * @param solver   the solver
+     * @param position the position
+     * @return the result, whose score is the final disc difference
+     */
+    private SearchResult solve(EndgameSolver solver, Position position) {
+        long startTime = System.nanoTime();
+        long deadline = itsMillis > 0 ? startTime + itsMillis * 1000000L : Long.MAX_VALUE;
+        int score = solver.solve(position.getPlayer(), position.getOpponent(), true, deadline);
+        long millis = (System.nanoTime() - startTime) / 1000000L;
+        boolean solved = !solver.isStopped();
+        int move = solved ? solver.getBestMove() : -1;
+
+        return new SearchResult(move, solved ? score : 0, solved ? position.getEmpties() : 0,
+                solved, false, solver.getNodeCount(), millis,
+                solved && move >= 0 ? new int[]{move} : new int[0]);
+    }
+
+    /**
+     * Writes the result of a position as one line.
+     *
+     * @param problem the position
+     * @param result  its result
+     * @return the line
+     */
+    private static String format(Problem problem, SearchResult result) {
+        String check = "";
+        if (problem.getExpected() != Problem.UNKNOWN && result.isSolved()) {
+            check = result.getScore() == problem.getExpected() ? " ok" :
+                    " WRONG, expected " + problem.getExpected();
+        }
+
+        boolean stopped = !result.isSolved() && result.getLevel() == 0;
+        return String.format("%3d %-5s %+5d %-9s %,14d nodes %,9d ms %7.2f M nodes/s  %s%s",
+                problem.getNumber(), stopped ? "-" : SearchResult.name(result.getMove()),
+                result.getScore(), result.isSolved() ? "solved" : stopped ? "stopped"
+                        : "level " + result.getLevel(), result.getNodes(),
+                result.getMillis(), result.getNodes() / 1000.0 / Math.max(1, result.getMillis()),
+                problem.getLabel(), check);
+    }
+
+    /**
+     * Analyzes positions from the command line and prints the totals.
+     *
+     * @param args the positions file or suite, then options
+     * @throws IOException if a file cannot be read
+     * @throws InterruptedException if interrupted while analyzing
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 1) {
+            System.err.println("Usage: Analyzer positions [-level n] [-time ms] [-solve]"
+                    + " [-threads n] [-hash mb] [-weights file] [-probcut file]");
+            System.exit(1);
+        }
+
+        int level = 0;
+        long millis = 0;
+        boolean solve = false;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int hash = 16;
+        Path weights = null;
+        Path probCut = null;
+        for (int i = 1; i < args.length; ++i) {
+            if (args[i].equals("-solve")) {
+                solve = true;
+                continue;
+            }
+            if (i + 1 == args.length) {
+                throw new IllegalArgumentException("Missing value for " + args[i]);
+            }
+            switch (args[i]) {
+                case "-level" -> level = Integer.parseInt(args[++i]);
+                case "-time" -> millis = Long.parseLong(args[++i]);
+                case "-threads" -> threads = Integer.parseInt(args[++i]);
+                case "-hash" -> hash = Integer.parseInt(args[++i]);
+                case "-weights" -> weights = Path.of(args[++i]);
+                case "-probcut" -> probCut = Path.of(args[++i]);
+                default -> throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        if (level == 0) {
+            level = millis > 0 ? MAX_LEVEL : DEFAULT_LEVEL; // only the time limits a timed search
+        }
+
+        Analyzer analyzer = new Analyzer(level, millis, solve);
+        analyzer.setHashMegabytes(hash);
+        PatternEvaluator evaluator = weights != null ? PatternEvaluator.load(weights) : null;
+        analyzer.setEvaluator(evaluator);
+        if (probCut != null) {
+            ProbCut parameters = ProbCut.load(probCut);
+            if (!parameters.fits(evaluator)) {
+                throw new IllegalArgumentException(probCut + " was fitted for other weights");
+            }
+            analyzer.setProbCut(parameters);
+        }
+        List<Problem> problems = read(args[0]);
+        long startTime = System.nanoTime();
+        SearchResult[] results = analyzer.run(problems, threads, System.out);
+        double seconds = (System.nanoTime() - startTime) / 1e9;
+
+        long nodes = 0;
+        long millisSum = 0;
+        int checked = 0;
+        int right = 0;
+        for (int p = 0; p < results.length; ++p) {
+            nodes += results[p].getNodes();
+            millisSum += results[p].getMillis();
+            if (problems.get(p).getExpected() != Problem.UNKNOWN && results[p].isSolved()) {
+                ++checked;
+                if (results[p].getScore() == problems.get(p).getExpected()) {
+                    ++right;
+                }
+            }
+        }
+        System.out.printf("%,d positions in %.1f s on %d threads: %,d nodes in %,d ms,"
+                        + " %.2f M nodes/s", results.length, seconds, threads, nodes, millisSum,
+                nodes / 1000.0 / Math.max(1, millisSum));
+        System.out.println(checked > 0 ? String.format("; %d of %d scores as expected",
+                right, checked) : "");
+    }
+
+    /**
+     * This class holds a position to analyze, with its label.
+     */
+    public static final class Problem {
+        /**
+         * the expected score when the label has none
+         */
+        public static final int UNKNOWN = Integer.MIN_VALUE;
+
+        /**
+         * the position's number in its file, from 1
+         */
+        private final int itsNumber;
+        /**
+         * the position
+         */
+        private final Position itsPosition;
+        /**
+         * the label, or "" if none
+         */
+        private final String itsLabel;
+        /**
+         * the exact score the label gives, or UNKNOWN
+         */
+        private final int itsExpected;
+
+        /**
+         * Constructor.
+         *
+         * @param number   the position's number in its file, from 1
+         * @param position the position
+         * @param label    the label, or "" if none
+         * @param expected the exact score the label gives, or UNKNOWN
+         */
+        public Problem(int number, Position position, String label, int expected) {
+            itsNumber = number;
+            itsPosition = position;
+            itsLabel = label;
+            itsExpected = expected;
+        }
+
+        /**
+         * Returns the position's number in its file.
+         *
+         * @return the number, from 1
+         */
+        public int getNumber() {
+            return itsNumber;
+        }
+
+        /**
+         * Returns the position.
+         *
+         * @return the position
+         */
+        public Position getPosition() {
+            return itsPosition;
+        }
+
+        /**
+         * Returns the label.
+         *
+         * @return the label, or "" if none
+         */
+        public String getLabel() {
+            return itsLabel;
+        }
+
+        /**
+         * Returns the exact score the label gives.
+         *
+         * @return the score for the player to move, or UNKNOWN
+         */
+        public int getExpected() {
+            return itsExpected;
+        }
+    }
+}
@@ -0,0 +1,303 @@
+package dev.jcps.engine;
+
+/*
+*****************************************************************************
+
+ Desdemona: The Java Othello game.
+ Copyright (C) 2001 Kenneth D. Huffman.
+
+ This program is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 2 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License (gnu.org/copyleft/gpl.html) for more details.
+
+ The author can be reached at www.huffmancoding.com.
+ *****************************************************************************
+ */
+
+/**
+ * This class implements the board as a pair of 64-bit masks, one for the
+ * pieces of the player to move and one for the pieces of his opponent.  Bit
+ * number <code>y * 8 + x</code> represents the square at (x, y), so shifting
+ * left by one moves a piece one square to the right and shifting left by
+ * eight moves it one row down.
+ * <p>
+ * Every method is static and works on the two masks by value, so the search
+ * can play moves without creating or copying any objects.
+ *
+ * @author Ken Huffman
+ */
+public final class BitBoard {
+    /**
+     * the number of squares on each side of the board
+     */
+    public static final int SIZE = 8;
+    /**
+     * the number of squares on the board
+     */
+    public static final int SQUARES = SIZE * SIZE;
+    /**
+     * every square except those on the left and right edges, used to stop
+     * horizontal and diagonal shifts from wrapping onto the next row
+     */
+    public static final long NOT_EDGE_FILES = 0x7E7E7E7E7E7E7E7EL;
+    /**
+     * the four corner squares
+     */
+    public static final long CORNERS = 0x8100000000000081L;
+    /**
+     * the player's pieces at the start of the game: (3, 3) and (4, 4)
+     */
+    public static final long START_PLAYER = 0x0000001008000000L;
+    /**
+     * the opponent's pieces at the start of the game: (4, 3) and (3, 4)
+     */
+    public static final long START_OPPONENT = 0x0000000810000000L;
+    /**
+     * the squares seen from each square in each direction, indexed by
+     * square * 8 + direction.  The directions are right, down-left, down and
+     * down-right (toward higher bit numbers), then left, up-right, up and
+     * up-left (toward lower bit numbers).
+     */
+    private static final long[] RAYS = new long[SQUARES * 8];
+
+    static {
+        int[] dx = {1, -1, 0, 1, -1, 1, 0, -1};
+        int[] dy = {0, 1, 1, 1, 0, -1, -1, -1};
+        for (int dir = 0; dir < dx.length; ++dir) {
+            for (int sq = 0; sq < SQUARES; ++sq) {
+                int x = x(sq) + dx[dir];
+                int y = y(sq) + dy[dir];
+                while (x >= 0 && y >= 0 && x < SIZE && y < SIZE) {
+                    RAYS[(sq << 3) + dir] |= 1L << square(x, y);
+                    x += dx[dir];
+                    y += dy[dir];
+                }
+            }
+        }
+    }
+
+    /**
+     * Prevents instantiation, everything is static.
+     */
+    private BitBoard() {
+    }
+
+    /**
+     * Returns the bit number of a square.
+     *
+     * @param x the horizontal index of the square
+     * @param y the vertical index of the square
+     * @return the bit number from 0 to 63
+     */
+    public static int square(int x, int y) {
+        return y * SIZE + x;
+    }
+
+    /**
+     * Returns the horizontal index of a bit number.
+     *
+     * @param sq the bit number of the square
+     * @return the x position
+     */
+    public static int x(int sq) {
+        return sq & (SIZE - 1);
+    }
+
+    /**
+     * Returns the vertical index of a bit number.
+     *
+     * @param sq the bit number of the square
+     * @return the y position
+     */
+    public static int y(int sq) {
+        return sq >>> 3;
+    }
+
+    /**
+     * Returns all the empty squares where the player may legally play, that
+     * is, every square that would flip at least one opposing piece.  All
+     * eight directions are filled at once by shifting the player's pieces
+     * across contiguous runs of opposing pieces.
+     *
+     * @param player   the pieces of the player to move
+     * @param opponent the pieces of his opponent
+     * @return the mask of legal moves
+     */
+    public static long moves(long player, long opponent) {
+        long inner = opponent & NOT_EDGE_FILES;
+        long moves = fillLeft(player, inner, 1) | fillRight(player, inner, 1)
+                | fillLeft(player, opponent, 8) | fillRight(player, opponent, 8)
+                | fillLeft(player, inner, 7) | fillRight(player, inner, 7)
+                | fillLeft(player, inner, 9) | fillRight(player, inner, 9);
+
+        return moves & ~(player | opponent);
+    }
+
+    /**
+     * Shifts the pieces left (toward higher bit numbers) over a run of up to
+     * six opposing pieces and returns the squares just past the run.
+     *
+     * @param player the pieces doing the flanking
+     * @param mask   the opposing pieces that may be flanked
+     * @param shift  the bit distance of one step in this direction
+     * @return the candidate squares at the end of each run
+     */
+    private static long fillLeft(long player, long mask, int shift) {
+        long run = mask & (player << shift);
+        run |= mask & (run << shift);
+        run |= mask & (run << shift);
+        run |= mask & (run << shift);
+        run |= mask & (run << shift);
+        run |= mask & (run << shift);
+
+        return run << shift;
+    }
+
+    /**
+     * Shifts the pieces right (toward lower bit numbers) over a run of up to
+     * six opposing pieces and returns the squares just past the run.
+     *
+     * @param player the pieces doing the flanking
+     * @param mask   the opposing pieces that may be flanked
+     * @param shift  the bit distance of one step in this direction
+     * @return the candidate squares at the end of each run
+     */
+    private static long fillRight(long player, long mask, int shift) {
+        long run = mask & (player >>> shift);
+        run |= mask & (run >>> shift);
+        run |= mask & (run >>> shift);
+        run |= mask & (run >>> shift);
+        run |= mask & (run >>> shift);
+        run |= mask & (run >>> shift);
+
+        return run >>> shift;
+    }
+
+    /**
+     * Determines which opposing pieces would flip if the player occupied an
+     * empty square.  Along each direction, the nearest square that is not
+     * the opponent's caps the run; if it is the player's, every square of
+     * the ray before it flips.
+     *
+     * @param player   the pieces of the player to move
+     * @param opponent the pieces of his opponent
+     * @param sq       the bit number of the empty square to play
+     * @return the mask of flipped pieces, zero if the move is illegal
+     */
+    public static long flips(long player, long opponent, int sq) {
+        long notOpponent = ~opponent;
+        int rays = sq << 3;
+
+        return flipsUp(RAYS[rays], player, notOpponent)
+                | flipsUp(RAYS[rays + 1], player, notOpponent)
+                | flipsUp(RAYS[rays + 2], player, notOpponent)
+                | flipsUp(RAYS[rays + 3], player, notOpponent)
+                | flipsDown(RAYS[rays + 4], player, notOpponent)
+                | flipsDown(RAYS[rays + 5], player, notOpponent)
+                | flipsDown(RAYS[rays + 6], player, notOpponent)
+                | flipsDown(RAYS[rays + 7], player, notOpponent);
+    }
+
+    /**
+     * Returns the flips along a ray toward higher bit numbers, where the
+     * nearest square is the lowest bit.
+     *
+     * @param ray         the squares of the ray
+     * @param player      the pieces of the player to move
+     * @param notOpponent every square without an opposing piece
+     * @return the flipped pieces, or zero if the run is not capped
+     */
+    private static long flipsUp(long ray, long player, long notOpponent) {
+        long cap = ray & notOpponent;
+        cap &= -cap;
+
+        return (cap & player) != 0 ? ray & (cap - 1) : 0;
+    }
+
+    /**
+     * Returns the flips along a ray toward lower bit numbers, where the
+     * nearest square is the highest bit.
+     *
+     * @param ray         the squares of the ray
+     * @param player      the pieces of the player to move
+     * @param notOpponent every square without an opposing piece
+     * @return the flipped pieces, or zero if the run is not capped
+     */
+    private static long flipsDown(long ray, long player, long notOpponent) {
+        long cap = Long.highestOneBit(ray & notOpponent);
+
+        return (cap & player) != 0 ? ray & -(cap << 1) : 0;
+    }
+
+    /**
+     * Turns a mask upside down: row y becomes row 7 - y.
+     *
+     * @param pieces the mask
+     * @return the flipped mask
+     */
+    public static long flipVertical(long pieces) {
+        return Long.reverseBytes(pieces);
+    }
+
+    /**
+     * Mirrors a mask left to right: column x becomes column 7 - x.
+     *
+     * @param pieces the mask
+     * @return the mirrored mask
+     */
+    public static long mirrorHorizontal(long pieces) {
+        pieces = ((pieces >>> 1) & 0x5555555555555555L) | ((pieces & 0x5555555555555555L) << 1);
+        pieces = ((pieces >>> 2) & 0x3333333333333333L) | ((pieces & 0x3333333333333333L) << 2);
+        return ((pieces >>> 4) & 0x0F0F0F0F0F0F0F0FL) | ((pieces & 0x0F0F0F0F0F0F0F0FL) << 4);
+    }
+
+    /**
+     * Flips a mask about the a1-h8 diagonal: the square at (x, y) moves to
+     * (y, x).
+     *
+     * @param pieces the mask
+     * @return the transposed mask
+     */
+    public static long transpose(long pieces) {
+        long t = (pieces ^ (pieces >>> 7)) & 0x00AA00AA00AA00AAL;
+        pieces ^= t ^ (t << 7);
+        t = (pieces ^ (pieces >>> 14)) & 0x0000CCCC0000CCCCL;
+        pieces ^= t ^ (t << 14);
+        t = (pieces ^ (pieces >>> 28)) & 0x00000000F0F0F0F0L;
+        return pieces ^ t ^ (t << 28);
+    }
+
+    /**
+     * Returns the empty squares next to any of the pieces, in any of the
+     * eight directions.
+     *
+     * @param pieces the pieces
+     * @param empty  the empty squares
+     * @return the empty neighbours
+     */
+    public static long neighbours(long pieces, long empty) {
+        long notRightFile = pieces & 0x7F7F7F7F7F7F7F7FL;
+        long notLeftFile = pieces & 0xFEFEFEFEFEFEFEFEL;
+        long near = (pieces << 8) | (pieces >>> 8)
+                | (notRightFile << 1) | (notRightFile << 9) | (notRightFile >>> 7)
+                | (notLeftFile >>> 1) | (notLeftFile >>> 9) | (notLeftFile << 7);
+
+        return near & empty;
+    }
+
+    /**
+     * Returns the number of pieces in a mask.
+     *
+     * @param pieces the mask to count
+     * @return the number of set bits
+     */
+    public static int count(long pieces) {
+        return Long.bitCount(pieces);
+    }
+}
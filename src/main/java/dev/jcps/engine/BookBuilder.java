@@ -0,0 +1,537 @@
+package dev.jcps.engine;
+
+/*
+*****************************************************************************
+
+ Desdemona: The Java Othello game.
+ Copyright (C) 2001 Kenneth D. Huffman.
+
+ This program is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 2 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License (gnu.org/copyleft/gpl.html) for more details.
+
+ The author can be reached at www.huffmancoding.com.
+ *****************************************************************************
+ */
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+/**
+ * This class grows an opening book and writes it in the form read by
+ * OpeningBook.  Positions are added from games, either imported from a
+ * file or played by the computer against itself, up to a number of moves
+ * into the game.
+ * <p>
+ * Every book position gets a deviation: the best of its moves that leave
+ * the book, each searched to a fixed level.  The value of a position is
+ * then backed up from the end of the book by negamax, being the better of
+ * its deviation and the negated values of its moves that stay in the book.
+ * An existing book is loaded first, and only the deviations that a new
+ * position made out of date are searched again.
+ * <p>
+ * Positions are kept in their canonical forms (see Symmetry), so games
+ * that are rotations or mirror images of each other grow the same
+ * positions, and a book from before that is turned as it is loaded.
+ * <p>
+ * Run it from the command line:
+ * <pre>
+ *     java -cp desdemona.jar dev.jcps.engine.BookBuilder desdemona.book
+ *             [-games file] [-selfplay count] [-plies n] [-level n]
+ * </pre>
+ * A games file has one game per line as moves like "f5d6c3", with passes
+ * left out.  Lines starting with '#' are ignored.
+ *
+ * @author Ken Huffman
+ */
+public final class BookBuilder {
+    /**
+     * the number of moves played at random at the start of each self-play
+     * game, so the games differ
+     */
+    private static final int RANDOM_PLIES = 8;
+
+    /**
+     * the book positions
+     */
+    private final Map<Key, Node> itsNodes = new HashMap<>();
+    /**
+     * the search that scores the deviations
+     */
+    private final Engine itsEngine;
+    /**
+     * the level the deviations are searched to
+     */
+    private final int itsLevel;
+    /**
+     * the number of moves into a game that positions are added
+     */
+    private final int itsPlies;
+
+    /**
+     * Constructor.
+     *
+     * @param level the level to search the deviations to
+     * @param plies the number of moves into a game that positions are
+     *              added to the book
+     */
+    public BookBuilder(int level, int plies) {
+        itsEngine = new Engine(16, null);
+        itsLevel = level;
+        itsPlies = plies;
+    }
+
+    /**
+     * Returns the number of positions in the book.
+     *
+     * @return the position count
+     */
+    public int size() {
+        return itsNodes.size();
+    }
+
+    /**
+     * Adds every position of an existing book, keeping its deviations.
+     *
+     * @param book the book to grow
+     */
+    public void load(OpeningBook book) {
+        for (int i = 0; i < book.size(); ++i) {
+            long player = book.getPlayer(i);
+            long opponent = book.getOpponent(i);
+            Node node = node(player, opponent);
+            node.itsDeviationMove = Symmetry.square(book.getDeviationMove(i),
+                    Symmetry.canonical(player, opponent));
+            node.itsDeviationScore = book.getDeviationScore(i);
+            node.itsLevel = book.getLevel(i);
+        }
+    }
+
+    /**
+     * Adds the positions of a game.
+     *
+     * @param moves the bit numbers of the moves from the start of the game,
+     *              passes left out
+     * @throws IllegalArgumentException if a move is not legal
+     */
+    public void addGame(int[] moves) {
+        Position position = Position.START;
+        int ply = 0;
+        for (int move : moves) {
+            if (ply >= itsPlies) {
+                break;
+            }
+            node(position.getPlayer(), position.getOpponent());
+            if (BitBoard.moves(position.getPlayer(), position.getOpponent()) == 0) {
+                position = position.play(-1);
+                node(position.getPlayer(), position.getOpponent());
+            }
+            position = position.play(move);
+            ++ply;
+        }
+        node(position.getPlayer(), position.getOpponent());
+    }
+
+    /**
+     * Adds the positions of every game in a file.
+     *
+     * @param file the games, one per line
+     * @return the number of games added
+     * @throws IOException if the file cannot be read
+     * @throws IllegalArgumentException if a game has an illegal move
+     */
+    public int addGames(Path file) throws IOException {
+        int games = 0;
+        int lineNumber = 0;
+        for (String line : Files.readAllLines(file)) {
+            ++lineNumber;
+            String moves = line.replaceAll("\\s", "").toLowerCase();
+            if (moves.isEmpty() || moves.startsWith("#")) {
+                continue;
+            }
+
+            int[] game = new int[moves.length() / 2];
+            for (int i = 0; i < game.length; ++i) {
+                int x = moves.charAt(2 * i) - 'a';
+                int y = moves.charAt(2 * i + 1) - '1';
+                if (x < 0 || x >= BitBoard.SIZE || y < 0 || y >= BitBoard.SIZE) {
+                    throw new IllegalArgumentException(file + ":" + lineNumber + ": bad move "
+                            + moves.substring(2 * i, 2 * i + 2));
+                }
+                game[i] = BitBoard.square(x, y);
+            }
+            try {
+                addGame(game);
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException(file + ":" + lineNumber + ": " + e.getMessage());
+            }
+            ++games;
+        }
+
+        return games;
+    }
+
+    /**
+     * Plays games of the computer against itself and adds their positions.
+     * The first few moves of each game are random, the rest are searched.
+     *
+     * @param games the number of games
+     * @param seed  the seed of the random moves
+     */
+    public void selfPlay(int games, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        for (int game = 0; game < games; ++game) {
+            List<Integer> moves = new ArrayList<>();
+            Position position = Position.START;
+            for (int ply = 0; ply < itsPlies; ++ply) {
+                long legal = BitBoard.moves(position.getPlayer(), position.getOpponent());
+                if (legal == 0) {
+                    if (BitBoard.moves(position.getOpponent(), position.getPlayer()) == 0) {
+                        break;
+                    }
+                    position = position.play(-1);
+                    continue;
+                }
+
+                int move;
+                if (ply < RANDOM_PLIES) {
+                    for (int skip = random.nextInt(BitBoard.count(legal)); skip > 0; --skip) {
+                        legal &= legal - 1;
+                    }
+                    move = Long.numberOfTrailingZeros(legal);
+                } else {
+                    move = itsEngine.search(position.getPlayer(), position.getOpponent(),
+                            itsLevel).getMove();
+                }
+                moves.add(move);
+                position = position.play(move);
+            }
+            addGame(moves.stream().mapToInt(Integer::intValue).toArray());
+        }
+    }
+
+    /**
+     * Searches the deviations that are missing or out of date, then backs
+     * up the values of every position by negamax.
+     */
+    public void evaluate() {
+        for (Node node : itsNodes.values()) {
+            node.itsValued = false;
+            if (node.itsLevel < itsLevel || isInBook(node, node.itsDeviationMove)) {
+                searchDeviation(node);
+            }
+        }
+        for (Node node : itsNodes.values()) {
+            value(node);
+        }
+    }
+
+    /**
+     * Writes the book, sorted by position.
+     *
+     * @param file the book file to write
+     * @throws IOException if the file cannot be written
+     */
+    public void write(Path file) throws IOException {
+        List<Node> nodes = new ArrayList<>(itsNodes.values());
+        nodes.sort((a, b) -> OpeningBook.compare(a.itsPlayer, a.itsOpponent,
+                b.itsPlayer, b.itsOpponent));
+
+        try (OutputStream stream = Files.newOutputStream(file);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream))) {
+            out.write(OpeningBook.MAGIC);
+            out.writeLong(nodes.size());
+            for (Node node : nodes) {
+                out.writeLong(node.itsPlayer);
+                out.writeLong(node.itsOpponent);
+                out.writeShort(node.itsValue);
+                out.writeByte(node.itsMove < 0 ? OpeningBook.NO_MOVE : node.itsMove);
+                out.writeByte(node.itsDeviationMove < 0 ? OpeningBook.NO_MOVE : node.itsDeviationMove);
+                out.writeShort(node.itsDeviationScore);
+                out.writeByte(node.itsLevel);
+                out.writeByte(0);
+            }
+        }
+    }
+
+    /**
+     * Returns the node of a position, adding it in its canonical form if it
+     * is new.
+     *
+     * @param player   the pieces of the player to move
+     * @param opponent the pieces of his opponent
+     * @return the node
+     */
+    private Node node(long player, long opponent) {
+        int symmetry = Symmetry.canonical(player, opponent);
+        long canonicalPlayer = Symmetry.apply(player, symmetry);
+        long canonicalOpponent = Symmetry.apply(opponent, symmetry);
+        return itsNodes.computeIfAbsent(new Key(canonicalPlayer, canonicalOpponent),
+                key -> new Node(canonicalPlayer, canonicalOpponent));
+    }
+
+    /**
+     * Returns the node of a position, if it is in the book.
+     *
+     * @param player   the pieces of the player to move
+     * @param opponent the pieces of his opponent
+     * @return the node, or null if it is not in the book
+     */
+    private Node find(long player, long opponent) {
+        int symmetry = Symmetry.canonical(player, opponent);
+        return itsNodes.get(new Key(Symmetry.apply(player, symmetry),
+                Symmetry.apply(opponent, symmetry)));
+    }
+
+    /**
+     * Returns the book node after a move.
+     *
+     * @param node the position
+     * @param move the bit number of the move, or -1 to pass
+     * @return the node after the move, or null if it is not in the book
+     */
+    private Node child(Node node, int move) {
+        if (move < 0) {
+            return find(node.itsOpponent, node.itsPlayer);
+        }
+
+        long flipped = BitBoard.flips(node.itsPlayer, node.itsOpponent, move);
+        return find(node.itsOpponent & ~flipped, node.itsPlayer | flipped | (1L << move));
+    }
+
+    /**
+     * Determines if a move of a position stays in the book.
+     *
+     * @param node the position
+     * @param move the bit number of the move, or -1 if none
+     * @return true, if the position after the move is in the book
+     */
+    private boolean isInBook(Node node, int move) {
+        return move >= 0 && child(node, move) != null;
+    }
+
+    /**
+     * Searches every move of a position that leaves the book, and keeps the
+     * best as its deviation.
+     *
+     * @param node the position
+     */
+    private void searchDeviation(Node node) {
+        long moves = BitBoard.moves(node.itsPlayer, node.itsOpponent);
+        node.itsDeviationMove = -1;
+        node.itsDeviationScore = -Search.BIG_SCORE;
+        node.itsLevel = itsLevel;
+        if (moves == 0) {
+            // a pass, or the end of the game, is searched as it is
+            node.itsDeviationScore = itsEngine.search(node.itsPlayer, node.itsOpponent,
+                    itsLevel).getScore();
+            return;
+        }
+
+        for (; moves != 0; moves &= moves - 1) {
+            int sq = Long.numberOfTrailingZeros(moves);
+            if (isInBook(node, sq)) {
+                continue;
+            }
+            long flipped = BitBoard.flips(node.itsPlayer, node.itsOpponent, sq);
+            int score = -itsEngine.search(node.itsOpponent & ~flipped,
+                    node.itsPlayer | flipped | (1L << sq), itsLevel - 1).getScore();
+            if (score > node.itsDeviationScore) {
+                node.itsDeviationScore = score;
+                node.itsDeviationMove = sq;
+            }
+        }
+    }
+
+    /**
+     * Backs up the value of a position from the positions after its moves,
+     * valuing those first.
+     *
+     * @param node the position
+     * @return its value
+     */
+    private int value(Node node) {
+        if (node.itsValued) {
+            return node.itsValue;
+        }
+
+        node.itsValue = node.itsDeviationScore;
+        node.itsMove = node.itsDeviationMove;
+        long moves = BitBoard.moves(node.itsPlayer, node.itsOpponent);
+        if (moves == 0) {
+            Node child = BitBoard.moves(node.itsOpponent, node.itsPlayer) != 0 ?
+                    child(node, -1) : null;
+            if (child != null) {
+                node.itsValue = -value(child);
+            }
+        }
+        for (; moves != 0; moves &= moves - 1) {
+            int sq = Long.numberOfTrailingZeros(moves);
+            Node child = child(node, sq);
+            if (child != null) {
+                int score = -value(child);
+                if (score > node.itsValue) {
+                    node.itsValue = score;
+                    node.itsMove = sq;
+                }
+            }
+        }
+        node.itsValued = true;
+
+        return node.itsValue;
+    }
+
+    /**
+     * Grows a book from the command line.
+     *
+     * @param args the book file, then the options
+     * @throws IOException if a file cannot be read or written
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Usage: BookBuilder book [-games file] [-selfplay count]"
+                    + " [-plies n] [-level n]");
+            System.exit(1);
+        }
+
+        Path book = Path.of(args[0]);
+        Path games = null;
+        int selfPlay = 0;
+        int plies = 16;
+        int level = 8;
+        for (int i = 1; i < args.length; i += 2) {
+            if (i + 1 == args.length) {
+                throw new IllegalArgumentException("Missing value for " + args[i]);
+            }
+            switch (args[i]) {
+                case "-games" -> games = Path.of(args[i + 1]);
+                case "-selfplay" -> selfPlay = Integer.parseInt(args[i + 1]);
+                case "-plies" -> plies = Integer.parseInt(args[i + 1]);
+                case "-level" -> level = Integer.parseInt(args[i + 1]);
+                default -> throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+
+        BookBuilder builder = new BookBuilder(level, plies);
+        if (Files.exists(book)) {
+            builder.load(OpeningBook.open(book));
+        }
+        if (games != null) {
+            System.out.println("Imported " + builder.addGames(games) + " games");
+        }
+        builder.selfPlay(selfPlay, System.nanoTime());
+        builder.evaluate();
+        builder.write(book);
+        System.out.println("Wrote " + builder.size() + " positions to " + book);
+    }
+
+    /**
+     * This class is the key of a position in the map of book positions.
+     */
+    private static final class Key {
+        /**
+         * the pieces of the player to move
+         */
+        private final long itsPlayer;
+        /**
+         * the pieces of his opponent
+         */
+        private final long itsOpponent;
+
+        /**
+         * Constructor.
+         *
+         * @param player   the pieces of the player to move
+         * @param opponent the pieces of his opponent
+         */
+        private Key(long player, long opponent) {
+            itsPlayer = player;
+            itsOpponent = opponent;
+        }
+
+        /**
+         * Determines if another key is of the same position.
+         *
+         * @param o the other key
+         * @return true, if both have the same pieces
+         */
+        public boolean equals(Object o) {
+            return o instanceof Key && ((Key) o).itsPlayer == itsPlayer
+                    && ((Key) o).itsOpponent == itsOpponent;
+        }
+
+        /**
+         * Returns the hash code of the position.
+         *
+         * @return the Zobrist hash, folded to an int
+         */
+        public int hashCode() {
+            long hash = Zobrist.hash(itsPlayer, itsOpponent);
+            return (int) (hash ^ (hash >>> 32));
+        }
+    }
+
+    /**
+     * This class holds what the builder knows about one book position.
+     */
+    private static final class Node {
+        /**
+         * the pieces of the player to move
+         */
+        private final long itsPlayer;
+        /**
+         * the pieces of his opponent
+         */
+        private final long itsOpponent;
+        /**
+         * the negamax value of the position
+         */
+        private int itsValue;
+        /**
+         * the move achieving the value, or -1
+         */
+        private int itsMove = -1;
+        /**
+         * the best move leaving the book, or -1
+         */
+        private int itsDeviationMove = -1;
+        /**
+         * the searched score of the deviation
+         */
+        private int itsDeviationScore;
+        /**
+         * the level the deviation was searched to, 0 if never
+         */
+        private int itsLevel;
+        /**
+         * whether itsValue has been backed up by the current evaluate
+         */
+        private boolean itsValued;
+
+        /**
+         * Constructor.
+         *
+         * @param player   the pieces of the player to move
+         * @param opponent the pieces of his opponent
+         */
+        private Node(long player, long opponent) {
+            itsPlayer = player;
+            itsOpponent = opponent;
+        }
+    }
+}
@@ -0,0 +1,792 @@
+package dev.jcps.engine;
+
+/*
+*****************************************************************************
+
+ Desdemona: The Java Othello game.
+ Copyright (C) 2001 Kenneth D. Huffman.
+
+ This program is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 2 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License (gnu.org/copyleft/gpl.html) for more details.
+
+ The author can be reached at www.huffmancoding.com.
+ *****************************************************************************
+ */
+
+import java.util.function.BooleanSupplier;
+
+/**
+ * This class plays the last moves of a game perfectly by searching every
+ * move to the end of the game.  Scores are final disc differences, with the
+ * empty squares of a finished game going to its winner, so they run from
+ * -64 to 64.  It can find the exact score, or only whether the game is won,
+ * lost or drawn, which is much faster.
+ * <p>
+ * Far from the end, moves are tried "fastest first": the move leaving the
+ * opponent the fewest replies goes first, and results are remembered in a
+ * transposition table.  Closer to the end, where that costs more than it
+ * saves, moves into regions of the board with an odd number of empty
+ * squares go first, since the last move of such a region is usually ours.
+ * The last four empty squares have their own routines that work straight
+ * from the list of empties.  Whenever the score to beat is out of reach of
+ * the squares the opponent can never lose, the position is cut off.
+ *
+ * @author Ken Huffman
+ */
+public final class EndgameSolver {
+    /**
+     * bigger than the best possible score
+     */
+    private static final int BIG_SCORE = 65;
+    /**
+     * the fewest empty squares for fastest first ordering
+     */
+    private static final int DEEP_EMPTIES = 7;
+    /**
+     * the fewest empty squares for using the transposition table
+     */
+    private static final int TABLE_EMPTIES = 8;
+    /**
+     * the fewest empty squares to check the opponent's stable pieces, below
+     * this they are cheaper to search
+     */
+    private static final int STABILITY_EMPTIES = 5;
+    /**
+     * the clock is read once for every this many nodes plus one
+     */
+    private static final int CLOCK_CHECK_MASK = 4095;
+    /**
+     * mixed into the hash codes so solved positions never match the
+     * midgame search's entries in a shared table
+     */
+    private static final long HASH_SALT = 0x5A17E2D1C0FFEE5L;
+    /**
+     * the quadrant bit (1, 2, 4 or 8) of each square
+     */
+    private static final int[] QUADRANT = new int[BitBoard.SQUARES];
+    /**
+     * for each combination of quadrant bits, the squares of those quadrants
+     */
+    private static final long[] QUADRANT_SQUARES = new long[16];
+
+    static {
+        for (int sq = 0; sq < BitBoard.SQUARES; ++sq) {
+            QUADRANT[sq] = 1 << ((BitBoard.x(sq) >> 2) + ((BitBoard.y(sq) >> 2) << 1));
+        }
+        for (int parity = 0; parity < 16; ++parity) {
+            for (int sq = 0; sq < BitBoard.SQUARES; ++sq) {
+                if ((QUADRANT[sq] & parity) != 0) {
+                    QUADRANT_SQUARES[parity] |= 1L << sq;
+                }
+            }
+        }
+    }
+
+    /**
+     * the remembered results, or null if there is no table
+     */
+    private final TranspositionTable itsTable;
+    /**
+     * the ordered moves for each number of empty squares
+     */
+    private final int[][] itsMoves = new int[BitBoard.SQUARES][BitBoard.SQUARES];
+    /**
+     * the ordering keys of itsMoves
+     */
+    private final int[][] itsKeys = new int[BitBoard.SQUARES][BitBoard.SQUARES];
+    /**
+     * the best move found by the last solve, or -1 to pass
+     */
+    private int itsBestMove = -1;
+    /**
+     * the number of positions visited by the last solve
+     */
+    private long itsNodeCount;
+    /**
+     * the System.nanoTime when the solve must stop
+     */
+    private long itsDeadline = Long.MAX_VALUE;
+    /**
+     * whether the solve ran out of time or was told to stop
+     */
+    private volatile boolean itsStopped;
+    /**
+     * tells whether a stop was asked for before the solve began, or null
+     */
+    private BooleanSupplier itsStopRequest;
+
+    /**
+     * Constructor.
+     *
+     * @param table the transposition table to share with other searches, or
+     *              null for none
+     */
+    public EndgameSolver(TranspositionTable table) {
+        itsTable = table;
+    }
+
+    /**
+     * Solves a position.
+     *
+     * @param me       the pieces of the player taking the turn
+     * @param opponent the pieces of his opponent
+     * @param exact    true for the exact score, false for only win (1),
+     *                 draw (0) or loss (-1)
+     * @param deadline the System.nanoTime to give up at, Long.MAX_VALUE for
+     *                 never
+     * @return the score from the point of view of me, meaningless if the
+     * solve was stopped
+     */
+    public int solve(long me, long opponent, boolean exact, long deadline) {
+        itsNodeCount = 0;
+        itsDeadline = deadline;
+        itsStopped = false;
+        if (itsStopRequest != null && itsStopRequest.getAsBoolean()) {
+            itsStopped = true;
+        }
+        itsBestMove = -1;
+
+        int empties = BitBoard.SQUARES - BitBoard.count(me | opponent);
+        int parity = parity(~(me | opponent));
+        int alpha = exact ? -BIG_SCORE : -1;
+        int beta = exact ? BIG_SCORE : 1;
+
+        long moves = BitBoard.moves(me, opponent);
+        if (moves == 0) {
+            if (BitBoard.moves(opponent, me) == 0) {
+                return clamp(finalScore(me, opponent), exact);
+            }
+            return clamp(-solveAny(opponent, me, -beta, -alpha, empties, parity), exact);
+        }
+
+        int count = order(me, opponent, moves, empties, parity);
+        int[] ordered = itsMoves[empties];
+        int bestScore = -BIG_SCORE;
+        for (int i = 0; i < count && !itsStopped; ++i) {
+            int sq = ordered[i];
+            long flipped = BitBoard.flips(me, opponent, sq);
+            long nextMe = opponent & ~flipped;
+            long nextOpponent = me | flipped | (1L << sq);
+            int nextParity = parity ^ QUADRANT[sq];
+
+            int score;
+            if (i == 0) {
+                score = -solveAny(nextMe, nextOpponent, -beta, -alpha, empties - 1, nextParity);
+            } else {
+                // prove the move is no better with a null window first
+                score = -solveAny(nextMe, nextOpponent, -alpha - 1, -alpha, empties - 1, nextParity);
+                if (score > alpha && score < beta && !itsStopped) {
+                    score = -solveAny(nextMe, nextOpponent, -beta, -score, empties - 1, nextParity);
+                }
+            }
+            if (itsStopped) {
+                break;
+            }
+            if (score > bestScore) {
+                bestScore = score;
+                itsBestMove = sq;
+                if (score > alpha) {
+                    alpha = score;
+                    if (alpha >= beta) {
+                        break;
+                    }
+                }
+            }
+        }
+
+        return clamp(bestScore, exact);
+    }
+
+    /**
+     * Sets what each solve asks, once it has started, whether it should
+     * stop at once.  A stop that lands just before a solve starts would
+     * otherwise be forgotten when the solve resets its flag.
+     *
+     * @param request true if a stop was asked for, or null for none
+     */
+    void setStopRequest(BooleanSupplier request) {
+        itsStopRequest = request;
+    }
+
+    /**
+     * Tells a running solve to stop as soon as possible.
+     */
+    public void stop() {
+        itsStopped = true;
+    }
+
+    /**
+     * Determines if the last solve was stopped before it finished.
+     *
+     * @return true, if its score and move cannot be trusted
+     */
+    public boolean isStopped() {
+        return itsStopped;
+    }
+
+    /**
+     * Returns the best move found by the last solve.
+     *
+     * @return the bit number of the move, or -1 to pass
+     */
+    public int getBestMove() {
+        return itsBestMove;
+    }
+
+    /**
+     * Returns the number of positions visited by the last solve.
+     *
+     * @return the node count
+     */
+    public long getNodeCount() {
+        return itsNodeCount;
+    }
+
+    /**
+     * Turns a score into win (1), draw (0) or loss (-1) unless the exact
+     * score is wanted.
+     *
+     * @param score the disc difference or a bound on it
+     * @param exact whether to keep the exact score
+     * @return the score to report
+     */
+    private static int clamp(int score, boolean exact) {
+        return exact ? score : Integer.signum(score);
+    }
+
+    /**
+     * Returns the quadrant parity of the empty squares: a quadrant's bit is
+     * set when it has an odd number of them.
+     *
+     * @param empty the mask of empty squares
+     * @return the parity bits
+     */
+    private static int parity(long empty) {
+        int parity = 0;
+        for (; empty != 0; empty &= empty - 1) {
+            parity ^= QUADRANT[Long.numberOfTrailingZeros(empty)];
+        }
+
+        return parity;
+    }
+
+    /**
+     * Returns the score of a finished game, the empty squares going to the
+     * winner.
+     *
+     * @param me       the pieces of the player taking the turn
+     * @param opponent the pieces of his opponent
+     * @return the disc difference from the point of view of me
+     */
+    private static int finalScore(long me, long opponent) {
+        int mine = BitBoard.count(me);
+        int theirs = BitBoard.count(opponent);
+        int empties = BitBoard.SQUARES - mine - theirs;
+        if (mine > theirs) {
+            return mine - theirs + empties;
+        } else if (mine < theirs) {
+            return mine - theirs - empties;
+        }
+
+        return 0;
+    }
+
+    /**
+     * Solves a position with the routine suited to its number of empty
+     * squares.
+     *
+     * @param me       the pieces of the player taking the turn
+     * @param opponent the pieces of his opponent
+     * @param alpha    the score already assured
+     * @param beta     the score that is already too good to be allowed
+     * @param empties  the number of empty squares
+     * @param parity   the quadrant parity of the empty squares
+     * @return the score from the point of view of me
+     */
+    private int solveAny(long me, long opponent, int alpha, int beta,
+                         int empties, int parity) {
+        if (empties >= DEEP_EMPTIES) {
+            return solveDeep(me, opponent, alpha, beta, empties, parity);
+        } else if (empties > 4) {
+            return solveShallow(me, opponent, alpha, beta, empties, parity, false);
+        } else if (empties == 0) {
+            return finalScore(me, opponent);
+        }
+
+        long empty = ~(me | opponent);
+        int x1 = Long.numberOfTrailingZeros(empty);
+        if (empties == 1) {
+            return solve1(me, opponent, x1);
+        }
+        empty &= empty - 1;
+        int x2 = Long.numberOfTrailingZeros(empty);
+        if (empties == 2) {
+            return solve2(me, opponent, alpha, beta, x1, x2, false);
+        }
+        empty &= empty - 1;
+        int x3 = Long.numberOfTrailingZeros(empty);
+        if (empties == 3) {
+            return solve3(me, opponent, alpha, beta, x1, x2, x3, false);
+        }
+        empty &= empty - 1;
+        return solve4(me, opponent, alpha, beta, x1, x2, x3,
+                Long.numberOfTrailingZeros(empty), parity, false);
+    }
+
+    /**
+     * Solves a position with many empty squares, ordering the moves fastest
+     * first and using the transposition table.
+     *
+     * @param me       the pieces of the player taking the turn
+     * @param opponent the pieces of his opponent
+     * @param alpha    the score already assured
+     * @param beta     the score that is already too good to be allowed
+     * @param empties  the number of empty squares
+     * @param parity   the quadrant parity of the empty squares
+     * @return the score from the point of view of me
+     */
+    private int solveDeep(long me, long opponent, int alpha, int beta,
+                          int empties, int parity) {
+        if ((++itsNodeCount & CLOCK_CHECK_MASK) == 0 && System.nanoTime() - itsDeadline > 0) {
+            itsStopped = true;
+        }
+        if (itsStopped) {
+            return 0;
+        }
+
+        int cutoff = stabilityCutoff(me, opponent, alpha);
+        if (cutoff != BIG_SCORE) {
+            return cutoff;
+        }
+
+        long hash = 0;
+        int hashMove = -1;
+        if (itsTable != null && empties >= TABLE_EMPTIES) {
+            hash = Zobrist.hash(me, opponent) ^ HASH_SALT;
+            long entry = itsTable.probe(hash);
+            if (entry != TranspositionTable.MISS) {
+                hashMove = TranspositionTable.move(entry);
+                if (TranspositionTable.depth(entry) == empties) {
+                    int score = TranspositionTable.score(entry);
+                    int bound = TranspositionTable.bound(entry);
+                    if (bound == TranspositionTable.EXACT
+                            || (bound == TranspositionTable.LOWER && score >= beta)
+                            || (bound == TranspositionTable.UPPER && score <= alpha)) {
+                        return score;
+                    }
+                }
+            }
+        }
+
+        long moves = BitBoard.moves(me, opponent);
+        if (moves == 0) {
+            if (BitBoard.moves(opponent, me) == 0) {
+                return finalScore(me, opponent);
+            }
+            return -solveDeep(opponent, me, -beta, -alpha, empties, parity);
+        }
+
+        int count = order(me, opponent, moves, empties, parity);
+        int[] ordered = itsMoves[empties];
+        if (hashMove >= 0) {
+            // bring the remembered move to the front
+            for (int i = 0; i < count; ++i) {
+                if (ordered[i] == hashMove) {
+                    System.arraycopy(ordered, 0, ordered, 1, i);
+                    ordered[0] = hashMove;
+                    break;
+                }
+            }
+        }
+
+        int firstAlpha = alpha;
+        int bestScore = -BIG_SCORE;
+        int bestMove = -1;
+        for (int i = 0; i < count; ++i) {
+            int sq = ordered[i];
+            long flipped = BitBoard.flips(me, opponent, sq);
+            long nextMe = opponent & ~flipped;
+            long nextOpponent = me | flipped | (1L << sq);
+            int nextParity = parity ^ QUADRANT[sq];
+
+            int score;
+            if (i == 0) {
+                score = -solveAny(nextMe, nextOpponent, -beta, -alpha, empties - 1, nextParity);
+            } else {
+                score = -solveAny(nextMe, nextOpponent, -alpha - 1, -alpha, empties - 1, nextParity);
+                if (score > alpha && score < beta) {
+                    score = -solveAny(nextMe, nextOpponent, -beta, -score, empties - 1, nextParity);
+                }
+            }
+            if (itsStopped) {
+                return 0;
+            }
+            if (score > bestScore) {
+                bestScore = score;
+                bestMove = sq;
+                if (score > alpha) {
+                    alpha = score;
+                    if (alpha >= beta) {
+                        break;
+                    }
+                }
+            }
+        }
+
+        if (hash != 0) {
+            itsTable.store(hash, empties, bestScore <= firstAlpha ? TranspositionTable.UPPER :
+                    bestScore >= beta ? TranspositionTable.LOWER :
+                            TranspositionTable.EXACT, bestScore, bestMove);
+        }
+
+        return bestScore;
+    }
+
+    /**
+     * Fills in itsMoves[empties] with the legal moves, the ones leaving the
+     * opponent the fewest replies first, then corners and moves into odd
+     * quadrants.
+     *
+     * @param me       the pieces of the player taking the turn
+     * @param opponent the pieces of his opponent
+     * @param moves    the mask of legal moves
+     * @param empties  the number of empty squares
+     * @param parity   the quadrant parity of the empty squares
+     * @return the number of moves
+     */
+    private int order(long me, long opponent, long moves, int empties, int parity) {
+        int[] ordered = itsMoves[empties];
+        int[] keys = itsKeys[empties];
+        int count = 0;
+        for (; moves != 0; moves &= moves - 1) {
+            int sq = Long.numberOfTrailingZeros(moves);
+            long flipped = BitBoard.flips(me, opponent, sq);
+            long nextOpponent = me | flipped | (1L << sq);
+            long replies = BitBoard.moves(opponent & ~flipped, nextOpponent);
+
+            // a reply in a corner counts double
+            int key = -16 * (BitBoard.count(replies) + BitBoard.count(replies & BitBoard.CORNERS));
+            if ((QUADRANT[sq] & parity) != 0) {
+                key += 4;
+            }
+            if (((1L << sq) & BitBoard.CORNERS) != 0) {
+                key += 8;
+            }
+
+            int i = count++;
+            while (i > 0 && keys[i - 1] < key) {
+                ordered[i] = ordered[i - 1];
+                keys[i] = keys[i - 1];
+                --i;
+            }
+            ordered[i] = sq;
+            keys[i] = key;
+        }
+
+        return count;
+    }
+
+    /**
+     * Returns a score that cuts off the position because the opponent's
+     * stable pieces already keep me at or below the score already assured.
+     *
+     * @param me       the pieces of the player taking the turn
+     * @param opponent the pieces of his opponent
+     * @param alpha    the score already assured
+     * @return the cutoff score, or BIG_SCORE if there is no cutoff
+     */
+    private static int stabilityCutoff(long me, long opponent, int alpha) {
+        // with no stable pieces at all the best is 64, so only look when
+        // the stable pieces could possibly matter
+        if (alpha >= 0) {
+            int best = BitBoard.SQUARES - 2 * BitBoard.count(Stability.stable(opponent, me));
+            if (best <= alpha) {
+                return best;
+            }
+        }
+
+        return BIG_SCORE;
+    }
+
+    /**
+     * Solves a position with five or six empty squares, trying the empty
+     * squares in odd quadrants first.
+     *
+     * @param me       the pieces of the player taking the turn
+     * @param opponent the pieces of his opponent
+     * @param alpha    the score already assured
+     * @param beta     the score that is already too good to be allowed
+     * @param empties  the number of empty squares
+     * @param parity   the quadrant parity of the empty squares
+     * @param passed   whether the opponent just passed
+     * @return the score from the point of view of me
+     */
+    private int solveShallow(long me, long opponent, int alpha, int beta,
+                             int empties, int parity, boolean passed) {
+        ++itsNodeCount;
+        if (empties >= STABILITY_EMPTIES) {
+            int cutoff = stabilityCutoff(me, opponent, alpha);
+            if (cutoff != BIG_SCORE) {
+                return cutoff;
+            }
+        }
+
+        long empty = ~(me | opponent);
+        long odd = empty & QUADRANT_SQUARES[parity];
+        int bestScore = -BIG_SCORE;
+        for (int pass = 0; pass < 2; ++pass) {
+            for (long squares = pass == 0 ? odd : empty & ~odd; squares != 0; squares &= squares - 1) {
+                int sq = Long.numberOfTrailingZeros(squares);
+                long flipped = BitBoard.flips(me, opponent, sq);
+                if (flipped == 0) {
+                    continue;
+                }
+
+                int score = -solveAny(opponent & ~flipped, me | flipped | (1L << sq),
+                        -beta, -alpha, empties - 1, parity ^ QUADRANT[sq]);
+                if (score > bestScore) {
+                    bestScore = score;
+                    if (score > alpha) {
+                        alpha = score;
+                        if (alpha >= beta) {
+                            return bestScore;
+                        }
+                    }
+                }
+            }
+        }
+
+        if (bestScore == -BIG_SCORE) {
+            if (passed) {
+                return finalScore(me, opponent);
+            }
+            return -solveShallow(opponent, me, -beta, -alpha, empties, parity, true);
+        }
+
+        return bestScore;
+    }
+
+    /**
+     * Solves a position with four empty squares, trying those in odd
+     * quadrants first.
+     *
+     * @param me       the pieces of the player taking the turn
+     * @param opponent the pieces of his opponent
+     * @param alpha    the score already assured
+     * @param beta     the score that is already too good to be allowed
+     * @param x1       the first empty square
+     * @param x2       the second empty square
+     * @param x3       the third empty square
+     * @param x4       the fourth empty square
+     * @param parity   the quadrant parity of the empty squares
+     * @param passed   whether the opponent just passed
+     * @return the score from the point of view of me
+     */
+    private int solve4(long me, long opponent, int alpha, int beta,
+                       int x1, int x2, int x3, int x4, int parity, boolean passed) {
+        ++itsNodeCount;
+
+        // move the squares in odd quadrants to the front
+        if ((QUADRANT[x1] & parity) == 0) {
+            if ((QUADRANT[x2] & parity) != 0) {
+                int swap = x1;
+                x1 = x2;
+                x2 = swap;
+            } else if ((QUADRANT[x3] & parity) != 0) {
+                int swap = x1;
+                x1 = x3;
+                x3 = swap;
+            } else if ((QUADRANT[x4] & parity) != 0) {
+                int swap = x1;
+                x1 = x4;
+                x4 = swap;
+            }
+        }
+        if ((QUADRANT[x2] & parity) == 0) {
+            if ((QUADRANT[x3] & parity) != 0) {
+                int swap = x2;
+                x2 = x3;
+                x3 = swap;
+            } else if ((QUADRANT[x4] & parity) != 0) {
+                int swap = x2;
+                x2 = x4;
+                x4 = swap;
+            }
+        }
+
+        int bestScore = -BIG_SCORE;
+        long flipped = BitBoard.flips(me, opponent, x1);
+        if (flipped != 0) {
+            bestScore = -solve3(opponent & ~flipped, me | flipped | (1L << x1),
+                    -beta, -alpha, x2, x3, x4, false);
+            if (bestScore >= beta) {
+                return bestScore;
+            }
+            alpha = Math.max(alpha, bestScore);
+        }
+        flipped = BitBoard.flips(me, opponent, x2);
+        if (flipped != 0) {
+            int score = -solve3(opponent & ~flipped, me | flipped | (1L << x2),
+                    -beta, -alpha, x1, x3, x4, false);
+            if (score >= beta) {
+                return score;
+            }
+            bestScore = Math.max(bestScore, score);
+            alpha = Math.max(alpha, score);
+        }
+        flipped = BitBoard.flips(me, opponent, x3);
+        if (flipped != 0) {
+            int score = -solve3(opponent & ~flipped, me | flipped | (1L << x3),
+                    -beta, -alpha, x1, x2, x4, false);
+            if (score >= beta) {
+                return score;
+            }
+            bestScore = Math.max(bestScore, score);
+            alpha = Math.max(alpha, score);
+        }
+        flipped = BitBoard.flips(me, opponent, x4);
+        if (flipped != 0) {
+            int score = -solve3(opponent & ~flipped, me | flipped | (1L << x4),
+                    -beta, -alpha, x1, x2, x3, false);
+            bestScore = Math.max(bestScore, score);
+        }
+
+        if (bestScore == -BIG_SCORE) {
+            if (passed) {
+                return finalScore(me, opponent);
+            }
+            return -solve4(opponent, me, -beta, -alpha, x1, x2, x3, x4, parity, true);
+        }
+
+        return bestScore;
+    }
+
+    /**
+     * Solves a position with three empty squares.
+     *
+     * @param me       the pieces of the player taking the turn
+     * @param opponent the pieces of his opponent
+     * @param alpha    the score already assured
+     * @param beta     the score that is already too good to be allowed
+     * @param x1       the first empty square
+     * @param x2       the second empty square
+     * @param x3       the third empty square
+     * @param passed   whether the opponent just passed
+     * @return the score from the point of view of me
+     */
+    private int solve3(long me, long opponent, int alpha, int beta,
+                       int x1, int x2, int x3, boolean passed) {
+        ++itsNodeCount;
+
+        int bestScore = -BIG_SCORE;
+        long flipped = BitBoard.flips(me, opponent, x1);
+        if (flipped != 0) {
+            bestScore = -solve2(opponent & ~flipped, me | flipped | (1L << x1),
+                    -beta, -alpha, x2, x3, false);
+            if (bestScore >= beta) {
+                return bestScore;
+            }
+            alpha = Math.max(alpha, bestScore);
+        }
+        flipped = BitBoard.flips(me, opponent, x2);
+        if (flipped != 0) {
+            int score = -solve2(opponent & ~flipped, me | flipped | (1L << x2),
+                    -beta, -alpha, x1, x3, false);
+            if (score >= beta) {
+                return score;
+            }
+            bestScore = Math.max(bestScore, score);
+            alpha = Math.max(alpha, score);
+        }
+        flipped = BitBoard.flips(me, opponent, x3);
+        if (flipped != 0) {
+            int score = -solve2(opponent & ~flipped, me | flipped | (1L << x3),
+                    -beta, -alpha, x1, x2, false);
+            bestScore = Math.max(bestScore, score);
+        }
+
+        if (bestScore == -BIG_SCORE) {
+            if (passed) {
+                return finalScore(me, opponent);
+            }
+            return -solve3(opponent, me, -beta, -alpha, x1, x2, x3, true);
+        }
+
+        return bestScore;
+    }
+
+    /**
+     * Solves a position with two empty squares.
+     *
+     * @param me       the pieces of the player taking the turn
+     * @param opponent the pieces of his opponent
+     * @param alpha    the score already assured
+     * @param beta     the score that is already too good to be allowed
+     * @param x1       the first empty square
+     * @param x2       the second empty square
+     * @param passed   whether the opponent just passed
+     * @return the score from the point of view of me
+     */
+    private int solve2(long me, long opponent, int alpha, int beta,
+                       int x1, int x2, boolean passed) {
+        ++itsNodeCount;
+
+        int bestScore = -BIG_SCORE;
+        long flipped = BitBoard.flips(me, opponent, x1);
+        if (flipped != 0) {
+            bestScore = -solve1(opponent & ~flipped, me | flipped | (1L << x1), x2);
+            if (bestScore >= beta) {
+                return bestScore;
+            }
+        }
+        flipped = BitBoard.flips(me, opponent, x2);
+        if (flipped != 0) {
+            int score = -solve1(opponent & ~flipped, me | flipped | (1L << x2), x1);
+            bestScore = Math.max(bestScore, score);
+        }
+
+        if (bestScore == -BIG_SCORE) {
+            if (passed) {
+                return finalScore(me, opponent);
+            }
+            return -solve2(opponent, me, -beta, -alpha, x1, x2, true);
+        }
+
+        return bestScore;
+    }
+
+    /**
+     * Solves a position with one empty square, counting the flips of
+     * whichever player can fill it.
+     *
+     * @param me       the pieces of the player taking the turn
+     * @param opponent the pieces of his opponent
+     * @param x1       the empty square
+     * @return the score from the point of view of me
+     */
+    private int solve1(long me, long opponent, int x1) {
+        ++itsNodeCount;
+
+        // with one empty square, mine - theirs = 2 * mine - 63
+        int mine = BitBoard.count(me);
+        int flipped = BitBoard.count(BitBoard.flips(me, opponent, x1));
+        if (flipped > 0) {
+            return 2 * (mine + flipped) - 62;
+        }
+        flipped = BitBoard.count(BitBoard.flips(opponent, me, x1));
+        if (flipped > 0) {
+            return 2 * (mine - flipped) - 64;
+        }
+
+        // nobody can fill it, so it goes to the winner (there are no ties)
+        int score = 2 * mine - 63;
+        return score > 0 ? score + 1 : score - 1;
+    }
+}
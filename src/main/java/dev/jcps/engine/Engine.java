@@ -0,0 +1,545 @@
+package dev.jcps.engine;
+
+/*
+*****************************************************************************
+
+ Desdemona: The Java Othello game.
+ Copyright (C) 2001 Kenneth D. Huffman.
+
+ This program is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 2 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License (gnu.org/copyleft/gpl.html) for more details.
+
+ The author can be reached at www.huffmancoding.com.
+ *****************************************************************************
+ */
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.BooleanSupplier;
+
+/**
+ * This class is the computer player without any user interface: give it a
+ * position and it gives back the best move, its score and the line of play
+ * it expects.  It knows nothing about windows or the AWT event thread, so
+ * it can be used by a game window, a server or a batch job alike, and it is
+ * cheap to construct when no transposition table is wanted.
+ * <p>
+ * Positions are a pair of masks as in BitBoard, one for the pieces of the
+ * player to move and one for his opponent's.  An Engine searches one
+ * position at a time, but stop, ponder and stopPondering may be called
+ * from any thread.
+ * <p>
+ * While the opponent thinks, the engine can ponder: it searches its reply
+ * to each of his moves in a background thread, the likeliest moves first,
+ * one level deeper at a time.  When the opponent's move was pondered deep
+ * enough, the next search answers at once; otherwise it starts with the
+ * pondered results in the transposition table and keeps the deeper of the
+ * two.  Pondering has a search of its own that shares the table, so
+ * stopping it can never stop the search for a move.
+ * <p>
+ * Every move searched is added to the SearchStatistics management bean and
+ * sent to the flight recorder as a SearchEvent.
+ *
+ * @author Ken Huffman
+ */
+public final class Engine {
+    /**
+     * the remembered search results, or null if there is no table
+     */
+    private final TranspositionTable itsTable;
+    /**
+     * the search doing the work
+     */
+    private final Search itsSearch;
+    /**
+     * the search pondering the opponent's moves, sharing the table
+     */
+    private final Search itsPonderSearch;
+    /**
+     * the opening book consulted before searching, or null for none
+     */
+    private OpeningBook itsBook;
+    /**
+     * the most empty squares for a timed search to solve the endgame
+     */
+    private int itsEndgameEmpties;
+    /**
+     * the thread pondering the opponent's moves, kept from one move to the
+     * next
+     */
+    private final ExecutorService itsPonderer;
+    /**
+     * the pondering under way, or null, guarded by this
+     */
+    private Future<?> itsPonderFuture;
+    /**
+     * whether the pondering thread has been told to stop
+     */
+    private volatile boolean itsPonderStopped;
+    /**
+     * the deepest completed result for each position pondered, by Zobrist
+     * hash.  It is written only by the pondering thread and read, guarded by
+     * this, only once its pondering has been waited for.
+     */
+    private final Map<Long, SearchResult> itsPondered = new HashMap<>();
+
+    /**
+     * Constructor.
+     *
+     * @param hashMegabytes the size of the transposition table, 0 for none
+     * @param pool          the threads to search with, or null to search
+     *                      only in the calling thread
+     */
+    public Engine(int hashMegabytes, ForkJoinPool pool) {
+        this(hashMegabytes > 0 ? new TranspositionTable(hashMegabytes) : null, pool);
+    }
+
+    /**
+     * Constructor for an engine using a table it may share, such as one
+     * mapped from a file to be kept between runs.
+     *
+     * @param table the transposition table, or null for none
+     * @param pool  the threads to search with, or null to search only in
+     *              the calling thread
+     */
+    public Engine(TranspositionTable table, ForkJoinPool pool) {
+        itsTable = table;
+        itsSearch = new Search(itsTable, pool);
+        itsPonderSearch = new Search(itsTable, pool);
+        itsPonderSearch.setStopRequest(() -> itsPonderStopped);
+        itsPonderer = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "Ponder");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        // registering the statistics bean starts the management server and
+        // the flight recorder event, which take a while: do it now rather
+        // than after the first move
+        SearchStatistics.getInstance();
+    }
+
+    /**
+     * Sets when a timed search switches to solving the endgame.
+     *
+     * @param empties the most empty squares to solve, 0 to never solve
+     * @param exact   true to solve for the exact score, false for only win,
+     *                draw or loss
+     */
+    public void setEndgame(int empties, boolean exact) {
+        itsEndgameEmpties = empties;
+        itsSearch.setEndgame(empties, exact);
+        itsPonderSearch.setEndgame(empties, exact);
+    }
+
+    /**
+     * Sets how the leaves of the search are scored.
+     *
+     * @param evaluator the pattern evaluator, or null for the corner
+     *                  evaluation
+     */
+    public void setEvaluator(PatternEvaluator evaluator) {
+        itsSearch.setEvaluator(evaluator);
+        itsPonderSearch.setEvaluator(evaluator);
+    }
+
+    /**
+     * Sets whether the search cuts positions predicted by shallow searches.
+     *
+     * @param probCut the parameters fitted for the evaluator, or null to
+     *                search every position to the full level
+     */
+    public void setProbCut(ProbCut probCut) {
+        itsSearch.setProbCut(probCut);
+        itsPonderSearch.setProbCut(probCut);
+    }
+
+    /**
+     * Sets the opening book to play from.  A timed search plays the book
+     * move of any position in the book without searching.
+     *
+     * @param book the book, or null for none
+     */
+    public void setBook(OpeningBook book) {
+        itsBook = book;
+    }
+
+    /**
+     * Forgets everything remembered from earlier positions, as before
+     * starting a new game.  A table mapped from a file is kept, since it is
+     * there to remember.
+     */
+    public void newGame() {
+        if (itsTable != null && !itsTable.isMapped()) {
+            itsTable.clear();
+        }
+    }
+
+    /**
+     * Searches a position to exactly one look ahead level.
+     *
+     * @param me       the pieces of the player to move
+     * @param opponent the pieces of his opponent
+     * @param level    how many plies to look ahead
+     * @return the best move found
+     */
+    public SearchResult search(long me, long opponent, int level) {
+        stopPondering();
+        long startTime = System.nanoTime();
+        newSearch();
+        itsSearch.search(me, opponent, level);
+
+        return record(result(itsSearch, me, opponent, startTime), itsSearch, startTime);
+    }
+
+    /**
+     * Searches a position one level deeper at a time until the maximum level
+     * is completed or the time budget runs out.  Near the end of the game
+     * the rest is solved as set by setEndgame.  A position in the opening
+     * book is not searched at all.
+     *
+     * @param me       the pieces of the player to move
+     * @param opponent the pieces of his opponent
+     * @param maxLevel the deepest level to look ahead
+     * @param millis   the time budget in milliseconds
+     * @return the best move of the deepest completed level
+     */
+    public SearchResult search(long me, long opponent, int maxLevel, long millis) {
+        return search(me, opponent, maxLevel, millis, null);
+    }
+
+    /**
+     * Searches a position as by the timed search, for a caller with its own
+     * flags for stopping it.  A stop call that lands just before the search
+     * starts is seen through those flags, rather than lost when the search
+     * resets, and the search returns the first legal move at once.
+     *
+     * @param me       the pieces of the player to move
+     * @param opponent the pieces of his opponent
+     * @param maxLevel the deepest level to look ahead
+     * @param millis   the time budget in milliseconds
+     * @param stopped  true once the caller has asked the search to stop, or
+     *                 null if it never will but through stop
+     * @return the best move of the deepest completed level
+     */
+    public SearchResult search(long me, long opponent, int maxLevel, long millis,
+                               BooleanSupplier stopped) {
+        stopPondering();
+        long startTime = System.nanoTime();
+        if (itsBook != null) {
+            long entry = itsBook.probe(me, opponent);
+            if (entry != OpeningBook.MISS && OpeningBook.move(entry) >= 0
+                    && (BitBoard.moves(me, opponent) & (1L << OpeningBook.move(entry))) != 0) {
+                return bookResult(me, opponent, entry, startTime);
+            }
+        }
+
+        SearchResult pondered = takePondered(Zobrist.hash(me, opponent));
+        boolean endgame = BitBoard.SQUARES - BitBoard.count(me | opponent) <= itsEndgameEmpties;
+        if (pondered != null && pondered.getLevel() >= maxLevel && !endgame) {
+            // the pondering search's counters belong to whatever it pondered last
+            return record(retime(pondered, startTime), null, startTime);
+        }
+
+        newSearch();
+        itsSearch.setStopRequest(stopped);
+        try {
+            itsSearch.search(me, opponent, maxLevel, millis);
+        } finally {
+            itsSearch.setStopRequest(null);
+        }
+        SearchResult result = result(itsSearch, me, opponent, startTime);
+        if (pondered != null && !result.isSolved() && pondered.getLevel() > result.getLevel()) {
+            result = retime(pondered, startTime);
+        }
+
+        return record(result, itsSearch, startTime);
+    }
+
+    /**
+     * Starts pondering a position where the opponent is to move, until the
+     * next search or stopPondering.  Every reply is searched to one level
+     * before any is searched to the next, and after each level the moves
+     * are ranked by how good they look for the opponent.
+     *
+     * @param opponent the pieces of the opponent, who is to move
+     * @param me       the pieces of the player this engine plays
+     * @param maxLevel the deepest level to ponder
+     */
+    public synchronized void ponder(long opponent, long me, int maxLevel) {
+        stopPondering();
+        itsPondered.clear();
+        itsPonderStopped = false;
+
+        long moves = BitBoard.moves(opponent, me);
+        int count = BitBoard.count(moves);
+        if (count == 0) {
+            return;
+        }
+        long[] players = new long[count];
+        long[] opponents = new long[count];
+        for (int i = 0; moves != 0; moves &= moves - 1, ++i) {
+            int sq = Long.numberOfTrailingZeros(moves);
+            long flipped = BitBoard.flips(opponent, me, sq);
+            players[i] = me & ~flipped;
+            opponents[i] = opponent | flipped | (1L << sq);
+        }
+
+        newSearch();
+        itsPonderFuture = itsPonderer.submit(() -> ponder(players, opponents, maxLevel));
+    }
+
+    /**
+     * Searches the positions after each of the opponent's moves one level
+     * deeper at a time, keeping each one's deepest completed result.
+     *
+     * @param players   the pieces of this engine's player after each move
+     * @param opponents the pieces of the opponent after each move
+     * @param maxLevel  the deepest level to ponder
+     */
+    private void ponder(long[] players, long[] opponents, int maxLevel) {
+        int count = players.length;
+        int[] order = new int[count];
+        int[] scores = new int[count];
+        for (int i = 0; i < count; ++i) {
+            order[i] = i;
+        }
+
+        for (int level = 1; level <= maxLevel; ++level) {
+            for (int i : order) {
+                long startTime = System.nanoTime();
+                if (itsPonderStopped) {
+                    return;
+                }
+                itsPonderSearch.search(players[i], opponents[i], level);
+                if (itsPonderStopped) {
+                    return;
+                }
+                itsPondered.put(Zobrist.hash(players[i], opponents[i]),
+                        result(itsPonderSearch, players[i], opponents[i], startTime));
+                scores[i] = itsPonderSearch.getBestScore();
+            }
+
+            // the opponent likely plays the move we score lowest, so
+            // ponder it first at the next level
+            for (int i = 1; i < count; ++i) {
+                int move = order[i];
+                int j = i;
+                for (; j > 0 && scores[order[j - 1]] > scores[move]; --j) {
+                    order[j] = order[j - 1];
+                }
+                order[j] = move;
+            }
+        }
+    }
+
+    /**
+     * Ages the entries of the table, if there is one, once for each move
+     * searched or pondering started, so the levels of one search keep each
+     * other's entries.
+     */
+    private void newSearch() {
+        if (itsTable != null) {
+            itsTable.newSearch();
+        }
+    }
+
+    /**
+     * Stops pondering, if the engine is, and waits for the pondering to
+     * finish.  The results pondered so far are kept for the next search.
+     * It only stops the pondering search, so it cannot stop a search for a
+     * move that another thread is making.
+     */
+    public synchronized void stopPondering() {
+        Future<?> future = itsPonderFuture;
+        if (future == null) {
+            return;
+        }
+
+        // a pondering search starting after this sees the flag at its start
+        itsPonderStopped = true;
+        itsPonderSearch.stop();
+        boolean interrupted = false;
+        try {
+            for (boolean done = false; !done; ) {
+                try {
+                    future.get();
+                    done = true;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            itsPonderFuture = null;
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Stops pondering and takes the result pondered for a position,
+     * forgetting the rest.
+     *
+     * @param hash the Zobrist hash of the position
+     * @return the deepest result pondered for it, or null
+     */
+    private synchronized SearchResult takePondered(long hash) {
+        stopPondering();
+        SearchResult pondered = itsPondered.get(hash);
+        itsPondered.clear();
+
+        return pondered;
+    }
+
+    /**
+     * Stops a running search as soon as possible, which then returns the
+     * best move found so far.  It may be called from any thread.
+     */
+    public void stop() {
+        itsSearch.stop();
+    }
+
+    /**
+     * Collects the results of a search that just finished.
+     *
+     * @param search    the search
+     * @param me        the pieces of the player to move
+     * @param opponent  the pieces of his opponent
+     * @param startTime the System.nanoTime the search started at
+     * @return the result
+     */
+    private SearchResult result(Search search, long me, long opponent, long startTime) {
+        long nanos = System.nanoTime() - startTime;
+        int move = search.getBestMove();
+        int level = search.getCompletedLevel();
+
+        return new SearchResult(move, search.getBestScore(), level,
+                search.isSolved(), false, search.getNodeCount(), nanos / 1000000L,
+                principalVariation(me, opponent, move, Math.max(level, 1)));
+    }
+
+    /**
+     * Makes a pondered result the result of a move, taking as long as the
+     * move has so far rather than as long as it was pondered.
+     *
+     * @param pondered  the pondered result
+     * @param startTime the System.nanoTime the move was asked for at
+     * @return the result
+     */
+    private static SearchResult retime(SearchResult pondered, long startTime) {
+        return new SearchResult(pondered.getMove(), pondered.getScore(), pondered.getLevel(),
+                pondered.isSolved(), false, pondered.getNodes(),
+                (System.nanoTime() - startTime) / 1000000L, pondered.getPrincipalVariation());
+    }
+
+    /**
+     * Adds a move that was just chosen to the search statistics.
+     *
+     * @param result    the result of the move
+     * @param search    the search that made it, still holding its
+     *                  counters, or null if it was pondered
+     * @param startTime the System.nanoTime the move was asked for at
+     * @return the result
+     */
+    private SearchResult record(SearchResult result, Search search, long startTime) {
+        SearchStatistics.getInstance().record(result, search, System.nanoTime() - startTime);
+
+        return result;
+    }
+
+    /**
+     * Makes the result of a book move, whose principal variation follows
+     * the book moves to the end of the book.
+     *
+     * @param me        the pieces of the player to move
+     * @param opponent  the pieces of his opponent
+     * @param entry     the book's probe result for the position
+     * @param startTime the System.nanoTime the search started at
+     * @return the result
+     */
+    private SearchResult bookResult(long me, long opponent, long entry, long startTime) {
+        int[] line = new int[BitBoard.SQUARES];
+        int count = 0;
+        for (long next = entry; next != OpeningBook.MISS && OpeningBook.move(next) >= 0; ) {
+            int move = OpeningBook.move(next);
+            long flipped = BitBoard.flips(me, opponent, move);
+            if (flipped == 0) {
+                break;
+            }
+            line[count++] = move;
+            long nextMe = opponent & ~flipped;
+            opponent = me | flipped | (1L << move);
+            me = nextMe;
+            next = itsBook.probe(me, opponent);
+        }
+
+        return new SearchResult(OpeningBook.move(entry), OpeningBook.score(entry), 0,
+                false, true, 0, (System.nanoTime() - startTime) / 1000000L,
+                Arrays.copyOf(line, count));
+    }
+
+    /**
+     * Follows the remembered best moves from a position to find the line
+     * of play the search expects.  The line stops where the table has no
+     * move, or where its move is not legal because the entry was replaced
+     * by another position's.
+     *
+     * @param me       the pieces of the player to move
+     * @param opponent the pieces of his opponent
+     * @param move     the chosen move, or -1 to pass
+     * @param length   the most moves to follow
+     * @return the bit numbers of the moves, -1 for a pass
+     */
+    private int[] principalVariation(long me, long opponent, int move, int length) {
+        int[] line = new int[length];
+        int count = 0;
+        while (count < length) {
+            if (move < 0) {
+                if (BitBoard.moves(me, opponent) != 0
+                        || BitBoard.moves(opponent, me) == 0) {
+                    break; // not a legal pass, or the game is over
+                }
+            } else {
+                long flipped = BitBoard.flips(me, opponent, move);
+                if (((me | opponent) & (1L << move)) != 0 || flipped == 0) {
+                    break;
+                }
+                me |= flipped | (1L << move);
+                opponent &= ~flipped;
+            }
+            line[count++] = move;
+
+            long swap = me;
+            me = opponent;
+            opponent = swap;
+
+            if (itsTable == null) {
+                break;
+            }
+            int symmetry = Search.tableSymmetry(me, opponent);
+            long entry = itsTable.probe(Symmetry.hash(me, opponent, symmetry));
+            if (entry == TranspositionTable.MISS) {
+                break;
+            }
+            move = Symmetry.square(TranspositionTable.move(entry), Symmetry.inverse(symmetry));
+        }
+
+        return Arrays.copyOf(line, count);
+    }
+}
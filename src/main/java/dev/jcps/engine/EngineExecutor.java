@@ -0,0 +1,166 @@
+package dev.jcps.engine;
+
+/*
+*****************************************************************************
+
+ Desdemona: The Java Othello game.
+ Copyright (C) 2001 Kenneth D. Huffman.
+
+ This program is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 2 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License (gnu.org/copyleft/gpl.html) for more details.
+
+ The author can be reached at www.huffmancoding.com.
+ *****************************************************************************
+ */
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+/**
+ * This class runs engine searches on threads it keeps for the life of the
+ * program, so a game does not start a thread for every move, and every
+ * search it runs can be cancelled or told to move now.
+ * <p>
+ * Cancelling stops the search at the next position it visits and makes
+ * sure its result is never handed on, so a search for a game that was
+ * abandoned cannot play a move in the next one.  Moving now stops the
+ * search the same way, but hands on the best move found so far.  Either
+ * is seen by the search even if it comes just as the search starts.
+ *
+ * @author Ken Huffman
+ */
+public final class EngineExecutor {
+    /**
+     * the threads the searches run in
+     */
+    private final ExecutorService itsWorkers;
+
+    /**
+     * Constructor starts no threads until the first search.
+     *
+     * @param threads the most searches running at once
+     */
+    public EngineExecutor(int threads) {
+        itsWorkers = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "Engine");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Starts a timed search of a position, as by Engine.search, and hands
+     * its result on when it finishes unless it is cancelled first.
+     *
+     * @param engine   the engine to search with, used by only one task at
+     *                 a time
+     * @param me       the pieces of the player to move
+     * @param opponent the pieces of his opponent
+     * @param maxLevel the deepest level to look ahead
+     * @param millis   the time budget in milliseconds
+     * @param done     takes the result, in the search's thread
+     * @return the task, to cancel it or move now
+     */
+    public Task submit(Engine engine, long me, long opponent, int maxLevel, long millis,
+                       Consumer<SearchResult> done) {
+        Task task = new Task(engine);
+        task.itsFuture = itsWorkers.submit(() -> {
+            if (task.itsCancelled) {
+                return;
+            }
+            SearchResult result = engine.search(me, opponent, maxLevel, millis,
+                    () -> task.itsCancelled || task.itsMoveNow);
+            if (!task.itsCancelled) {
+                done.accept(result);
+            }
+        });
+
+        return task;
+    }
+
+    /**
+     * Cancels every search and lets the threads end.
+     */
+    public void shutdown() {
+        itsWorkers.shutdownNow();
+    }
+
+    /**
+     * This class is a search submitted to the executor.
+     */
+    public static final class Task {
+        /**
+         * the engine doing the search
+         */
+        private final Engine itsEngine;
+        /**
+         * the search running or waiting to run
+         */
+        private Future<?> itsFuture;
+        /**
+         * true once the search is cancelled
+         */
+        private volatile boolean itsCancelled;
+        /**
+         * true once the search is told to move now
+         */
+        private volatile boolean itsMoveNow;
+
+        /**
+         * Constructor.
+         *
+         * @param engine the engine doing the search
+         */
+        private Task(Engine engine) {
+            itsEngine = engine;
+        }
+
+        /**
+         * Stops the search and throws away its result, unless it is being
+         * handed on at that moment.  A taker that passes the result to
+         * another thread, such as the AWT Event thread, should check
+         * isCancelled there.
+         */
+        public void cancel() {
+            itsCancelled = true;
+            itsFuture.cancel(false);
+            itsEngine.stop();
+        }
+
+        /**
+         * Stops the search and hands on the best move found so far.
+         */
+        public void moveNow() {
+            itsMoveNow = true;
+            itsEngine.stop();
+        }
+
+        /**
+         * Determines if the search was cancelled.
+         *
+         * @return true, if it was cancelled
+         */
+        public boolean isCancelled() {
+            return itsCancelled;
+        }
+
+        /**
+         * Determines if the search has finished, been cancelled or handed on
+         * its result.
+         *
+         * @return true, if it is done
+         */
+        public boolean isDone() {
+            return itsFuture.isDone();
+        }
+    }
+}
@@ -0,0 +1,615 @@
+package dev.jcps.engine;
+
+/*
+*****************************************************************************
+
+ Desdemona: The Java Othello game.
+ Copyright (C) 2001 Kenneth D. Huffman.
+
+ This program is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 2 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License (gnu.org/copyleft/gpl.html) for more details.
+
+ The author can be reached at www.huffmancoding.com.
+ *****************************************************************************
+ */
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class plays two configurations of the engine against each other
+ * without any window, to tell whether a change makes it stronger rather
+ * than only faster.  Each opening is played twice, once with each
+ * configuration moving first, so neither gains from a lopsided opening,
+ * and the pairs are counted by a sequential probability ratio test
+ * (Sprt), which stops the match as soon as it has decided.  The result is
+ * the Elo difference of the first configuration with its error bar.
+ * <p>
+ * The openings are the first moves of the games of a games file, or are
+ * played at random and kept if a search with the first configuration's
+ * weights finds them close to even.  Openings that are rotations or
+ * mirror images of one already taken are skipped.
+ * <p>
+ * Every worker thread has an engine for each configuration and takes the
+ * next pair when it finishes one, so nothing is shared but the counter and
+ * the test.  With a time per move, use no more threads than cores, or the
+ * engines get less thinking than they are given.  Run it from the command
+ * line:
+ * <pre>
+ *     java -cp desdemona.jar dev.jcps.engine.Match [-pairs n] [-threads n]
+ *             [-openings games] [-plies n] [-seed n]
+ *             [-elo0 n] [-elo1 n] [-alpha p] [-beta p]
+ *             [-level n] [-time ms] [-solve n] [-hash mb] [-weights file] [-probcut file]
+ * </pre>
+ * The options of the last line set both configurations; with 1 or 2 added,
+ * as in "-probcut2 desdemona.probcut", they set only that one.
+ *
+ * @author Ken Huffman
+ */
+public final class Match {
+    /**
+     * the level openings are searched to for their balance
+     */
+    private static final int BALANCE_LEVEL = 8;
+    /**
+     * the largest score an opening may have to be kept
+     */
+    private static final int BALANCE_SCORE = 4 * PatternEvaluator.DISC;
+    /**
+     * the most random openings tried for each one kept
+     */
+    private static final int OPENING_TRIES = 100;
+    /**
+     * the number of pairs between reports of the score so far
+     */
+    private static final int REPORT_PAIRS = 10;
+
+    /**
+     * the two configurations, the first being the one rated
+     */
+    private final Player[] itsPlayers;
+    /**
+     * the positions the pairs start from, used in turn
+     */
+    private final List<Position> itsOpenings;
+    /**
+     * the games won, drawn and lost by the first configuration
+     */
+    private final AtomicInteger[] itsResults = {
+            new AtomicInteger(), new AtomicInteger(), new AtomicInteger()};
+
+    /**
+     * Constructor.
+     *
+     * @param first    the configuration rated
+     * @param second   the configuration it is rated against
+     * @param openings the positions the pairs start from, used in turn
+     * @throws IllegalArgumentException if there are no openings, or a
+     *                                  configuration's ProbCut parameters
+     *                                  were fitted for other weights
+     */
+    public Match(Player first, Player second, List<Position> openings) {
+        if (openings.isEmpty()) {
+            throw new IllegalArgumentException("No openings");
+        }
+        first.check();
+        second.check();
+        itsPlayers = new Player[]{first, second};
+        itsOpenings = openings;
+    }
+
+    /**
+     * Takes the position after the first moves of each game of a games
+     * file.
+     *
+     * @param games the games file, one game per line as moves like "f5d6c3"
+     * @param plies the number of moves into each game, passes included
+     * @param count the most openings to take
+     * @return the openings
+     * @throws IOException if the file cannot be read
+     * @throws IllegalArgumentException if a game has an illegal move
+     */
+    public static List<Position> openings(Path games, int plies, int count) throws IOException {
+        List<Position> openings = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        int lineNumber = 0;
+        for (String line : Files.readAllLines(games)) {
+            ++lineNumber;
+            String moves = line.replaceAll("\\s", "").toLowerCase();
+            if (moves.isEmpty() || moves.startsWith("#")) {
+                continue;
+            }
+
+            Position position = Position.START;
+            try {
+                for (int i = 0, ply = 0; ply < plies && i + 1 < moves.length(); ++ply) {
+                    if (!isPlayable(position)) {
+                        position = position.play(-1);
+                        continue;
+                    }
+                    int x = moves.charAt(i) - 'a';
+                    int y = moves.charAt(i + 1) - '1';
+                    if (x < 0 || x >= BitBoard.SIZE || y < 0 || y >= BitBoard.SIZE) {
+                        throw new IllegalArgumentException("bad move " + moves.substring(i, i + 2));
+                    }
+                    position = position.play(BitBoard.square(x, y));
+                    i += 2;
+                }
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException(games + ":" + lineNumber + ": " + e.getMessage());
+            }
+            if (isPlayable(position) && seen.add(canonical(position))) {
+                openings.add(position);
+                if (openings.size() == count) {
+                    break;
+                }
+            }
+        }
+
+        return openings;
+    }
+
+    /**
+     * Plays random openings and keeps those that a search finds close to
+     * even.
+     *
+     * @param count     the number of openings
+     * @param plies     the number of random moves of each
+     * @param seed      where the random moves start
+     * @param evaluator the weights the balance is judged by, or null to
+     *                  keep every opening
+     * @return the openings, fewer than asked for if too few are even
+     */
+    public static List<Position> openings(int count, int plies, long seed,
+                                          PatternEvaluator evaluator) {
+        SplittableRandom random = new SplittableRandom(seed);
+        TranspositionTable table = new TranspositionTable(16);
+        Search search = new Search(table, null);
+        search.setEvaluator(evaluator);
+        List<Position> openings = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        for (int tries = 0; openings.size() < count && tries < count * OPENING_TRIES; ++tries) {
+            Position position = Position.START;
+            for (int ply = 0; ply < plies; ++ply) {
+                long legal = BitBoard.moves(position.getPlayer(), position.getOpponent());
+                if (legal == 0) {
+                    position = position.play(-1);
+                    continue;
+                }
+                for (int skip = random.nextInt(BitBoard.count(legal)); skip > 0; --skip) {
+                    legal &= legal - 1;
+                }
+                position = position.play(Long.numberOfTrailingZeros(legal));
+            }
+            String key = canonical(position);
+            if (!isPlayable(position) || seen.contains(key)) {
+                continue;
+            }
+            table.newSearch();
+            if (evaluator != null && Math.abs(search.search(position.getPlayer(),
+                    position.getOpponent(), BALANCE_LEVEL)) > BALANCE_SCORE) {
+                continue;
+            }
+            seen.add(key);
+            openings.add(position);
+        }
+
+        return openings;
+    }
+
+    /**
+     * Determines if a game can go on from a position.
+     *
+     * @param position the position
+     * @return true, if the player to move has a move
+     */
+    private static boolean isPlayable(Position position) {
+        return BitBoard.moves(position.getPlayer(), position.getOpponent()) != 0;
+    }
+
+    /**
+     * Writes the canonical form of a position, the same for all of its
+     * symmetric forms.
+     *
+     * @param position the position
+     * @return the turned position as text
+     */
+    private static String canonical(Position position) {
+        int symmetry = Symmetry.canonical(position.getPlayer(), position.getOpponent());
+        return new Position(Symmetry.apply(position.getPlayer(), symmetry),
+                Symmetry.apply(position.getOpponent(), symmetry), position.isBlackToMove()).toString();
+    }
+
+    /**
+     * Returns how many games of the last run the first configuration won,
+     * drew and lost.
+     *
+     * @return the three counts
+     */
+    public int[] getResults() {
+        return new int[]{itsResults[0].get(), itsResults[1].get(), itsResults[2].get()};
+    }
+
+    /**
+     * Plays pairs of games on a fixed number of worker threads until the
+     * test decides or the pairs run out, printing the score every few
+     * pairs.  Pairs already being played when the test decides are
+     * finished and counted.
+     *
+     * @param pairs   the most pairs to play
+     * @param threads the number of worker threads
+     * @param sprt    the test, which counts the pairs
+     * @param out     where to print the score so far
+     * @throws InterruptedException if interrupted while waiting for the
+     *                              workers
+     */
+    public void run(int pairs, int threads, Sprt sprt, PrintStream out)
+            throws InterruptedException {
+        for (AtomicInteger result : itsResults) {
+            result.set(0);
+        }
+
+        AtomicInteger next = new AtomicInteger();
+        AtomicInteger finished = new AtomicInteger();
+        ExecutorService workers = Executors.newFixedThreadPool(threads);
+        try {
+            Future<?>[] futures = new Future<?>[threads];
+            for (int i = 0; i < threads; ++i) {
+                futures[i] = workers.submit(() -> {
+                    Engine[] engines = {itsPlayers[0].newEngine(), itsPlayers[1].newEngine()};
+                    for (int pair = next.getAndIncrement(); pair < pairs && sprt.getDecision() == 0;
+                         pair = next.getAndIncrement()) {
+                        Position opening = itsOpenings.get(pair % itsOpenings.size());
+                        int halfPoints = 0;
+                        for (int firstMover = 0; firstMover < 2; ++firstMover) {
+                            int difference = play(engines, opening, firstMover);
+                            itsResults[1 - Integer.signum(difference)].incrementAndGet();
+                            halfPoints += 1 + Integer.signum(difference);
+                        }
+                        sprt.add(halfPoints);
+                        if (finished.incrementAndGet() % REPORT_PAIRS == 0) {
+                            String line = report(sprt);
+                            synchronized (out) {
+                                out.println(line);
+                            }
+                        }
+                    }
+                });
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            workers.shutdownNow();
+        }
+    }
+
+    /**
+     * Plays one game from an opening.
+     *
+     * @param engines    the engine of each configuration
+     * @param opening    the position to start from
+     * @param firstMover the configuration to move first, 0 or 1
+     * @return the final disc difference for the first configuration
+     */
+    private int play(Engine[] engines, Position opening, int firstMover) {
+        engines[0].newGame();
+        engines[1].newGame();
+        Position position = opening;
+        int mover = firstMover;
+        while (true) {
+            long me = position.getPlayer();
+            long opponent = position.getOpponent();
+            if (BitBoard.moves(me, opponent) == 0) {
+                if (BitBoard.moves(opponent, me) == 0) {
+                    break;
+                }
+                position = position.play(-1);
+                mover ^= 1;
+                continue;
+            }
+
+            position = position.play(itsPlayers[mover].move(engines[mover], position));
+            mover ^= 1;
+        }
+
+        int mine = BitBoard.count(position.getPlayer());
+        int his = BitBoard.count(position.getOpponent());
+        int difference = mine - his;
+        if (difference != 0) {
+            difference += Integer.signum(difference) * (BitBoard.SQUARES - mine - his);
+        }
+
+        return mover == 0 ? difference : -difference;
+    }
+
+    /**
+     * Writes the score so far as one line.
+     *
+     * @param sprt the test
+     * @return the line
+     */
+    private String report(Sprt sprt) {
+        return String.format("%,d pairs: +%d =%d -%d, Elo %+.1f +/- %.1f, LLR %.2f [%.2f, %.2f]",
+                sprt.getPairCount(), itsResults[0].get(), itsResults[1].get(),
+                itsResults[2].get(), sprt.getElo(), sprt.getEloError(), sprt.getLlr(),
+                sprt.getLowerBound(), sprt.getUpperBound());
+    }
+
+    /**
+     * Plays a match from the command line and prints its result.
+     *
+     * @param args the options
+     * @throws IOException if a file cannot be read
+     * @throws InterruptedException if interrupted while playing
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int pairs = 1000;
+        int threads = Runtime.getRuntime().availableProcessors();
+        Path games = null;
+        int plies = 8;
+        long seed = 1;
+        double elo0 = 0;
+        double elo1 = 10;
+        double alpha = 0.05;
+        double beta = 0.05;
+        Player[] players = {new Player(), new Player()};
+        for (int i = 0; i < args.length; i += 2) {
+            if (i + 1 == args.length) {
+                throw new IllegalArgumentException("Missing value for " + args[i]);
+            }
+            switch (args[i]) {
+                case "-pairs" -> pairs = Integer.parseInt(args[i + 1]);
+                case "-threads" -> threads = Integer.parseInt(args[i + 1]);
+                case "-openings" -> games = Path.of(args[i + 1]);
+                case "-plies" -> plies = Integer.parseInt(args[i + 1]);
+                case "-seed" -> seed = Long.parseLong(args[i + 1]);
+                case "-elo0" -> elo0 = Double.parseDouble(args[i + 1]);
+                case "-elo1" -> elo1 = Double.parseDouble(args[i + 1]);
+                case "-alpha" -> alpha = Double.parseDouble(args[i + 1]);
+                case "-beta" -> beta = Double.parseDouble(args[i + 1]);
+                default -> {
+                    // a configuration option, for one or both
+                    String option = args[i];
+                    char last = option.charAt(option.length() - 1);
+                    if (last == '1' || last == '2') {
+                        players[last - '1'].set(option.substring(0, option.length() - 1), args[i + 1]);
+                    } else {
+                        players[0].set(option, args[i + 1]);
+                        players[1].set(option, args[i + 1]);
+                    }
+                }
+            }
+        }
+
+        players[0].check();
+        players[1].check();
+        List<Position> openings = games != null ? openings(games, plies, pairs)
+                : openings(pairs, plies, seed, players[0].itsEvaluator);
+        Match match = new Match(players[0], players[1], openings);
+        Sprt sprt = new Sprt(elo0, elo1, alpha, beta);
+        System.out.printf("%s%nagainst %s%n%,d openings, SPRT elo0 %.1f elo1 %.1f alpha %.2f beta %.2f%n",
+                players[0], players[1], openings.size(), elo0, elo1, alpha, beta);
+        long startTime = System.nanoTime();
+        match.run(pairs, threads, sprt, System.out);
+
+        int decision = sprt.getDecision();
+        System.out.println(match.report(sprt));
+        System.out.printf("%s after %,d games in %.1f s%n", decision > 0 ? "elo1 accepted (stronger)"
+                        : decision < 0 ? "elo0 accepted (not stronger)" : "no decision",
+                2 * sprt.getPairCount(), (System.nanoTime() - startTime) / 1e9);
+    }
+
+    /**
+     * This class holds one configuration of the engine: how deep or how
+     * long it searches, when it solves the endgame and how it evaluates.
+     */
+    public static final class Player {
+        /**
+         * the level searched to at a fixed level unless set otherwise
+         */
+        private static final int DEFAULT_LEVEL = 6;
+        /**
+         * the deepest level of a timed search unless set otherwise, which
+         * is in practice no limit
+         */
+        private static final int MAX_LEVEL = 60;
+        /**
+         * the time budget of a solving search at a fixed level, in
+         * milliseconds, which is in practice no limit
+         */
+        private static final long SOLVE_MILLIS = 3600000L;
+
+        /**
+         * the level each move is searched to, or the deepest of a timed
+         * search, 0 until set
+         */
+        private int itsLevel;
+        /**
+         * the time budget of each move in milliseconds, 0 for a fixed level
+         */
+        private long itsMillis;
+        /**
+         * the most empty squares solved exactly instead of searched, 0 for
+         * none
+         */
+        private int itsSolveEmpties;
+        /**
+         * the size of the transposition table
+         */
+        private int itsHashMegabytes = 16;
+        /**
+         * the weights to evaluate with, or null for the corner evaluation
+         */
+        private PatternEvaluator itsEvaluator;
+        /**
+         * the selective search parameters, or null for none
+         */
+        private ProbCut itsProbCut;
+        /**
+         * the options set, for the report
+         */
+        private final StringBuilder itsDescription = new StringBuilder();
+
+        /**
+         * Sets how deep each move is searched.  Unless it is set, a move is
+         * searched to DEFAULT_LEVEL, or with a time per move for as long as
+         * the time lasts.
+         *
+         * @param level the level, or the deepest of a timed search
+         */
+        public void setLevel(int level) {
+            itsLevel = level;
+        }
+
+        /**
+         * Sets how long each move is searched.
+         *
+         * @param millis the time budget of each move in milliseconds, 0 to
+         *               search to the level
+         */
+        public void setMillis(long millis) {
+            itsMillis = millis;
+        }
+
+        /**
+         * Sets when the rest of the game is solved exactly.
+         *
+         * @param empties the most empty squares to solve, 0 to never solve
+         */
+        public void setEndgame(int empties) {
+            itsSolveEmpties = empties;
+        }
+
+        /**
+         * Sets the size of the transposition table.
+         *
+         * @param megabytes the size of the table
+         */
+        public void setHashMegabytes(int megabytes) {
+            itsHashMegabytes = megabytes;
+        }
+
+        /**
+         * Sets how the leaves of the search are scored.
+         *
+         * @param evaluator the pattern evaluator, or null for the corner
+         *                  evaluation
+         */
+        public void setEvaluator(PatternEvaluator evaluator) {
+            itsEvaluator = evaluator;
+        }
+
+        /**
+         * Sets whether the search cuts positions predicted by shallow
+         * searches.
+         *
+         * @param probCut the parameters fitted for the evaluator, or null
+         *                to search every position to the full level
+         */
+        public void setProbCut(ProbCut probCut) {
+            itsProbCut = probCut;
+        }
+
+        /**
+         * Sets an option from the command line.
+         *
+         * @param option the option, like "-level"
+         * @param value  its value
+         * @throws IOException if a file cannot be read
+         * @throws IllegalArgumentException if the option is unknown
+         */
+        private void set(String option, String value) throws IOException {
+            switch (option) {
+                case "-level" -> setLevel(Integer.parseInt(value));
+                case "-time" -> setMillis(Long.parseLong(value));
+                case "-solve" -> setEndgame(Integer.parseInt(value));
+                case "-hash" -> setHashMegabytes(Integer.parseInt(value));
+                case "-weights" -> setEvaluator(PatternEvaluator.load(Path.of(value)));
+                case "-probcut" -> setProbCut(ProbCut.load(Path.of(value)));
+                default -> throw new IllegalArgumentException("Unknown option " + option);
+            }
+            itsDescription.append(' ').append(option).append(' ').append(value);
+        }
+
+        /**
+         * Checks that the ProbCut parameters, if any, were fitted for the
+         * weights.
+         *
+         * @throws IllegalArgumentException if they were fitted for others
+         */
+        private void check() {
+            if (itsProbCut != null && !itsProbCut.fits(itsEvaluator)) {
+                throw new IllegalArgumentException("ProbCut parameters fitted for other weights: "
+                        + this);
+            }
+        }
+
+        /**
+         * Makes an engine with this configuration.
+         *
+         * @return the engine
+         */
+        private Engine newEngine() {
+            Engine engine = new Engine(itsHashMegabytes, null);
+            engine.setEvaluator(itsEvaluator);
+            engine.setProbCut(itsProbCut);
+            engine.setEndgame(itsSolveEmpties, true);
+            return engine;
+        }
+
+        /**
+         * Chooses a move.
+         *
+         * @param engine   the engine of this configuration
+         * @param position the position, where the player to move has a move
+         * @return the bit number of the move
+         */
+        private int move(Engine engine, Position position) {
+            long me = position.getPlayer();
+            long opponent = position.getOpponent();
+            if (itsMillis > 0) {
+                // only the time limits a timed search, unless a level was set
+                int maxLevel = itsLevel > 0 ? Math.min(itsLevel, MAX_LEVEL) : MAX_LEVEL;
+                return engine.search(me, opponent, maxLevel, itsMillis).getMove();
+            }
+
+            int level = itsLevel > 0 ? itsLevel : DEFAULT_LEVEL;
+            if (position.getEmpties() <= itsSolveEmpties) {
+                return engine.search(me, opponent, level, SOLVE_MILLIS).getMove();
+            }
+
+            return engine.search(me, opponent, level).getMove();
+        }
+
+        /**
+         * Describes the configuration by the options that set it.
+         *
+         * @return the description
+         */
+        public String toString() {
+            return "engine" + (itsDescription.length() > 0 ? itsDescription : " (defaults)");
+        }
+    }
+}
@@ -0,0 +1,328 @@
+package dev.jcps.engine;
+
+/*
+*****************************************************************************
+
+ Desdemona: The Java Othello game.
+ Copyright (C) 2001 Kenneth D. Huffman.
+
+ This program is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 2 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License (gnu.org/copyleft/gpl.html) for more details.
+
+ The author can be reached at www.huffmancoding.com.
+ *****************************************************************************
+ */
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * This class looks up opening moves in a book file made by BookBuilder.
+ * The file is memory-mapped rather than read, so opening a book costs no
+ * time and no heap however big it is, and the operating system only pages
+ * in the parts that are looked at.
+ * <p>
+ * The file is a header followed by fixed-size records sorted by position,
+ * so a lookup is a binary search of the mapped records.  Each record holds
+ * both pieces masks, the negamax value of the position with the move that
+ * achieves it, and the best move leaving the book (the deviation) with its
+ * searched score and level.  Scores are in the units of the search.
+ * <p>
+ * A position and its rotations and mirror images are one record, kept in
+ * its canonical form (see Symmetry), with its moves in that form's
+ * squares.  Books from before this, with positions as played from the
+ * usual start, can still be read.
+ * <p>
+ * A book may be shared by any number of threads once opened.
+ *
+ * @author Ken Huffman
+ */
+public final class OpeningBook {
+    /**
+     * the probe result when the position is not in the book
+     */
+    public static final long MISS = 0;
+    /**
+     * the first bytes of every book file
+     */
+    static final byte[] MAGIC = "DSDBOOK2".getBytes(StandardCharsets.US_ASCII);
+    /**
+     * the first bytes of a book file whose positions are not canonical
+     */
+    private static final byte[] OLD_MAGIC = "DSDBOOK1".getBytes(StandardCharsets.US_ASCII);
+    /**
+     * the number of bytes before the first record: the magic and the
+     * record count
+     */
+    static final int HEADER_BYTES = 16;
+    /**
+     * the number of bytes in each record
+     */
+    static final int RECORD_BYTES = 24;
+    /**
+     * the stored move when there is none
+     */
+    static final int NO_MOVE = 0xFF;
+    /**
+     * the bit that marks a probe result as found so it is never MISS
+     */
+    private static final long FOUND = 1L << 48;
+
+    /**
+     * the mapped file
+     */
+    private final ByteBuffer itsBuffer;
+    /**
+     * the number of records
+     */
+    private final int itsSize;
+    /**
+     * true, if the positions are in their canonical forms
+     */
+    private final boolean itsCanonical;
+
+    /**
+     * Constructor.
+     *
+     * @param buffer    the mapped file, header included
+     * @param size      the number of records
+     * @param canonical true, if the positions are in their canonical forms
+     */
+    private OpeningBook(ByteBuffer buffer, int size, boolean canonical) {
+        itsBuffer = buffer;
+        itsSize = size;
+        itsCanonical = canonical;
+    }
+
+    /**
+     * Maps a book file.
+     *
+     * @param file the book
+     * @return the book
+     * @throws IOException if the file cannot be mapped or is not a book
+     */
+    public static OpeningBook open(Path file) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        if (buffer.capacity() < HEADER_BYTES) {
+            throw new IOException("Not an opening book: " + file);
+        }
+        boolean canonical = isMagic(buffer, MAGIC);
+        if (!canonical && !isMagic(buffer, OLD_MAGIC)) {
+            throw new IOException("Not an opening book: " + file);
+        }
+        long size = buffer.getLong(MAGIC.length);
+        if (size < 0 || HEADER_BYTES + size * RECORD_BYTES != buffer.capacity()) {
+            throw new IOException("Opening book is truncated: " + file);
+        }
+
+        return new OpeningBook(buffer, (int) size, canonical);
+    }
+
+    /**
+     * Determines if a file starts with some magic.
+     *
+     * @param buffer the mapped file
+     * @param magic  the first bytes of a kind of book
+     * @return true, if the file starts with them
+     */
+    private static boolean isMagic(ByteBuffer buffer, byte[] magic) {
+        for (int i = 0; i < magic.length; ++i) {
+            if (buffer.get(i) != magic[i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Returns the number of positions in the book.
+     *
+     * @return the record count
+     */
+    public int size() {
+        return itsSize;
+    }
+
+    /**
+     * Looks up a position.  It is looked up in its canonical form, and the
+     * move found is turned back to the position's own squares.
+     * <p>
+     * An old book was built from the usual start, with black's pieces on d5
+     * and e4, so there a position from the game window's start, which is
+     * its upside down image, is looked up upside down instead.
+     *
+     * @param player   the pieces of the player to move
+     * @param opponent the pieces of his opponent
+     * @return the packed move and value, or MISS
+     */
+    public long probe(long player, long opponent) {
+        int symmetry = itsCanonical ? Symmetry.canonical(player, opponent) : 0;
+        int index = find(Symmetry.apply(player, symmetry), Symmetry.apply(opponent, symmetry));
+        if (index < 0 && !itsCanonical) {
+            symmetry = Symmetry.FLIP_VERTICAL;
+            index = find(Symmetry.apply(player, symmetry), Symmetry.apply(opponent, symmetry));
+        }
+        if (index < 0) {
+            return MISS;
+        }
+
+        int record = HEADER_BYTES + index * RECORD_BYTES;
+        int move = itsBuffer.get(record + 18) & 0xFF;
+        if (move != NO_MOVE) {
+            move = Symmetry.square(move, Symmetry.inverse(symmetry));
+        }
+
+        return FOUND | ((long) (itsBuffer.getShort(record + 16) & 0xFFFF) << 16) | move;
+    }
+
+    /**
+     * Returns the best move of a probe result.
+     *
+     * @param entry a result returned by probe
+     * @return the bit number of the move, or -1 if the book has none
+     */
+    public static int move(long entry) {
+        int move = (int) entry & 0xFF;
+        return move == NO_MOVE ? -1 : move;
+    }
+
+    /**
+     * Returns the value of a probe result.
+     *
+     * @param entry a result returned by probe
+     * @return the negamax value for the player to move
+     */
+    public static int score(long entry) {
+        return (short) (entry >>> 16);
+    }
+
+    /**
+     * Finds the record of a position by binary search.
+     *
+     * @param player   the pieces of the player to move
+     * @param opponent the pieces of his opponent
+     * @return the index of the record, or -1 if it is not in the book
+     */
+    int find(long player, long opponent) {
+        int low = 0;
+        int high = itsSize - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int cmp = compare(getPlayer(middle), getOpponent(middle), player, opponent);
+            if (cmp < 0) {
+                low = middle + 1;
+            } else if (cmp > 0) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Compares two positions in the order of the records.
+     *
+     * @param player1   the pieces of the player to move in the first
+     * @param opponent1 the pieces of his opponent in the first
+     * @param player2   the pieces of the player to move in the second
+     * @param opponent2 the pieces of his opponent in the second
+     * @return negative, zero or positive as the first sorts before, with or
+     * after the second
+     */
+    static int compare(long player1, long opponent1, long player2, long opponent2) {
+        int cmp = Long.compareUnsigned(player1, player2);
+        return cmp != 0 ? cmp : Long.compareUnsigned(opponent1, opponent2);
+    }
+
+    /**
+     * Returns the pieces of the player to move in a record.
+     *
+     * @param index the record number
+     * @return the mask of his pieces
+     */
+    long getPlayer(int index) {
+        return itsBuffer.getLong(HEADER_BYTES + index * RECORD_BYTES);
+    }
+
+    /**
+     * Returns the pieces of the opponent in a record.
+     *
+     * @param index the record number
+     * @return the mask of his pieces
+     */
+    long getOpponent(int index) {
+        return itsBuffer.getLong(HEADER_BYTES + index * RECORD_BYTES + 8);
+    }
+
+    /**
+     * Returns the negamax value in a record.
+     *
+     * @param index the record number
+     * @return the value for the player to move
+     */
+    int getValue(int index) {
+        return itsBuffer.getShort(HEADER_BYTES + index * RECORD_BYTES + 16);
+    }
+
+    /**
+     * Returns the move achieving the value in a record.
+     *
+     * @param index the record number
+     * @return the bit number of the move, or -1 if none
+     */
+    int getMove(int index) {
+        int move = itsBuffer.get(HEADER_BYTES + index * RECORD_BYTES + 18) & 0xFF;
+        return move == NO_MOVE ? -1 : move;
+    }
+
+    /**
+     * Returns the best move leaving the book in a record.
+     *
+     * @param index the record number
+     * @return the bit number of the move, or -1 if none
+     */
+    int getDeviationMove(int index) {
+        int move = itsBuffer.get(HEADER_BYTES + index * RECORD_BYTES + 19) & 0xFF;
+        return move == NO_MOVE ? -1 : move;
+    }
+
+    /**
+     * Returns the searched score of the best move leaving the book in a
+     * record.
+     *
+     * @param index the record number
+     * @return the score for the player to move
+     */
+    int getDeviationScore(int index) {
+        return itsBuffer.getShort(HEADER_BYTES + index * RECORD_BYTES + 20);
+    }
+
+    /**
+     * Returns the level the deviation was searched to in a record.
+     *
+     * @param index the record number
+     * @return the look ahead level
+     */
+    int getLevel(int index) {
+        return itsBuffer.get(HEADER_BYTES + index * RECORD_BYTES + 22) & 0xFF;
+    }
+}
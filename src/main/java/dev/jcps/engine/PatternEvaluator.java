@@ -0,0 +1,553 @@
+package dev.jcps.engine;
+
+/*
+*****************************************************************************
+
+ Desdemona: The Java Othello game.
+ Copyright (C) 2001 Kenneth D. Huffman.
+
+ This program is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 2 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License (gnu.org/copyleft/gpl.html) for more details.
+
+ The author can be reached at www.huffmancoding.com.
+ *****************************************************************************
+ */
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * This class scores positions with weights learned from games, looked up
+ * by the patterns of pieces on lines of squares.  The patterns are:
+ * <ul>
+ * <li>each edge with its two X-squares (10 squares, 4 of them)</li>
+ * <li>the 3x3 square in each corner (9 squares, 4 of them)</li>
+ * <li>the 2x5 rectangle along each edge from each corner (10 squares, 8 of
+ * them)</li>
+ * <li>the diagonals of 4 to 8 squares (18 of them)</li>
+ * </ul>
+ * plus mobility (the difference in legal moves), potential mobility (the
+ * difference in empty squares next to the other side's pieces), stability
+ * (the difference in pieces that can never be flipped) and a bias.
+ * Every feature has its own weights for each phase of the game, by the
+ * number of pieces on the board.  A score is the sum of the weights of the
+ * position's features, in the units of the search, where 100 is one disc
+ * of final disc difference.
+ * <p>
+ * Each pattern is read off the board as a number in base 3 (empty, mine,
+ * his), most of them from the first rows of the board turned by one of its
+ * eight symmetries, so patterns like the four edges share one table.  The
+ * search passes positions by value, so the indexes are taken straight from
+ * the two masks at each leaf rather than kept up to date move by move.
+ * <p>
+ * The weights file is a header followed by every phase's weights as
+ * 16-bit numbers, the same order as the feature indexes.
+ *
+ * @author Ken Huffman
+ */
+public final class PatternEvaluator {
+    /**
+     * the number of game phases with their own weights
+     */
+    public static final int PHASES = 12;
+    /**
+     * the number of pattern features of each position
+     */
+    public static final int PATTERNS = 34;
+    /**
+     * the score of one disc of final disc difference
+     */
+    public static final int DISC = 100;
+    /**
+     * the first bytes of every weights file
+     */
+    private static final byte[] MAGIC = "DSDEVAL1".getBytes(StandardCharsets.US_ASCII);
+    /**
+     * the number of weights of each kind of pattern: edge+2X, corner 3x3,
+     * corner 2x5, then the diagonals of 8, 7, 6, 5 and 4 squares
+     */
+    private static final int[] TABLE_SIZES = {59049, 19683, 59049, 6561, 2187, 729, 243, 81};
+    /**
+     * the index of the first weight of each kind of pattern
+     */
+    private static final int[] OFFSETS = new int[TABLE_SIZES.length];
+    /**
+     * the index of the mobility weight
+     */
+    public static final int MOBILITY;
+    /**
+     * the index of the potential mobility weight
+     */
+    public static final int POTENTIAL_MOBILITY;
+    /**
+     * the index of the bias weight
+     */
+    public static final int BIAS;
+    /**
+     * the index of the stability weight, last so that weights files from
+     * before it was added still load
+     */
+    public static final int STABILITY;
+    /**
+     * the number of weights of each phase
+     */
+    public static final int PHASE_SIZE;
+    /**
+     * the base 3 number with the same digits as each 10 bit binary number
+     */
+    private static final int[] TERNARY = new int[1 << 10];
+    /**
+     * the largest score, short of a won game
+     */
+    private static final int MAX_SCORE = 8000;
+    /**
+     * the squares of the diagonals starting at (shift, 0) and going down
+     * and to the right, by shift
+     */
+    private static final long[] DIAGONALS = new long[5];
+
+    static {
+        int offset = 0;
+        for (int i = 0; i < TABLE_SIZES.length; ++i) {
+            OFFSETS[i] = offset;
+            offset += TABLE_SIZES[i];
+        }
+        MOBILITY = offset;
+        POTENTIAL_MOBILITY = offset + 1;
+        BIAS = offset + 2;
+        STABILITY = offset + 3;
+        PHASE_SIZE = offset + 4;
+
+        for (int shift = 0; shift < DIAGONALS.length; ++shift) {
+            DIAGONALS[shift] = (0x8040201008040201L << shift)
+                    & (((0xFFL << shift) & 0xFF) * 0x0101010101010101L);
+        }
+
+        for (int bits = 0; bits < TERNARY.length; ++bits) {
+            int power = 1;
+            for (int bit = 0; bit < 10; ++bit) {
+                if ((bits & (1 << bit)) != 0) {
+                    TERNARY[bits] += power;
+                }
+                power *= 3;
+            }
+        }
+    }
+
+    /**
+     * the weights of each phase
+     */
+    private final short[][] itsWeights;
+
+    /**
+     * Constructor for weights all zero, to be trained.
+     */
+    public PatternEvaluator() {
+        itsWeights = new short[PHASES][PHASE_SIZE];
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param weights the weights of each phase
+     */
+    private PatternEvaluator(short[][] weights) {
+        itsWeights = weights;
+    }
+
+    /**
+     * Reads a weights file.  A file from before the stability weight was
+     * added loads with that weight zero.
+     *
+     * @param file the weights
+     * @return the evaluator
+     * @throws IOException if the file cannot be read or is not weights
+     */
+    public static PatternEvaluator load(Path file) throws IOException {
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long header = MAGIC.length + 2L * Integer.BYTES;
+            if (channel.size() < header) {
+                throw new IOException("Not a weights file: " + file);
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        for (byte b : MAGIC) {
+            if (buffer.get() != b) {
+                throw new IOException("Not a weights file: " + file);
+            }
+        }
+        int phases = buffer.getInt();
+        int phaseSize = buffer.getInt();
+        if (phases != PHASES || (phaseSize != PHASE_SIZE && phaseSize != STABILITY)) {
+            throw new IOException("Weights file has the wrong layout: " + file);
+        }
+        if (buffer.remaining() != (long) PHASES * phaseSize * Short.BYTES) {
+            throw new IOException("Not a weights file of the right size: " + file);
+        }
+
+        short[][] weights = new short[PHASES][PHASE_SIZE];
+        for (short[] phase : weights) {
+            buffer.asShortBuffer().get(phase, 0, phaseSize);
+            buffer.position(buffer.position() + phaseSize * Short.BYTES);
+        }
+
+        PatternEvaluator evaluator = new PatternEvaluator(weights);
+        evaluator.symmetrize();
+        return evaluator;
+    }
+
+    /**
+     * Makes the score of a position the same as that of each of its
+     * symmetric forms.  The eight symmetries turn a pattern into its other
+     * instances, except for the edges and diagonals, which are also read
+     * backwards, and the 3x3 corners, which are also read transposed.  So
+     * each such index and the one read the other way get the mean of their
+     * weights.
+     */
+    public void symmetrize() {
+        int[] edge = {7, 6, 5, 4, 3, 2, 1, 0, 9, 8};
+        int[] corner = {0, 3, 6, 1, 4, 7, 2, 5, 8};
+        for (short[] weights : itsWeights) {
+            symmetrize(weights, 0, edge);
+            symmetrize(weights, 1, corner);
+            for (int shift = 0; shift < DIAGONALS.length; ++shift) {
+                int[] diagonal = new int[BitBoard.SIZE - shift];
+                for (int i = 0; i < diagonal.length; ++i) {
+                    diagonal[i] = diagonal.length - 1 - i;
+                }
+                symmetrize(weights, 3 + shift, diagonal);
+            }
+        }
+    }
+
+    /**
+     * Gives each index of a pattern table and the index with its squares
+     * rearranged the mean of their weights.
+     *
+     * @param weights the weights of a phase
+     * @param table   the pattern table
+     * @param squares where each square of the pattern goes
+     */
+    private static void symmetrize(short[] weights, int table, int[] squares) {
+        for (int index = 0; index < TABLE_SIZES[table]; ++index) {
+            int other = 0;
+            for (int i = 0, digits = index; i < squares.length; ++i, digits /= 3) {
+                other += digits % 3 * TERNARY[1 << squares[i]];
+            }
+            if (other > index) {
+                int mean = (weights[OFFSETS[table] + index] + weights[OFFSETS[table] + other]) >> 1;
+                weights[OFFSETS[table] + index] = (short) mean;
+                weights[OFFSETS[table] + other] = (short) mean;
+            }
+        }
+    }
+
+    /**
+     * Writes the weights in the form read by load.
+     *
+     * @param file the weights file to write
+     * @throws IOException if the file cannot be written
+     */
+    public void save(Path file) throws IOException {
+        try (OutputStream stream = Files.newOutputStream(file);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream))) {
+            out.write(MAGIC);
+            out.writeInt(PHASES);
+            out.writeInt(PHASE_SIZE);
+            for (short[] phase : itsWeights) {
+                for (short weight : phase) {
+                    out.writeShort(weight);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns a weight.
+     *
+     * @param phase the game phase
+     * @param index the feature index
+     * @return the weight
+     */
+    public int getWeight(int phase, int index) {
+        return itsWeights[phase][index];
+    }
+
+    /**
+     * Returns a hash of every weight, which tells evaluators apart, as
+     * for the tag of a table file.
+     *
+     * @return the hash
+     */
+    public long fingerprint() {
+        long hash = 0;
+        for (short[] weights : itsWeights) {
+            for (short weight : weights) {
+                hash = (hash + weight) * 0x9E3779B97F4A7C15L;
+            }
+        }
+
+        return hash;
+    }
+
+    /**
+     * Sets a weight, limited to what the file can hold.
+     *
+     * @param phase  the game phase
+     * @param index  the feature index
+     * @param weight the weight
+     */
+    public void setWeight(int phase, int index, int weight) {
+        itsWeights[phase][index] = (short) Math.max(Short.MIN_VALUE,
+                Math.min(Short.MAX_VALUE, weight));
+    }
+
+    /**
+     * Scores a position.
+     *
+     * @param me       the pieces of the player to move
+     * @param opponent the pieces of his opponent
+     * @return the score from the point of view of me
+     */
+    public int evaluate(long me, long opponent) {
+        short[] weights = itsWeights[phase(me, opponent)];
+        int score = weights[BIAS]
+                + weights[MOBILITY] * mobility(me, opponent)
+                + weights[POTENTIAL_MOBILITY] * potentialMobility(me, opponent);
+        if (weights[STABILITY] != 0) {
+            // it costs as much as the patterns, so skip it where unused
+            score += weights[STABILITY] * stability(me, opponent);
+        }
+
+        long meV = BitBoard.flipVertical(me);
+        long opponentV = BitBoard.flipVertical(opponent);
+        long meH = BitBoard.mirrorHorizontal(me);
+        long opponentH = BitBoard.mirrorHorizontal(opponent);
+        long meVH = BitBoard.mirrorHorizontal(meV);
+        long opponentVH = BitBoard.mirrorHorizontal(opponentV);
+        long meD = BitBoard.transpose(me);
+        long opponentD = BitBoard.transpose(opponent);
+        long meHD = BitBoard.transpose(meH);
+        long opponentHD = BitBoard.transpose(opponentH);
+        long meVD = BitBoard.transpose(meV);
+        long opponentVD = BitBoard.transpose(opponentV);
+        long meVHD = BitBoard.transpose(meVH);
+        long opponentVHD = BitBoard.transpose(opponentVH);
+
+        score += weights[edge(me, opponent)] + weights[edge(meV, opponentV)]
+                + weights[edge(meD, opponentD)] + weights[edge(meHD, opponentHD)];
+        score += weights[corner3x3(me, opponent)] + weights[corner3x3(meH, opponentH)]
+                + weights[corner3x3(meV, opponentV)] + weights[corner3x3(meVH, opponentVH)];
+        score += weights[corner2x5(me, opponent)] + weights[corner2x5(meH, opponentH)]
+                + weights[corner2x5(meV, opponentV)] + weights[corner2x5(meVH, opponentVH)]
+                + weights[corner2x5(meD, opponentD)] + weights[corner2x5(meHD, opponentHD)]
+                + weights[corner2x5(meVD, opponentVD)] + weights[corner2x5(meVHD, opponentVHD)];
+        score += weights[diagonal(me, opponent, 0)] + weights[diagonal(meH, opponentH, 0)];
+        for (int shift = 1; shift <= 4; ++shift) {
+            score += weights[diagonal(me, opponent, shift)]
+                    + weights[diagonal(meD, opponentD, shift)]
+                    + weights[diagonal(meH, opponentH, shift)]
+                    + weights[diagonal(meV, opponentV, shift)];
+        }
+
+        return Math.max(-MAX_SCORE, Math.min(MAX_SCORE, score));
+    }
+
+    /**
+     * Finds the features of a position, for training.  It allocates
+     * nothing, since a trainer calls it for every position of every epoch.
+     *
+     * @param me       the pieces of the player to move
+     * @param opponent the pieces of his opponent
+     * @param indexes  filled with the PATTERNS pattern feature indexes, in
+     *                 the order evaluate adds their weights
+     * @return the game phase
+     */
+    public static int features(long me, long opponent, int[] indexes) {
+        long meV = BitBoard.flipVertical(me);
+        long opponentV = BitBoard.flipVertical(opponent);
+        long meH = BitBoard.mirrorHorizontal(me);
+        long opponentH = BitBoard.mirrorHorizontal(opponent);
+        long meVH = BitBoard.mirrorHorizontal(meV);
+        long opponentVH = BitBoard.mirrorHorizontal(opponentV);
+        long meD = BitBoard.transpose(me);
+        long opponentD = BitBoard.transpose(opponent);
+        long meHD = BitBoard.transpose(meH);
+        long opponentHD = BitBoard.transpose(opponentH);
+        long meVD = BitBoard.transpose(meV);
+        long opponentVD = BitBoard.transpose(opponentV);
+        long meVHD = BitBoard.transpose(meVH);
+        long opponentVHD = BitBoard.transpose(opponentVH);
+
+        int n = 0;
+        indexes[n++] = edge(me, opponent);
+        indexes[n++] = edge(meV, opponentV);
+        indexes[n++] = edge(meD, opponentD);
+        indexes[n++] = edge(meHD, opponentHD);
+        indexes[n++] = corner3x3(me, opponent);
+        indexes[n++] = corner3x3(meH, opponentH);
+        indexes[n++] = corner3x3(meV, opponentV);
+        indexes[n++] = corner3x3(meVH, opponentVH);
+        indexes[n++] = corner2x5(me, opponent);
+        indexes[n++] = corner2x5(meH, opponentH);
+        indexes[n++] = corner2x5(meV, opponentV);
+        indexes[n++] = corner2x5(meVH, opponentVH);
+        indexes[n++] = corner2x5(meD, opponentD);
+        indexes[n++] = corner2x5(meHD, opponentHD);
+        indexes[n++] = corner2x5(meVD, opponentVD);
+        indexes[n++] = corner2x5(meVHD, opponentVHD);
+        indexes[n++] = diagonal(me, opponent, 0);
+        indexes[n++] = diagonal(meH, opponentH, 0);
+        for (int shift = 1; shift <= 4; ++shift) {
+            indexes[n++] = diagonal(me, opponent, shift);
+            indexes[n++] = diagonal(meD, opponentD, shift);
+            indexes[n++] = diagonal(meH, opponentH, shift);
+            indexes[n++] = diagonal(meV, opponentV, shift);
+        }
+
+        return phase(me, opponent);
+    }
+
+    /**
+     * Returns the game phase of a position.
+     *
+     * @param me       the pieces of the player to move
+     * @param opponent the pieces of his opponent
+     * @return the phase from 0 to PHASES - 1
+     */
+    public static int phase(long me, long opponent) {
+        return (BitBoard.count(me | opponent) - 4) * PHASES / (BitBoard.SQUARES - 3);
+    }
+
+    /**
+     * Returns the difference in legal moves.
+     *
+     * @param me       the pieces of the player to move
+     * @param opponent the pieces of his opponent
+     * @return my moves less his
+     */
+    public static int mobility(long me, long opponent) {
+        return BitBoard.count(BitBoard.moves(me, opponent))
+                - BitBoard.count(BitBoard.moves(opponent, me));
+    }
+
+    /**
+     * Returns the difference in empty squares next to the other side's
+     * pieces, which are the moves each side may get later.
+     *
+     * @param me       the pieces of the player to move
+     * @param opponent the pieces of his opponent
+     * @return my potential moves less his
+     */
+    public static int potentialMobility(long me, long opponent) {
+        long empty = ~(me | opponent);
+        return BitBoard.count(BitBoard.neighbours(opponent, empty))
+                - BitBoard.count(BitBoard.neighbours(me, empty));
+    }
+
+    /**
+     * Returns the difference in pieces that can never be flipped.
+     *
+     * @param me       the pieces of the player to move
+     * @param opponent the pieces of his opponent
+     * @return my stable pieces less his
+     */
+    public static int stability(long me, long opponent) {
+        return BitBoard.count(Stability.stable(me, opponent))
+                - BitBoard.count(Stability.stable(opponent, me));
+    }
+
+    /**
+     * Returns the base 3 index of a pattern from its squares' bits.
+     *
+     * @param mine the bits of my pieces
+     * @param his  the bits of his pieces
+     * @return the index in the pattern's table
+     */
+    private static int ternary(int mine, int his) {
+        return TERNARY[mine] + 2 * TERNARY[his];
+    }
+
+    /**
+     * Returns the feature index of the top edge with b2 and g2.
+     *
+     * @param me       the pieces of the player to move
+     * @param opponent the pieces of his opponent
+     * @return the feature index
+     */
+    private static int edge(long me, long opponent) {
+        return OFFSETS[0] + ternary(
+                (int) ((me & 0xFF) | ((me >>> 1) & 0x100) | ((me >>> 5) & 0x200)),
+                (int) ((opponent & 0xFF) | ((opponent >>> 1) & 0x100) | ((opponent >>> 5) & 0x200)));
+    }
+
+    /**
+     * Returns the feature index of the 3x3 square in the a1 corner.
+     *
+     * @param me       the pieces of the player to move
+     * @param opponent the pieces of his opponent
+     * @return the feature index
+     */
+    private static int corner3x3(long me, long opponent) {
+        return OFFSETS[1] + ternary(
+                (int) ((me & 0x7) | ((me >>> 5) & 0x38) | ((me >>> 10) & 0x1C0)),
+                (int) ((opponent & 0x7) | ((opponent >>> 5) & 0x38) | ((opponent >>> 10) & 0x1C0)));
+    }
+
+    /**
+     * Returns the feature index of the 2x5 rectangle along the top edge
+     * from the a1 corner.
+     *
+     * @param me       the pieces of the player to move
+     * @param opponent the pieces of his opponent
+     * @return the feature index
+     */
+    private static int corner2x5(long me, long opponent) {
+        return OFFSETS[2] + ternary(
+                (int) ((me & 0x1F) | ((me >>> 3) & 0x3E0)),
+                (int) ((opponent & 0x1F) | ((opponent >>> 3) & 0x3E0)));
+    }
+
+    /**
+     * Returns the feature index of the diagonal starting at (shift, 0) and
+     * going down and to the right, so shift 0 is the a1-h8 diagonal.
+     *
+     * @param me       the pieces of the player to move
+     * @param opponent the pieces of his opponent
+     * @param shift    the column the diagonal starts in, 0 to 4
+     * @return the feature index
+     */
+    private static int diagonal(long me, long opponent, int shift) {
+        return OFFSETS[3 + shift] + ternary(diagonalBits(me, shift), diagonalBits(opponent, shift));
+    }
+
+    /**
+     * Gathers the squares of a diagonal into the low bits, the top one
+     * first.  Each row has at most one square of the diagonal, so
+     * multiplying adds all the rows into the top row without carries.
+     *
+     * @param pieces the mask
+     * @param shift  the column the diagonal starts in
+     * @return the bits of the diagonal
+     */
+    private static int diagonalBits(long pieces, int shift) {
+        return (int) (((pieces & DIAGONALS[shift]) * 0x0101010101010101L) >>> (56 + shift));
+    }
+}
@@ -0,0 +1,172 @@
+package dev.jcps.engine;
+
+/*
+*****************************************************************************
+
+ Desdemona: The Java Othello game.
+ Copyright (C) 2001 Kenneth D. Huffman.
+
+ This program is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 2 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License (gnu.org/copyleft/gpl.html) for more details.
+
+ The author can be reached at www.huffmancoding.com.
+ *****************************************************************************
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * This class counts the move sequences of a given length from a position,
+ * which is the standard check of a move generator: the counts from the
+ * start of the game are well known, and any change to the board code that
+ * alters them has a bug.  Timing the count also measures the speed of the
+ * move generator.
+ * <p>
+ * A pass counts as a move when the player has no legal move but his
+ * opponent does, and a game that ends before the last move counts as one
+ * sequence.  The moves of the last ply are only counted, not played.  The
+ * root moves can be counted in parallel.
+ * <p>
+ * Run it from the command line with the depth and optionally a position in
+ * the text form read by Position.parse:
+ * <pre>
+ *     java -cp desdemona.jar dev.jcps.engine.Perft 10
+ * </pre>
+ * The desdemona.threads system property sets the number of threads
+ * (default: all processors).
+ *
+ * @author Ken Huffman
+ */
+public final class Perft {
+    /**
+     * Prevents instantiation, everything is static.
+     */
+    private Perft() {
+    }
+
+    /**
+     * Counts the move sequences from a position in the calling thread.
+     *
+     * @param player   the pieces of the player to move
+     * @param opponent the pieces of his opponent
+     * @param depth    the number of moves in each sequence
+     * @return the number of sequences
+     */
+    public static long count(long player, long opponent, int depth) {
+        return depth > 0 ? count(player, opponent, depth, false) : 1;
+    }
+
+    /**
+     * Counts the move sequences from a position, counting each root move
+     * in its own task.
+     *
+     * @param player   the pieces of the player to move
+     * @param opponent the pieces of his opponent
+     * @param depth    the number of moves in each sequence
+     * @param pool     the threads to count with
+     * @return the number of sequences
+     */
+    public static long count(long player, long opponent, int depth, ForkJoinPool pool) {
+        long moves = BitBoard.moves(player, opponent);
+        if (depth <= 1 || moves == 0) {
+            return count(player, opponent, depth);
+        }
+
+        List<RecursiveTask<Long>> tasks = new ArrayList<>();
+        for (; moves != 0; moves &= moves - 1) {
+            int sq = Long.numberOfTrailingZeros(moves);
+            long flipped = BitBoard.flips(player, opponent, sq);
+            long nextPlayer = opponent & ~flipped;
+            long nextOpponent = player | flipped | (1L << sq);
+            tasks.add(new RecursiveTask<>() {
+                protected Long compute() {
+                    return count(nextPlayer, nextOpponent, depth - 1, false);
+                }
+            });
+        }
+
+        return pool.invoke(new RecursiveTask<>() {
+            protected Long compute() {
+                long total = 0;
+                for (RecursiveTask<Long> task : ForkJoinTask.invokeAll(tasks)) {
+                    total += task.join();
+                }
+                return total;
+            }
+        });
+    }
+
+    /**
+     * Counts the move sequences below a position.
+     *
+     * @param player   the pieces of the player to move
+     * @param opponent the pieces of his opponent
+     * @param depth    the number of moves still to make, at least 1
+     * @param passed   whether the opponent just passed
+     * @return the number of sequences
+     */
+    private static long count(long player, long opponent, int depth, boolean passed) {
+        long moves = BitBoard.moves(player, opponent);
+        if (moves == 0) {
+            if (passed || depth == 1) {
+                return 1; // the game is over, or the pass is the last move
+            }
+            return count(opponent, player, depth - 1, true);
+        }
+        if (depth == 1) {
+            return BitBoard.count(moves);
+        }
+
+        long total = 0;
+        for (; moves != 0; moves &= moves - 1) {
+            int sq = Long.numberOfTrailingZeros(moves);
+            long flipped = BitBoard.flips(player, opponent, sq);
+            total += count(opponent & ~flipped, player | flipped | (1L << sq),
+                    depth - 1, false);
+        }
+
+        return total;
+    }
+
+    /**
+     * Counts the move sequences to every depth up to the one given and
+     * prints each count with its speed.
+     *
+     * @param args the depth, then optionally a position
+     */
+    public static void main(String[] args) {
+        if (args.length == 0) {
+            System.err.println("Usage: Perft depth [position]");
+            System.exit(1);
+        }
+
+        int maxDepth = Integer.parseInt(args[0]);
+        Position position = args.length > 1 ?
+                Position.parse(String.join(" ", List.of(args).subList(1, args.length))) :
+                Position.START;
+        int threads = Integer.getInteger("desdemona.threads",
+                Runtime.getRuntime().availableProcessors());
+        ForkJoinPool pool = new ForkJoinPool(Math.max(1, threads));
+
+        System.out.println(position);
+        for (int depth = 1; depth <= maxDepth; ++depth) {
+            long startTime = System.nanoTime();
+            long nodes = count(position.getPlayer(), position.getOpponent(), depth, pool);
+            long nanos = Math.max(1, System.nanoTime() - startTime);
+            System.out.printf("%2d %,15d %,10d ms %,8.1f M nodes/s%n", depth, nodes,
+                    nanos / 1000000L, nodes * 1000.0 / nanos);
+        }
+        pool.shutdown();
+    }
+}
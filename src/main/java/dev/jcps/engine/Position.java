@@ -0,0 +1,178 @@
+package dev.jcps.engine;
+
+/*
+*****************************************************************************
+
+ Desdemona: The Java Othello game.
+ Copyright (C) 2001 Kenneth D. Huffman.
+
+ This program is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 2 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License (gnu.org/copyleft/gpl.html) for more details.
+
+ The author can be reached at www.huffmancoding.com.
+ *****************************************************************************
+ */
+
+/**
+ * This class holds a position as the pieces of the player to move and
+ * those of his opponent, and reads and writes it as text.  The text is the
+ * usual one of Othello programs: 64 characters for the squares, row by row
+ * from a1 to h8, with 'X' for black, 'O' for white and '-' (or '.') for
+ * empty, then the side to move, 'X' or 'O'.  Spaces are ignored.
+ *
+ * @author Ken Huffman
+ */
+public final class Position {
+    /**
+     * the position at the start of the game, black to move with his pieces
+     * on d5 and e4.  It is the mirror image of BitBoard's start, which makes
+     * no difference to the play.
+     */
+    public static final Position START = new Position(BitBoard.START_OPPONENT,
+            BitBoard.START_PLAYER, true);
+
+    /**
+     * the pieces of the player to move
+     */
+    private final long itsPlayer;
+    /**
+     * the pieces of his opponent
+     */
+    private final long itsOpponent;
+    /**
+     * whether black is to move
+     */
+    private final boolean itsBlackToMove;
+
+    /**
+     * Constructor.
+     *
+     * @param player      the pieces of the player to move
+     * @param opponent    the pieces of his opponent
+     * @param blackToMove whether black is to move
+     */
+    public Position(long player, long opponent, boolean blackToMove) {
+        if ((player & opponent) != 0) {
+            throw new IllegalArgumentException("Squares occupied by both players");
+        }
+        itsPlayer = player;
+        itsOpponent = opponent;
+        itsBlackToMove = blackToMove;
+    }
+
+    /**
+     * Reads a position from text.
+     *
+     * @param text the squares, then the side to move
+     * @return the position
+     * @throws IllegalArgumentException if the text is not a position
+     */
+    public static Position parse(String text) {
+        String squares = text.replaceAll("\\s", "");
+        if (squares.length() != BitBoard.SQUARES + 1) {
+            throw new IllegalArgumentException("Expected 64 squares and the side to move: " + text);
+        }
+
+        long black = 0;
+        long white = 0;
+        for (int sq = 0; sq < BitBoard.SQUARES; ++sq) {
+            char c = Character.toUpperCase(squares.charAt(sq));
+            if (c == 'X') {
+                black |= 1L << sq;
+            } else if (c == 'O') {
+                white |= 1L << sq;
+            } else if (c != '-' && c != '.') {
+                throw new IllegalArgumentException("Bad square '" + c + "': " + text);
+            }
+        }
+
+        char side = Character.toUpperCase(squares.charAt(BitBoard.SQUARES));
+        if (side == 'X') {
+            return new Position(black, white, true);
+        } else if (side == 'O') {
+            return new Position(white, black, false);
+        }
+        throw new IllegalArgumentException("Bad side to move '" + side + "': " + text);
+    }
+
+    /**
+     * Returns the pieces of the player to move.
+     *
+     * @return the mask of his pieces
+     */
+    public long getPlayer() {
+        return itsPlayer;
+    }
+
+    /**
+     * Returns the pieces of the opponent of the player to move.
+     *
+     * @return the mask of his pieces
+     */
+    public long getOpponent() {
+        return itsOpponent;
+    }
+
+    /**
+     * Determines which side is to move.
+     *
+     * @return true, if black is to move
+     */
+    public boolean isBlackToMove() {
+        return itsBlackToMove;
+    }
+
+    /**
+     * Returns the number of empty squares.
+     *
+     * @return the count from 0 to 60
+     */
+    public int getEmpties() {
+        return BitBoard.SQUARES - BitBoard.count(itsPlayer | itsOpponent);
+    }
+
+    /**
+     * Plays a move or a pass.
+     *
+     * @param sq the bit number of the move, or -1 to pass
+     * @return the position after the move, with the other side to move
+     * @throws IllegalArgumentException if the move is not legal
+     */
+    public Position play(int sq) {
+        if (sq < 0) {
+            return new Position(itsOpponent, itsPlayer, !itsBlackToMove);
+        }
+
+        long flipped = BitBoard.flips(itsPlayer, itsOpponent, sq);
+        if (((itsPlayer | itsOpponent) & (1L << sq)) != 0 || flipped == 0) {
+            throw new IllegalArgumentException("Illegal move " + SearchResult.name(sq));
+        }
+
+        return new Position(itsOpponent & ~flipped, itsPlayer | flipped | (1L << sq),
+                !itsBlackToMove);
+    }
+
+    /**
+     * Writes the position as text that parse reads back.
+     *
+     * @return the squares, a space and the side to move
+     */
+    public String toString() {
+        long black = itsBlackToMove ? itsPlayer : itsOpponent;
+        long white = itsBlackToMove ? itsOpponent : itsPlayer;
+        StringBuilder text = new StringBuilder(BitBoard.SQUARES + 2);
+        for (int sq = 0; sq < BitBoard.SQUARES; ++sq) {
+            long bit = 1L << sq;
+            text.append((black & bit) != 0 ? 'X' : (white & bit) != 0 ? 'O' : '-');
+        }
+
+        return text.append(' ').append(itsBlackToMove ? 'X' : 'O').toString();
+    }
+}
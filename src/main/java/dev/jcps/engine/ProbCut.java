@@ -0,0 +1,348 @@
+package dev.jcps.engine;
+
+/*
+*****************************************************************************
+
+ Desdemona: The Java Othello game.
+ Copyright (C) 2001 Kenneth D. Huffman.
+
+ This program is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 2 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License (gnu.org/copyleft/gpl.html) for more details.
+
+ The author can be reached at www.huffmancoding.com.
+ *****************************************************************************
+ */
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * This class holds the parameters of Multi-ProbCut, which lets the search
+ * skip positions it can predict it does not need.  The score of a deep
+ * search of a position is close to a straight line through the score of a
+ * shallow search of it, deep = slope * shallow + intercept, give or take
+ * a normally distributed error.  So if a shallow search finds a score far
+ * enough above the window that the deep one is very likely above it too,
+ * the deep search is not made, and the same below.
+ * <p>
+ * The line and the spread of the error are fitted for each pair of depths
+ * and each phase of the game (as for the pattern evaluator, by the number
+ * of pieces on the board) by the ProbCutTuner, from the scores of both
+ * searches of positions from games.  A depth may be checked against
+ * several shallower depths, the cheapest first.  How many error spreads
+ * away from the window the shallow score must be is the threshold: the
+ * higher it is, the fewer positions are cut and the safer the cuts.
+ * <p>
+ * The fits only hold for the evaluation they were made with, so the file
+ * is tagged with the evaluator's fingerprint (0 for the corner evaluation).
+ * The file is a header, then each pair of depths with every phase's slope,
+ * intercept and error spread.
+ *
+ * @author Ken Huffman
+ */
+public final class ProbCut {
+    /**
+     * the shallowest depth worth predicting
+     */
+    public static final int MIN_DEPTH = 3;
+    /**
+     * the deepest depth that can be predicted
+     */
+    public static final int MAX_DEPTH = 30;
+    /**
+     * the number of error spreads a shallow score must be from the window
+     * to cut, unless set otherwise
+     */
+    public static final double DEFAULT_THRESHOLD = 1.5;
+    /**
+     * the first bytes of every parameters file
+     */
+    private static final byte[] MAGIC = "DSDPCUT1".getBytes(StandardCharsets.US_ASCII);
+    /**
+     * the fingerprint of the evaluator the parameters were fitted with
+     */
+    private final long itsTag;
+    /**
+     * the shallow depths each depth is checked against, cheapest first
+     */
+    private final int[][] itsShallow = new int[MAX_DEPTH + 1][0];
+    /**
+     * the slope of each check's line for each phase, by depth and check
+     */
+    private final float[][][] itsSlopes = new float[MAX_DEPTH + 1][0][];
+    /**
+     * the intercept of each check's line for each phase
+     */
+    private final float[][][] itsIntercepts = new float[MAX_DEPTH + 1][0][];
+    /**
+     * the spread of each check's error for each phase
+     */
+    private final float[][][] itsSigmas = new float[MAX_DEPTH + 1][0][];
+    /**
+     * the number of error spreads a shallow score must be from the window
+     * to cut
+     */
+    private double itsThreshold = DEFAULT_THRESHOLD;
+
+    /**
+     * Constructor for parameters with no checks, to be fitted.
+     *
+     * @param tag the fingerprint of the evaluator the parameters are for,
+     *            0 for the corner evaluation
+     */
+    public ProbCut(long tag) {
+        itsTag = tag;
+    }
+
+    /**
+     * Reads a parameters file.
+     *
+     * @param file the parameters
+     * @return the parameters, with the default threshold
+     * @throws IOException if the file cannot be read or is not parameters
+     */
+    public static ProbCut load(Path file) throws IOException {
+        try (InputStream stream = Files.newInputStream(file);
+             DataInputStream in = new DataInputStream(new BufferedInputStream(stream))) {
+            for (byte b : MAGIC) {
+                if (in.readByte() != b) {
+                    throw new IOException("Not a ProbCut file: " + file);
+                }
+            }
+            if (in.readInt() != PatternEvaluator.PHASES) {
+                throw new IOException("ProbCut file has the wrong layout: " + file);
+            }
+
+            ProbCut probCut = new ProbCut(in.readLong());
+            for (int pairs = in.readInt(); pairs > 0; --pairs) {
+                int depth = in.readInt();
+                int shallow = in.readInt();
+                if (depth < MIN_DEPTH || depth > MAX_DEPTH || shallow < 1 || shallow >= depth) {
+                    throw new IOException("ProbCut file has a bad pair of depths: " + file);
+                }
+                for (int phase = 0; phase < PatternEvaluator.PHASES; ++phase) {
+                    probCut.setCheck(depth, shallow, phase,
+                            in.readFloat(), in.readFloat(), in.readFloat());
+                }
+            }
+
+            return probCut;
+        }
+    }
+
+    /**
+     * Writes the parameters in the form read by load.  The threshold is
+     * not written.
+     *
+     * @param file the parameters file to write
+     * @throws IOException if the file cannot be written
+     */
+    public void save(Path file) throws IOException {
+        try (OutputStream stream = Files.newOutputStream(file);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream))) {
+            out.write(MAGIC);
+            out.writeInt(PatternEvaluator.PHASES);
+            out.writeLong(itsTag);
+            int pairs = 0;
+            for (int[] shallow : itsShallow) {
+                pairs += shallow.length;
+            }
+            out.writeInt(pairs);
+            for (int depth = 0; depth <= MAX_DEPTH; ++depth) {
+                for (int check = 0; check < itsShallow[depth].length; ++check) {
+                    out.writeInt(depth);
+                    out.writeInt(itsShallow[depth][check]);
+                    for (int phase = 0; phase < PatternEvaluator.PHASES; ++phase) {
+                        out.writeFloat(itsSlopes[depth][check][phase]);
+                        out.writeFloat(itsIntercepts[depth][check][phase]);
+                        out.writeFloat(itsSigmas[depth][check][phase]);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the fingerprint of the evaluator the parameters were fitted
+     * with.
+     *
+     * @return the tag, 0 for the corner evaluation
+     */
+    public long getTag() {
+        return itsTag;
+    }
+
+    /**
+     * Determines if the parameters were fitted with an evaluator.  Fitted
+     * with other weights, they predict the wrong scores and cut the wrong
+     * positions.
+     *
+     * @param evaluator the evaluator, or null for the corner evaluation
+     * @return true, if the tag is the evaluator's fingerprint
+     */
+    public boolean fits(PatternEvaluator evaluator) {
+        return itsTag == (evaluator != null ? evaluator.fingerprint() : 0);
+    }
+
+    /**
+     * Returns how many error spreads a shallow score must be from the
+     * window to cut.
+     *
+     * @return the threshold
+     */
+    public double getThreshold() {
+        return itsThreshold;
+    }
+
+    /**
+     * Sets how many error spreads a shallow score must be from the window
+     * to cut.
+     *
+     * @param threshold the threshold, higher for fewer and safer cuts
+     */
+    public void setThreshold(double threshold) {
+        itsThreshold = threshold;
+    }
+
+    /**
+     * Sets the fitted line of one pair of depths in one phase, adding the
+     * pair as a check of the deeper depth if it is new.
+     *
+     * @param depth     the depth predicted
+     * @param shallow   the shallower depth it is predicted from
+     * @param phase     the game phase, as for PatternEvaluator
+     * @param slope     the slope of the line
+     * @param intercept the intercept of the line
+     * @param sigma     the spread of the error about the line
+     */
+    public void setCheck(int depth, int shallow, int phase,
+                         double slope, double intercept, double sigma) {
+        int[] shallows = itsShallow[depth];
+        int check = 0;
+        while (check < shallows.length && shallows[check] < shallow) {
+            ++check;
+        }
+        if (check == shallows.length || shallows[check] != shallow) {
+            itsShallow[depth] = insert(shallows, check, shallow);
+            itsSlopes[depth] = insert(itsSlopes[depth], check);
+            itsIntercepts[depth] = insert(itsIntercepts[depth], check);
+            itsSigmas[depth] = insert(itsSigmas[depth], check);
+        }
+        itsSlopes[depth][check][phase] = (float) slope;
+        itsIntercepts[depth][check][phase] = (float) intercept;
+        itsSigmas[depth][check][phase] = (float) sigma;
+    }
+
+    /**
+     * Returns a copy of an array with a value inserted.
+     *
+     * @param values the array
+     * @param index  where the value goes
+     * @param value  the value
+     * @return the longer array
+     */
+    private static int[] insert(int[] values, int index, int value) {
+        int[] longer = new int[values.length + 1];
+        System.arraycopy(values, 0, longer, 0, index);
+        System.arraycopy(values, index, longer, index + 1, values.length - index);
+        longer[index] = value;
+        return longer;
+    }
+
+    /**
+     * Returns a copy of an array of per phase parameters with a new check
+     * inserted, whose slopes are all zero so it never cuts until it is
+     * set.
+     *
+     * @param values the parameters of each check
+     * @param index  where the new check goes
+     * @return the longer array
+     */
+    private static float[][] insert(float[][] values, int index) {
+        float[][] longer = new float[values.length + 1][];
+        System.arraycopy(values, 0, longer, 0, index);
+        System.arraycopy(values, index, longer, index + 1, values.length - index);
+        longer[index] = new float[PatternEvaluator.PHASES];
+        return longer;
+    }
+
+    /**
+     * Returns the number of shallower depths a depth is checked against.
+     *
+     * @param depth the number of plies the search would look ahead
+     * @return the number of checks, 0 if the depth is never cut
+     */
+    public int getChecks(int depth) {
+        return depth <= MAX_DEPTH ? itsShallow[depth].length : 0;
+    }
+
+    /**
+     * Returns the shallow depth of a check.
+     *
+     * @param depth the number of plies the search would look ahead
+     * @param check the check, from 0 (the cheapest) to getChecks - 1
+     * @return the number of plies the shallow search looks ahead
+     */
+    public int getShallow(int depth, int check) {
+        return itsShallow[depth][check];
+    }
+
+    /**
+     * Returns the shallow score at or above which the deep score is
+     * expected to be at least a bound.
+     *
+     * @param depth the number of plies the search would look ahead
+     * @param check the check
+     * @param phase the game phase, as for PatternEvaluator
+     * @param bound the score the deep search would have to reach
+     * @return the shallow score to reach, Search.BIG_SCORE or more if the
+     * check cannot cut
+     */
+    public int getHighCut(int depth, int check, int phase, int bound) {
+        float slope = itsSlopes[depth][check][phase];
+        if (slope <= 0) {
+            return Search.BIG_SCORE;
+        }
+
+        double cut = (bound + itsThreshold * itsSigmas[depth][check][phase]
+                - itsIntercepts[depth][check][phase]) / slope;
+        return (int) Math.min(Search.BIG_SCORE, Math.ceil(cut));
+    }
+
+    /**
+     * Returns the shallow score at or below which the deep score is
+     * expected to be at most a bound.
+     *
+     * @param depth the number of plies the search would look ahead
+     * @param check the check
+     * @param phase the game phase, as for PatternEvaluator
+     * @param bound the score the deep search would have to beat
+     * @return the shallow score not to beat, -Search.BIG_SCORE or less if
+     * the check cannot cut
+     */
+    public int getLowCut(int depth, int check, int phase, int bound) {
+        float slope = itsSlopes[depth][check][phase];
+        if (slope <= 0) {
+            return -Search.BIG_SCORE;
+        }
+
+        double cut = (bound - itsThreshold * itsSigmas[depth][check][phase]
+                - itsIntercepts[depth][check][phase]) / slope;
+        return (int) Math.max(-Search.BIG_SCORE, Math.floor(cut));
+    }
+}
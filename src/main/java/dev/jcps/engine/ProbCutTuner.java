@@ -0,0 +1,325 @@
+package dev.jcps.engine;
+
+/*
+*****************************************************************************
+
+ Desdemona: The Java Othello game.
+ Copyright (C) 2001 Kenneth D. Huffman.
+
+ This program is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 2 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License (gnu.org/copyleft/gpl.html) for more details.
+
+ The author can be reached at www.huffmancoding.com.
+ *****************************************************************************
+ */
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class fits the Multi-ProbCut parameters.  It takes one random
+ * position from each game of a games file, searches it to every level up
+ * to the deepest wanted without any cuts, and fits a straight line through
+ * the scores of each pair of depths checked, for each game phase.
+ * <p>
+ * Each depth is checked against about half its depth, so the check is
+ * cheap, keeping the difference even because odd and even levels score
+ * differently.  A second check, two plies shallower still, is made first
+ * and cuts the easy positions cheaper.  A phase with too
+ * few positions for a fit of its own uses the fit of all the phases.
+ * <p>
+ * The games file has one game per line as moves like "f5d6c3", as written
+ * by the self-play runner.  The positions are searched on a fixed number of
+ * worker threads, each with a search of its own.  The fits must be made
+ * with the weights they will be used with.  Run it from the command line:
+ * <pre>
+ *     java -cp desdemona.jar dev.jcps.engine.ProbCutTuner games.txt desdemona.probcut
+ *             [-positions n] [-depth n] [-checks n] [-threads n] [-seed n] [-weights file]
+ * </pre>
+ *
+ * @author Ken Huffman
+ */
+public final class ProbCutTuner {
+    /**
+     * the size of each worker's transposition table
+     */
+    private static final int HASH_MEGABYTES = 4;
+    /**
+     * the fewest positions of a phase to fit it on its own
+     */
+    private static final int MIN_SAMPLES = 30;
+
+    /**
+     * the deepest level searched and fitted
+     */
+    private final int itsMaxDepth;
+    /**
+     * the evaluator searched with, or null for the corner evaluation
+     */
+    private PatternEvaluator itsEvaluator;
+    /**
+     * the pieces of the player to move in each position
+     */
+    private long[] itsPlayers = new long[0];
+    /**
+     * the pieces of his opponent
+     */
+    private long[] itsOpponents = new long[0];
+    /**
+     * the phase of each position
+     */
+    private int[] itsPhases = new int[0];
+    /**
+     * the score of each position at each level, by position and level
+     */
+    private int[][] itsScores = new int[0][];
+
+    /**
+     * Constructor.
+     *
+     * @param maxDepth the deepest level to fit, at most ProbCut.MAX_DEPTH
+     */
+    public ProbCutTuner(int maxDepth) {
+        itsMaxDepth = Math.min(maxDepth, ProbCut.MAX_DEPTH);
+    }
+
+    /**
+     * Sets how the leaves of the search are scored.
+     *
+     * @param evaluator the pattern evaluator, or null for the corner
+     *                  evaluation
+     */
+    public void setEvaluator(PatternEvaluator evaluator) {
+        itsEvaluator = evaluator;
+    }
+
+    /**
+     * Takes one random position from each game, among those with more
+     * empty squares than the deepest level.
+     *
+     * @param games     the games file
+     * @param positions the most positions to take
+     * @param seed      where the random choices start
+     * @return the number of positions taken
+     * @throws IOException if the file cannot be read
+     */
+    public int sample(Path games, int positions, long seed) throws IOException {
+        SplittableRandom random = new SplittableRandom(seed);
+        long[] players = new long[BitBoard.SQUARES];
+        long[] opponents = new long[BitBoard.SQUARES];
+        int[] labels = new int[BitBoard.SQUARES];
+        itsPlayers = new long[positions];
+        itsOpponents = new long[positions];
+        itsPhases = new int[positions];
+        int count = 0;
+        try (BufferedReader reader = Files.newBufferedReader(games)) {
+            for (String line = reader.readLine(); line != null && count < positions;
+                 line = reader.readLine()) {
+                int plies = Trainer.replay(line, players, opponents, labels);
+                while (plies > 0 && BitBoard.SQUARES - BitBoard.count(players[plies - 1]
+                        | opponents[plies - 1]) <= itsMaxDepth) {
+                    --plies;
+                }
+                if (plies > 0) {
+                    int ply = random.nextInt(plies);
+                    itsPlayers[count] = players[ply];
+                    itsOpponents[count] = opponents[ply];
+                    itsPhases[count++] = PatternEvaluator.phase(players[ply], opponents[ply]);
+                }
+            }
+        }
+        itsPlayers = Arrays.copyOf(itsPlayers, count);
+        itsOpponents = Arrays.copyOf(itsOpponents, count);
+        itsPhases = Arrays.copyOf(itsPhases, count);
+
+        return count;
+    }
+
+    /**
+     * Searches every position to each level up to the deepest.
+     *
+     * @param threads the number of worker threads
+     * @throws InterruptedException if interrupted while waiting for the
+     *                              workers
+     */
+    public void search(int threads) throws InterruptedException {
+        itsScores = new int[itsPlayers.length][itsMaxDepth + 1];
+        AtomicInteger next = new AtomicInteger();
+        ExecutorService workers = Executors.newFixedThreadPool(threads);
+        try {
+            Future<?>[] futures = new Future<?>[threads];
+            for (int i = 0; i < threads; ++i) {
+                futures[i] = workers.submit(() -> {
+                    TranspositionTable table = new TranspositionTable(HASH_MEGABYTES);
+                    Search search = new Search(table, null);
+                    search.setEvaluator(itsEvaluator);
+                    for (int p = next.getAndIncrement(); p < itsPlayers.length; p = next.getAndIncrement()) {
+                        table.newSearch();
+                        for (int level = 1; level <= itsMaxDepth; ++level) {
+                            itsScores[p][level] = search.search(itsPlayers[p], itsOpponents[p], level);
+                        }
+                    }
+                });
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            workers.shutdownNow();
+        }
+    }
+
+    /**
+     * Fits the line of each pair of depths checked in each phase to the
+     * scores searched.
+     *
+     * @param checks the most shallow depths to check each depth against
+     * @return the parameters
+     */
+    public ProbCut fit(int checks) {
+        ProbCut probCut = new ProbCut(itsEvaluator != null ? itsEvaluator.fingerprint() : 0);
+        for (int depth = ProbCut.MIN_DEPTH; depth <= itsMaxDepth; ++depth) {
+            // about half as deep, an even number of plies shallower
+            int shallow = depth / 2 - (depth - depth / 2) % 2;
+            for (int check = 0; check < checks && shallow >= 1; ++check, shallow -= 2) {
+                double[] all = regress(depth, shallow, -1);
+                for (int phase = 0; phase < PatternEvaluator.PHASES; ++phase) {
+                    double[] line = regress(depth, shallow, phase);
+                    if (line[3] < MIN_SAMPLES) {
+                        line = all;
+                    }
+                    probCut.setCheck(depth, shallow, phase, line[0], line[1], line[2]);
+                }
+            }
+        }
+
+        return probCut;
+    }
+
+    /**
+     * Fits a line through the deep scores of the positions of a phase by
+     * their shallow scores, by least squares.
+     *
+     * @param depth   the deep level
+     * @param shallow the shallow level
+     * @param phase   the phase to fit, or -1 for every phase
+     * @return the slope, the intercept, the spread of the error and the
+     * number of positions
+     */
+    private double[] regress(int depth, int shallow, int phase) {
+        int n = 0;
+        double sumX = 0;
+        double sumY = 0;
+        double sumXX = 0;
+        double sumXY = 0;
+        double sumYY = 0;
+        for (int p = 0; p < itsPhases.length; ++p) {
+            if (phase < 0 || itsPhases[p] == phase) {
+                double x = itsScores[p][shallow];
+                double y = itsScores[p][depth];
+                ++n;
+                sumX += x;
+                sumY += y;
+                sumXX += x * x;
+                sumXY += x * y;
+                sumYY += y * y;
+            }
+        }
+        if (n < 3) {
+            return new double[]{0, 0, 0, n};
+        }
+
+        double varX = sumXX - sumX * sumX / n;
+        double slope = varX > 0 ? (sumXY - sumX * sumY / n) / varX : 0;
+        double intercept = (sumY - slope * sumX) / n;
+        double squaredError = sumYY - 2 * slope * sumXY - 2 * intercept * sumY
+                + slope * slope * sumXX + 2 * slope * intercept * sumX + intercept * intercept * n;
+
+        return new double[]{slope, intercept, Math.sqrt(Math.max(0, squaredError) / (n - 2)), n};
+    }
+
+    /**
+     * Prints the fit of every phase together for a pair of depths.
+     *
+     * @param depth   the deep level
+     * @param shallow the shallow level
+     */
+    private void report(int depth, int shallow) {
+        double[] line = regress(depth, shallow, -1);
+        System.out.printf("%2d from %2d: deep = %.3f * shallow %+.1f, sigma %.1f%n",
+                depth, shallow, line[0], line[1], line[2]);
+    }
+
+    /**
+     * Fits the parameters from the command line and writes them.
+     *
+     * @param args the games file, the parameters file, then options
+     * @throws IOException if a file cannot be read or written
+     * @throws InterruptedException if interrupted while searching
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 2) {
+            System.err.println("Usage: ProbCutTuner games probcut [-positions n] [-depth n]"
+                    + " [-checks n] [-threads n] [-seed n] [-weights file]");
+            System.exit(1);
+        }
+
+        Path games = Path.of(args[0]);
+        Path file = Path.of(args[1]);
+        int positions = 1000;
+        int depth = 10;
+        int checks = 2;
+        int threads = Runtime.getRuntime().availableProcessors();
+        long seed = 1;
+        Path weights = null;
+        for (int i = 2; i < args.length; i += 2) {
+            if (i + 1 == args.length) {
+                throw new IllegalArgumentException("Missing value for " + args[i]);
+            }
+            switch (args[i]) {
+                case "-positions" -> positions = Integer.parseInt(args[i + 1]);
+                case "-depth" -> depth = Integer.parseInt(args[i + 1]);
+                case "-checks" -> checks = Integer.parseInt(args[i + 1]);
+                case "-threads" -> threads = Integer.parseInt(args[i + 1]);
+                case "-seed" -> seed = Long.parseLong(args[i + 1]);
+                case "-weights" -> weights = Path.of(args[i + 1]);
+                default -> throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+
+        ProbCutTuner tuner = new ProbCutTuner(depth);
+        if (weights != null) {
+            tuner.setEvaluator(PatternEvaluator.load(weights));
+        }
+        long startTime = System.nanoTime();
+        int count = tuner.sample(games, positions, seed);
+        tuner.search(threads);
+        ProbCut probCut = tuner.fit(checks);
+        probCut.save(file);
+        for (int d = ProbCut.MIN_DEPTH; d <= tuner.itsMaxDepth; ++d) {
+            for (int check = 0; check < probCut.getChecks(d); ++check) {
+                tuner.report(d, probCut.getShallow(d, check));
+            }
+        }
+        System.out.printf("%,d positions searched to level %d in %.1f s%n",
+                count, tuner.itsMaxDepth, (System.nanoTime() - startTime) / 1e9);
+    }
+}
@@ -0,0 +1,1418 @@
+package dev.jcps.engine;
+
+/*
+*****************************************************************************
+
+ Desdemona: The Java Othello game.
+ Copyright (C) 2001 Kenneth D. Huffman.
+
+ This program is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 2 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License (gnu.org/copyleft/gpl.html) for more details.
+
+ The author can be reached at www.huffmancoding.com.
+ *****************************************************************************
+ */
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.BooleanSupplier;
+
+/**
+ * This class ranks each possible move of a BitBoard position by recursively
+ * determining and scoring each of its successive moves, and remembers the
+ * highest scoring one.  It holds no display objects, so it can search
+ * outside the AWT Event thread and outside of a game.
+ * <p>
+ * A search either goes to a fixed look ahead level or deepens one level at a
+ * time until its time budget is used up, always keeping the best move of
+ * the last level it completed ready to be played.
+ * <p>
+ * If it is given a ForkJoinPool, it searches in parallel with the Young
+ * Brothers Wait rule: once the first (eldest) move of a deep enough position
+ * has been searched and has set the bound, the remaining (younger) moves are
+ * searched at the same time, each by its own Search sharing the
+ * transposition table.  A younger brother starts with the best score found
+ * so far by his brothers, and once one of them cuts off the rest are
+ * abandoned.  The brothers are combined in the same order a single thread
+ * would search them, and a brother only starts from a later brother's score
+ * less one, so a fixed depth search finds the same score and move no matter
+ * how many threads run it.
+ * <p>
+ * With ProbCut parameters, positions whose shallow search is far enough
+ * outside the window are not searched any deeper.  Whether a position is
+ * cut depends on its window and on what the table holds, so a parallel
+ * search then no longer always finds the same score and move.
+ *
+ * @author Ken Huffman
+ */
+public class Search {
+    /**
+     * bigger than the best possible score
+     */
+    public static final int BIG_SCORE = 9000;
+    /**
+     * true to count cutoffs, set by the desdemona.statistics system
+     * property.  It is read once, so when it is false the counting is
+     * compiled away.
+     */
+    public static final boolean STATISTICS = Boolean.getBoolean("desdemona.statistics");
+    /**
+     * The score for grabbing a corner
+     */
+    private static final int CORNER_SCORE = 300;
+    /**
+     * The score for forcing the opponent to grab an inside corner
+     */
+    private static final int INSIDE_SCORE = 50;
+    /**
+     * The best score possible
+     */
+    private static final int PERFECT_SCORE = 8003;
+    /**
+     * The fewest plies below a position for it to use the transposition
+     * table
+     */
+    private static final int MIN_TABLE_DEPTH = 2;
+    /**
+     * The most pieces on the board for a position to be kept in the
+     * transposition table in its canonical symmetric form
+     */
+    private static final int SYMMETRY_PIECES = 16;
+    /**
+     * The fewest plies below a position for its younger brothers to be
+     * searched in parallel, shallower ones are not worth a task
+     */
+    private static final int MIN_SPLIT_DEPTH = 4;
+    /**
+     * The clock is read once for every this many nodes plus one
+     */
+    private static final int CLOCK_CHECK_MASK = 1023;
+    /**
+     * The most legal moves a position can have, rounded way up
+     */
+    private static final int MAX_MOVES = BitBoard.SQUARES;
+    /**
+     * The fewest plies below a position for killer moves and history to
+     * rank its moves
+     */
+    private static final int MIN_HISTORY_DEPTH = 2;
+    /**
+     * The most plies below a position for its moves to be ranked by the
+     * opponent's replies instead of by history
+     */
+    private static final int FASTEST_FIRST_DEPTH = 3;
+    /**
+     * The level searched to have a move ready before solving the endgame
+     */
+    private static final int ENDGAME_READY_LEVEL = 4;
+    /**
+     * The first level searched with an aspiration window around the score
+     * of the level before
+     */
+    private static final int MIN_ASPIRATION_LEVEL = 3;
+    /**
+     * How far each side of the expected score an aspiration window starts;
+     * narrower windows fail too often for the re-searches to pay
+     */
+    private static final int ASPIRATION_WIDTH = 400;
+    /**
+     * What probeCut and stabilityCutoff return when they cannot cut the
+     * position
+     */
+    private static final int NO_CUT = Integer.MIN_VALUE;
+    /**
+     * The ordering key of the remembered best move
+     */
+    private static final int HASH_MOVE_KEY = Integer.MAX_VALUE;
+    /**
+     * The ordering key of the first killer move, the second is one less
+     */
+    private static final int KILLER_KEY = HASH_MOVE_KEY - 1;
+    /**
+     * The history credit at which every square's credit is halved, keeping
+     * the keys below the killer keys
+     */
+    private static final int HISTORY_LIMIT = 1 << 24;
+    /**
+     * How much one step of square priority is worth in an ordering key
+     */
+    private static final int PRIORITY_WEIGHT = 16;
+    /**
+     * The order to try squares in when nothing else is known: corners are
+     * best, then the edge squares two away from a corner, and the squares
+     * next to a corner, especially diagonally (the X-squares), are worst
+     */
+    private static final int[] SQUARE_PRIORITY = {
+            9, 2, 6, 5, 5, 6, 2, 9,
+            2, 0, 3, 3, 3, 3, 0, 2,
+            6, 3, 5, 4, 4, 5, 3, 6,
+            5, 3, 4, 0, 0, 4, 3, 5,
+            5, 3, 4, 0, 0, 4, 3, 5,
+            6, 3, 5, 4, 4, 5, 3, 6,
+            2, 0, 3, 3, 3, 3, 0, 2,
+            9, 2, 6, 5, 5, 6, 2, 9
+    };
+    /**
+     * the remembered search results, or null if there is no table
+     */
+    private final TranspositionTable itsTable;
+    /**
+     * the threads for searching in parallel, or null to use only the caller
+     */
+    private final ForkJoinPool itsPool;
+    /**
+     * the solver for the last empty squares, or null for a helper
+     */
+    private final EndgameSolver itsSolver;
+    /**
+     * the most empty squares for the timed search to solve the endgame
+     */
+    private int itsEndgameEmpties;
+    /**
+     * whether the endgame is solved for the exact score rather than only
+     * for win, draw or loss
+     */
+    private boolean itsExactEndgame = true;
+    /**
+     * whether the last search solved the endgame
+     */
+    private volatile boolean itsSolved;
+    /**
+     * the evaluator of the leaves, or null for the corner evaluation
+     */
+    private PatternEvaluator itsEvaluator;
+    /**
+     * the parameters for cutting positions predicted by shallow searches,
+     * or null to search every position to the full level
+     */
+    private ProbCut itsProbCut;
+    /**
+     * the main search, whose clock and stop flag are shared by its helpers
+     */
+    private final Search itsRoot;
+    /**
+     * the split this search is a younger brother in, or null for the main
+     * search
+     */
+    private Split itsSplit;
+    /**
+     * How deep the computer wants us to think
+     */
+    private int itsLookAheadLevel;
+    /**
+     * bit number of the move with the highest score at the current level
+     */
+    private int itsRootMove = -1;
+    /**
+     * bit number of the best move of the last completed level, or -1 to pass
+     */
+    private volatile int itsBestMove = -1;
+    /**
+     * the score of the last completed level
+     */
+    private volatile int itsBestScore;
+    /**
+     * the last level completed
+     */
+    private volatile int itsCompletedLevel;
+    /**
+     * the System.nanoTime when the search must stop
+     */
+    private long itsDeadline = Long.MAX_VALUE;
+    /**
+     * whether the search has been told to stop
+     */
+    private volatile boolean itsStopped;
+    /**
+     * tells whether a stop was asked for before the search began, or null
+     */
+    private BooleanSupplier itsStopRequest;
+    /**
+     * the ordered moves of each nesting level
+     */
+    private int[][] itsMoves = new int[0][];
+    /**
+     * the ordering keys of itsMoves
+     */
+    private int[][] itsKeys = new int[0][];
+    /**
+     * the two most recent moves to cut off at each nesting level
+     */
+    private int[][] itsKillers = new int[0][];
+    /**
+     * the split of each nesting level, reused by every split at that level
+     */
+    private Split[] itsSplits = new Split[0];
+    /**
+     * the younger brother tasks of the split at each nesting level, while
+     * they are being searched
+     */
+    private Brother[][] itsBrothers = new Brother[0][];
+    /**
+     * the main search's brother tasks that are not in use, each with its
+     * own helper search.  They are made when first needed and reused after
+     * that.
+     */
+    private Brother[] itsFreeBrothers = new Brother[0];
+    /**
+     * the number of tasks in itsFreeBrothers
+     */
+    private int itsFreeCount;
+    /**
+     * the credit each square has earned by cutting off, deeper cutoffs
+     * earning more
+     */
+    private final int[] itsHistory = new int[BitBoard.SQUARES];
+    /**
+     * the number of positions visited by the last search
+     */
+    private long itsNodeCount;
+    /**
+     * the number of transposition table probes by the last search
+     */
+    private long itsTableProbes;
+    /**
+     * the number of those probes that found their position
+     */
+    private long itsTableHits;
+    /**
+     * the number of positions that cut off, counted only when STATISTICS
+     */
+    private long itsCutoffs;
+    /**
+     * the number of those that cut off on the first move tried
+     */
+    private long itsFirstMoveCutoffs;
+
+    /**
+     * Constructor.
+     *
+     * @param table the transposition table to share, or null for none.  The
+     *              search does not age its entries; the caller calls its
+     *              newSearch before each new position.
+     * @param pool  the threads to search with, or null to search only in the
+     *              calling thread
+     */
+    public Search(TranspositionTable table, ForkJoinPool pool) {
+        itsTable = table;
+        itsPool = pool;
+        itsRoot = this;
+        itsSplit = null;
+        itsSolver = new EndgameSolver(table);
+        itsSolver.setStopRequest(() -> itsStopped);
+    }
+
+    /**
+     * Constructor for a helper searching the younger brothers of positions
+     * being searched by other Searches.  The helper is kept by the main
+     * search and reused after that.
+     *
+     * @param parent the search whose table and threads are shared
+     */
+    private Search(Search parent) {
+        itsTable = parent.itsTable;
+        itsPool = parent.itsPool;
+        itsRoot = parent.itsRoot;
+        itsSolver = null;
+    }
+
+    /**
+     * Readies a helper to search a younger brother: it takes its parent's
+     * level, killers and history, and starts counting from zero.
+     *
+     * @param parent the search whose position is split
+     * @param split  the split the helper is searching in
+     */
+    private void prepare(Search parent, Split split) {
+        itsEvaluator = parent.itsEvaluator;
+        itsProbCut = parent.itsProbCut;
+        itsLookAheadLevel = parent.itsLookAheadLevel;
+        itsSplit = split;
+        allocate(itsLookAheadLevel);
+        for (int nest = 0; nest <= itsLookAheadLevel; ++nest) {
+            System.arraycopy(parent.itsKillers[nest], 0, itsKillers[nest], 0, 2);
+        }
+        System.arraycopy(parent.itsHistory, 0, itsHistory, 0, BitBoard.SQUARES);
+        itsNodeCount = 0;
+        itsTableProbes = 0;
+        itsTableHits = 0;
+        itsCutoffs = 0;
+        itsFirstMoveCutoffs = 0;
+    }
+
+    /**
+     * Makes sure the per nesting level arrays are big enough for a level.
+     *
+     * @param level how many plies to look ahead
+     */
+    private void allocate(int level) {
+        int oldLength = itsMoves.length;
+        if (oldLength <= level) {
+            itsMoves = Arrays.copyOf(itsMoves, level + 1);
+            itsKeys = Arrays.copyOf(itsKeys, level + 1);
+            itsKillers = Arrays.copyOf(itsKillers, level + 1);
+            itsSplits = Arrays.copyOf(itsSplits, level + 1);
+            itsBrothers = Arrays.copyOf(itsBrothers, level + 1);
+            for (int nest = oldLength; nest <= level; ++nest) {
+                itsMoves[nest] = new int[MAX_MOVES];
+                itsKeys[nest] = new int[MAX_MOVES];
+                itsKillers[nest] = new int[]{-1, -1};
+            }
+        }
+    }
+
+    /**
+     * Sets when the timed search switches to solving the endgame.
+     *
+     * @param empties the most empty squares to solve, 0 to never solve
+     * @param exact   true to solve for the exact score, false for only win,
+     *                draw or loss, which is faster
+     */
+    public void setEndgame(int empties, boolean exact) {
+        itsEndgameEmpties = empties;
+        itsExactEndgame = exact;
+    }
+
+    /**
+     * Sets how the leaves are scored.
+     *
+     * @param evaluator the pattern evaluator, or null to score by who holds
+     *                  the corners and the squares next to them
+     */
+    public void setEvaluator(PatternEvaluator evaluator) {
+        itsEvaluator = evaluator;
+    }
+
+    /**
+     * Sets whether positions are cut when shallow searches predict the
+     * deep one.
+     *
+     * @param probCut the parameters fitted for the evaluator, or null to
+     *                search every position to the full level
+     */
+    public void setProbCut(ProbCut probCut) {
+        itsProbCut = probCut;
+    }
+
+    /**
+     * Sets what each search asks, once it has started, whether it should
+     * stop at once.  A stop that lands between a caller's last look at its
+     * own flags and the start of the search would otherwise be forgotten
+     * when the search resets its flag, and the search would run its whole
+     * budget.
+     *
+     * @param request true if a stop was asked for, or null for none
+     */
+    void setStopRequest(BooleanSupplier request) {
+        itsStopRequest = request;
+    }
+
+    /**
+     * Searches a position to a look ahead level, leaving the chosen move to
+     * be returned by getBestMove.
+     *
+     * @param me       the pieces of the player taking the turn
+     * @param opponent the pieces of his opponent
+     * @param level    how many plies to look ahead
+     * @return the score of the position
+     */
+    public int search(long me, long opponent, int level) {
+        start(me, opponent);
+
+        int score = playLevel(me, opponent, level);
+        if (!itsStopped) {
+            finishLevel(level, score);
+        }
+
+        return itsBestScore;
+    }
+
+    /**
+     * Searches a position one level deeper at a time until the maximum level
+     * is completed or the time budget runs out, leaving the best move of the
+     * deepest completed level to be returned by getBestMove.  A level that
+     * is not likely to finish in the time left is not started, and one that
+     * is still running when the budget runs out is abandoned.
+     * <p>
+     * With no more empty squares than set by setEndgame, only a few levels
+     * are searched to have a move ready, then the rest of the budget goes
+     * to solving the game to the end.  If the solve finishes, its move is
+     * the one returned and its score is the final disc difference (or 1, 0
+     * or -1 for win, draw or loss).
+     *
+     * @param me       the pieces of the player taking the turn
+     * @param opponent the pieces of his opponent
+     * @param maxLevel the deepest level to look ahead
+     * @param millis   the time budget in milliseconds
+     * @return the score of the deepest completed level
+     */
+    public int search(long me, long opponent, int maxLevel, long millis) {
+        long startTime = System.nanoTime();
+        long budget = millis * 1000000L;
+        start(me, opponent);
+
+        int possibleMoves = BitBoard.count(BitBoard.moves(me, opponent));
+        boolean endgame = BitBoard.SQUARES - BitBoard.count(me | opponent)
+                <= itsEndgameEmpties;
+        if (endgame) {
+            maxLevel = Math.min(maxLevel, ENDGAME_READY_LEVEL);
+        }
+        // each level's window is centred on the score of the level before
+        int[] scores = new int[maxLevel + 1];
+        for (int level = 1; level <= maxLevel; ++level) {
+            int score = level >= MIN_ASPIRATION_LEVEL ?
+                    aspire(me, opponent, level, scores[level - 1]) : playLevel(me, opponent, level);
+            if (itsStopped) {
+                break;
+            }
+
+            finishLevel(level, score);
+            scores[level] = score;
+            if (possibleMoves <= 1) {
+                break; // nothing to choose between
+            }
+
+            // the budget only applies once a level is ready to be played
+            itsDeadline = startTime + budget;
+
+            // each level takes several times as long as the one before, so
+            // don't start one that would surely be abandoned
+            if ((System.nanoTime() - startTime) * 2 > budget) {
+                break;
+            }
+        }
+
+        if (endgame && possibleMoves > 1 && !itsStopped) {
+            solve(me, opponent, startTime + budget);
+        }
+
+        return itsBestScore;
+    }
+
+    /**
+     * Solves the endgame, making its move the one that is ready if it
+     * finishes before the deadline.
+     *
+     * @param me       the pieces of the player taking the turn
+     * @param opponent the pieces of his opponent
+     * @param deadline the System.nanoTime to give up at
+     */
+    private void solve(long me, long opponent, long deadline) {
+        int score = itsSolver.solve(me, opponent, itsExactEndgame, deadline);
+        itsNodeCount += itsSolver.getNodeCount();
+        if (!itsSolver.isStopped() && !itsStopped) {
+            itsBestMove = itsSolver.getBestMove();
+            itsBestScore = score;
+            itsSolved = true;
+        }
+    }
+
+    /**
+     * Stops the search as soon as possible.  The best move of the last
+     * completed level stays ready.
+     */
+    public void stop() {
+        itsStopped = true;
+        if (itsSolver != null) {
+            itsSolver.stop();
+        }
+    }
+
+    /**
+     * Resets the results and counters before searching a new position, and
+     * readies its first legal move in case no level is completed.
+     *
+     * @param me       the pieces of the player taking the turn
+     * @param opponent the pieces of his opponent
+     */
+    private void start(long me, long opponent) {
+        long moves = BitBoard.moves(me, opponent);
+        itsBestMove = moves != 0 ? Long.numberOfTrailingZeros(moves) : -1;
+        itsBestScore = 0;
+        itsCompletedLevel = 0;
+        itsSolved = false;
+        itsDeadline = Long.MAX_VALUE;
+        itsStopped = false;
+        // asked after the reset, so a stop either comes after it or is seen
+        if (itsStopRequest != null && itsStopRequest.getAsBoolean()) {
+            itsStopped = true;
+        }
+        itsNodeCount = 0;
+        itsTableProbes = 0;
+        itsTableHits = 0;
+        itsCutoffs = 0;
+        itsFirstMoveCutoffs = 0;
+
+        // the last move's killers are for other positions, but its history
+        // still says something about these squares
+        for (int[] killers : itsKillers) {
+            Arrays.fill(killers, -1);
+        }
+        ageHistory();
+    }
+
+    /**
+     * Halves every square's history credit, so older cutoffs count less.
+     */
+    private void ageHistory() {
+        for (int sq = 0; sq < BitBoard.SQUARES; ++sq) {
+            itsHistory[sq] >>= 1;
+        }
+    }
+
+    /**
+     * Searches a position to one look ahead level, in the pool if there is
+     * one.
+     *
+     * @param me       the pieces of the player taking the turn
+     * @param opponent the pieces of his opponent
+     * @param level    how many plies to look ahead
+     * @return the score of the position, meaningless if stopped
+     */
+    private int playLevel(long me, long opponent, int level) {
+        return playLevel(me, opponent, level, -BIG_SCORE, BIG_SCORE);
+    }
+
+    /**
+     * Searches a position to one look ahead level within a window, in the
+     * pool if there is one.
+     *
+     * @param me            the pieces of the player taking the turn
+     * @param opponent      the pieces of his opponent
+     * @param level         how many plies to look ahead
+     * @param previousScore the score the position must beat
+     * @param goodScore     the score at which to stop looking
+     * @return the score of the position, only a bound if it is outside the
+     * window, and meaningless if stopped
+     */
+    private int playLevel(long me, long opponent, int level, int previousScore, int goodScore) {
+        itsLookAheadLevel = level;
+        allocate(level);
+        if (itsPool == null) {
+            return play(0, me, opponent, previousScore, goodScore);
+        }
+
+        return itsPool.invoke(ForkJoinTask.adapt(
+                () -> play(0, me, opponent, previousScore, goodScore)));
+    }
+
+    /**
+     * Searches a position to one look ahead level with an aspiration
+     * window: the score is expected to be near the last level's, so only
+     * scores near it are looked for at first.  If the score falls outside,
+     * the window is widened on that side and the level searched again.
+     *
+     * @param me       the pieces of the player taking the turn
+     * @param opponent the pieces of his opponent
+     * @param level    how many plies to look ahead
+     * @param guess    the score of the last level
+     * @return the score of the position, meaningless if stopped
+     */
+    private int aspire(long me, long opponent, int level, int guess) {
+        int width = ASPIRATION_WIDTH;
+        int low = Math.max(-BIG_SCORE, guess - width);
+        int high = Math.min(BIG_SCORE, guess + width);
+        while (true) {
+            int score = playLevel(me, opponent, level, low, high);
+            if (itsStopped) {
+                return score;
+            }
+
+            // a score at the edge of the window is only a bound, unless
+            // the window is open on that side
+            if (score <= low && low > -BIG_SCORE) {
+                width *= 4;
+                low = Math.max(-BIG_SCORE, guess - width);
+            } else if (score >= high && high < BIG_SCORE) {
+                width *= 4;
+                high = Math.min(BIG_SCORE, guess + width);
+            } else {
+                return score;
+            }
+        }
+    }
+
+    /**
+     * Makes the result of a completed level the one that is ready.
+     *
+     * @param level the level completed
+     * @param score the score of the position
+     */
+    private void finishLevel(int level, int score) {
+        itsBestMove = itsRootMove;
+        itsBestScore = score;
+        itsCompletedLevel = level;
+    }
+
+    /**
+     * Returns the best move of the last completed level.  It may be called
+     * from another thread while the search is running.
+     *
+     * @return the bit number of the move, or -1 to pass
+     */
+    public int getBestMove() {
+        return itsBestMove;
+    }
+
+    /**
+     * Returns the score of the last completed level.
+     *
+     * @return the score from the point of view of the player to move
+     */
+    public int getBestScore() {
+        return itsBestScore;
+    }
+
+    /**
+     * Determines if the last search solved the endgame, so its score is a
+     * final disc difference rather than an evaluation.
+     *
+     * @return true, if the endgame was solved
+     */
+    public boolean isSolved() {
+        return itsSolved;
+    }
+
+    /**
+     * Returns the deepest level completed by the last search.
+     *
+     * @return the level, or 0 if none was completed
+     */
+    public int getCompletedLevel() {
+        return itsCompletedLevel;
+    }
+
+    /**
+     * Returns the number of positions visited by the last search, including
+     * those visited by its helpers.
+     *
+     * @return the node count
+     */
+    public long getNodeCount() {
+        return itsNodeCount;
+    }
+
+    /**
+     * Returns the number of transposition table probes by the last search.
+     *
+     * @return the probe count
+     */
+    public long getTableProbes() {
+        return itsTableProbes;
+    }
+
+    /**
+     * Returns the number of probes by the last search that found their
+     * position.
+     *
+     * @return the hit count
+     */
+    public long getTableHits() {
+        return itsTableHits;
+    }
+
+    /**
+     * Returns the number of positions that cut off in the last search, or
+     * 0 unless STATISTICS.
+     *
+     * @return the cutoff count
+     */
+    public long getCutoffs() {
+        return itsCutoffs;
+    }
+
+    /**
+     * Returns the number of positions that cut off on the first move tried
+     * in the last search, or 0 unless STATISTICS.  Divided by getCutoffs,
+     * it tells how good the move ordering is.
+     *
+     * @return the first move cutoff count
+     */
+    public long getFirstMoveCutoffs() {
+        return itsFirstMoveCutoffs;
+    }
+
+    /**
+     * Sets itsRootMove and returns the best possible score for the board.
+     * Results are remembered in the transposition table, which supplies
+     * the first move to try and cuts off positions already searched to
+     * the same depth.
+     *
+     * @param nest          the current level of recursion nesting
+     * @param me            the pieces of the player taking the turn
+     * @param opponent      the pieces of his opponent
+     * @param previousScore the previous best score
+     * @param goodScore     the score to beat
+     * @return the score from the point of view of me
+     */
+    int play(int nest, long me, long opponent, int previousScore, int goodScore) {
+        if ((++itsNodeCount & CLOCK_CHECK_MASK) == 0
+                && System.nanoTime() - itsRoot.itsDeadline > 0) {
+            itsRoot.itsStopped = true;
+        }
+        if (isAbandoned()) {
+            return 0; // nobody will look at the score
+        }
+        if (nest > itsLookAheadLevel) {
+            return itsEvaluator != null ? itsEvaluator.evaluate(me, opponent)
+                    : evaluate(me, opponent);
+        }
+
+        // the leaf scores and the mobility bonus depend on how far we are
+        // from the deepest level, so a remembered score is only reused
+        // when it was searched to exactly the same depth.  Positions just
+        // above the leaves are cheaper to search again than to look up.
+        int depth = itsLookAheadLevel - nest;
+        long hash = 0;
+        int symmetry = 0;
+        int hashMove = -1;
+        if (itsTable != null && depth >= MIN_TABLE_DEPTH) {
+            symmetry = tableSymmetry(me, opponent);
+            hash = Symmetry.hash(me, opponent, symmetry);
+            long entry = itsTable.probe(hash);
+            ++itsTableProbes;
+            if (entry != TranspositionTable.MISS) {
+                ++itsTableHits;
+                hashMove = Symmetry.square(TranspositionTable.move(entry), Symmetry.inverse(symmetry));
+                if (nest > 0 && TranspositionTable.depth(entry) == depth) {
+                    int score = TranspositionTable.score(entry);
+                    int bound = TranspositionTable.bound(entry);
+                    if (bound == TranspositionTable.EXACT
+                            || (bound == TranspositionTable.LOWER && score >= goodScore)
+                            || (bound == TranspositionTable.UPPER && score <= previousScore)) {
+                        return score;
+                    }
+                }
+            }
+        }
+
+        if (itsEvaluator != null && nest > 0 && depth >= MIN_TABLE_DEPTH) {
+            int score = stabilityCutoff(me, opponent, previousScore, goodScore);
+            if (score != NO_CUT) {
+                return score;
+            }
+        }
+        if (itsProbCut != null && nest > 0 && itsProbCut.getChecks(depth) > 0) {
+            int score = probeCut(nest, depth, me, opponent, previousScore, goodScore);
+            if (isAbandoned()) {
+                return 0;
+            }
+            if (score != NO_CUT) {
+                return score;
+            }
+        }
+
+        int bestScore = (nest < itsLookAheadLevel - 1) ?
+                previousScore : -BIG_SCORE;
+        int firstScore = bestScore;
+        int tempMove = -1;
+
+        // Since we not at the lowest level of recursion, our best move is
+        // the square that yields our opponent's lowest scoring best move on
+        // his successive turn.  The boards are passed by value, so there
+        // is no original board to mess up.
+        long moves = BitBoard.moves(me, opponent);
+        int possibleMoves = order(nest, depth, me, opponent, moves, hashMove);
+        int[] ordered = itsMoves[nest];
+
+        Split split = null;
+        for (int i = 0; i < possibleMoves; ++i) {
+            int sq = ordered[i];
+
+            int score;
+            if (split != null) {
+                int brother = i - split.itsFirst;
+                if (!split.itsSearched[brother]) {
+                    continue; // abandoned after another brother cut off
+                }
+                score = split.itsScores[brother];
+            } else {
+                long flipped = BitBoard.flips(me, opponent, sq);
+                long nextMe = opponent & ~flipped;
+                long nextOpponent = me | flipped | (1L << sq);
+                // our score is the opposite of the next player's best.  A
+                // later move is expected to be worse, which a null window
+                // just above the best score proves cheaply; only if it
+                // turns out better is it searched again with the full one.
+                if (i == 0 || nest >= itsLookAheadLevel - 1 || goodScore - bestScore <= 1) {
+                    score = -play(nest + 1, nextMe, nextOpponent, -goodScore, -bestScore);
+                } else {
+                    score = -play(nest + 1, nextMe, nextOpponent, -bestScore - 1, -bestScore);
+                    if (score > bestScore && score < goodScore && !isAbandoned()) {
+                        score = -play(nest + 1, nextMe, nextOpponent, -goodScore, -(score - 1));
+                    }
+                }
+                if (isAbandoned()) {
+                    return 0;
+                }
+            }
+            if (score > bestScore) {
+                tempMove = sq;
+                bestScore = score;
+                if (score >= goodScore || score >= PERFECT_SCORE) {
+                    if (STATISTICS) {
+                        ++itsCutoffs;
+                        if (i == 0) {
+                            ++itsFirstMoveCutoffs;
+                        }
+                    }
+                    rememberCutoff(nest, depth, sq);
+                    remember(hash, symmetry, depth, TranspositionTable.LOWER, score, sq);
+                    if (nest == 0) {
+                        itsRootMove = sq;
+                    }
+
+                    return score;
+                }
+            }
+
+            if (split == null && itsPool != null && depth >= MIN_SPLIT_DEPTH
+                    && possibleMoves - i > 2) {
+                split = split(nest, me, opponent, i + 1, possibleMoves,
+                        bestScore, goodScore);
+                if (isAbandoned()) {
+                    return 0;
+                }
+            }
+        }
+
+        if (possibleMoves == 0) {
+            // since we can't move, the score is just based on his best
+            bestScore = -play(nest + 1, opponent, me, -goodScore,
+                    -bestScore);
+            if (isAbandoned()) {
+                return 0;
+            }
+        } else if (nest >= itsLookAheadLevel - 1 && itsEvaluator == null) {
+            // bump up our bestScore according to the number of possible
+            // moves we could make (the pattern evaluator counts mobility
+            // itself).
+            bestScore += (possibleMoves << 3);
+        }
+
+        remember(hash, symmetry, depth, bestScore <= firstScore ? TranspositionTable.UPPER :
+                bestScore >= goodScore ? TranspositionTable.LOWER :
+                        TranspositionTable.EXACT, bestScore, tempMove);
+        if (nest == 0) {
+            itsRootMove = tempMove;
+        }
+
+        return bestScore;
+    }
+
+    /**
+     * Decides a position whose window is beyond what its stable pieces
+     * allow: the opponent's stable pieces keep my final disc difference at
+     * or below a bound, and mine keep it at or above one.  Scores are in
+     * the pattern evaluator's units.  The stable pieces are only worked out
+     * when there would be a cut if every piece were stable.
+     *
+     * @param me            the pieces of the player taking the turn
+     * @param opponent      the pieces of his opponent
+     * @param previousScore the previous best score
+     * @param goodScore     the score to beat
+     * @return previousScore if I cannot beat it, goodScore if I cannot help
+     * reaching it, or NO_CUT to search the position
+     */
+    private static int stabilityCutoff(long me, long opponent, int previousScore, int goodScore) {
+        int disc = PatternEvaluator.DISC;
+        if ((BitBoard.SQUARES - 2 * BitBoard.count(opponent)) * disc <= previousScore
+                && (BitBoard.SQUARES - 2 * BitBoard.count(Stability.stable(opponent, me)))
+                * disc <= previousScore) {
+            return previousScore;
+        }
+        if ((2 * BitBoard.count(me) - BitBoard.SQUARES) * disc >= goodScore
+                && (2 * BitBoard.count(Stability.stable(me, opponent)) - BitBoard.SQUARES)
+                * disc >= goodScore) {
+            return goodScore;
+        }
+
+        return NO_CUT;
+    }
+
+    /**
+     * Tries to predict the result of searching a position from shallower
+     * searches (Multi-ProbCut).  Each check searches the position to a
+     * shallower depth with a null window at the score that the fitted line
+     * says the deep score is very likely above the window from, then at
+     * the one it is very likely below the window from.  The first that
+     * holds decides the position.
+     * <p>
+     * The shallow searches use the same nesting levels as the deep one
+     * below this position, only with a nearer look ahead level.
+     *
+     * @param nest          the current level of recursion nesting
+     * @param depth         the number of plies the deep search would look
+     *                      ahead
+     * @param me            the pieces of the player taking the turn
+     * @param opponent      the pieces of his opponent
+     * @param previousScore the previous best score
+     * @param goodScore     the score to beat
+     * @return goodScore or previousScore if the position is cut off above
+     * or below the window, or NO_CUT to search it
+     */
+    private int probeCut(int nest, int depth, long me, long opponent,
+                         int previousScore, int goodScore) {
+        int phase = PatternEvaluator.phase(me, opponent);
+        int level = itsLookAheadLevel;
+        int cut = NO_CUT;
+        for (int check = 0; check < itsProbCut.getChecks(depth) && cut == NO_CUT; ++check) {
+            itsLookAheadLevel = nest + itsProbCut.getShallow(depth, check);
+            int high = itsProbCut.getHighCut(depth, check, phase, goodScore);
+            int low = itsProbCut.getLowCut(depth, check, phase, previousScore);
+            if (high < PERFECT_SCORE && play(nest, me, opponent, high - 1, high) >= high) {
+                cut = goodScore;
+            } else if (low > -PERFECT_SCORE && !isAbandoned()
+                    && play(nest, me, opponent, low, low + 1) <= low) {
+                cut = previousScore;
+            }
+            if (isAbandoned()) {
+                break;
+            }
+        }
+        itsLookAheadLevel = level;
+
+        return cut;
+    }
+
+    /**
+     * Fills in itsMoves[nest] with the legal moves in the order they should
+     * be tried, the ones most likely to cut off first.  The remembered best
+     * move comes first, then the killer moves of the nesting level.  The
+     * rest are ranked by history and square priority far from the leaves,
+     * by how few replies they leave the opponent near the leaves, and by
+     * square priority alone just above the leaves where sorting costs more
+     * than it saves.
+     * <p>
+     * The first level is only ranked by the remembered move and square
+     * priority, which do not depend on which thread searched what, so that
+     * parallel searches try the first level in the same order.
+     *
+     * @param nest     the current level of recursion nesting
+     * @param depth    the number of plies below the position
+     * @param me       the pieces of the player taking the turn
+     * @param opponent the pieces of his opponent
+     * @param moves    the mask of legal moves
+     * @param hashMove the remembered best move, or -1
+     * @return the number of moves
+     */
+    private int order(int nest, int depth, long me, long opponent,
+                      long moves, int hashMove) {
+        int[] ordered = itsMoves[nest];
+        int[] keys = itsKeys[nest];
+        int count = 0;
+        for (; moves != 0; moves &= moves - 1) {
+            int sq = Long.numberOfTrailingZeros(moves);
+
+            int key;
+            if (sq == hashMove) {
+                key = HASH_MOVE_KEY;
+            } else if (nest == 0 || depth < MIN_HISTORY_DEPTH) {
+                key = SQUARE_PRIORITY[sq];
+            } else if (sq == itsKillers[nest][0]) {
+                key = KILLER_KEY;
+            } else if (sq == itsKillers[nest][1]) {
+                key = KILLER_KEY - 1;
+            } else if (depth <= FASTEST_FIRST_DEPTH) {
+                long flipped = BitBoard.flips(me, opponent, sq);
+                int replies = BitBoard.count(BitBoard.moves(opponent & ~flipped,
+                        me | flipped | (1L << sq)));
+                key = (SQUARE_PRIORITY[sq] - replies) * PRIORITY_WEIGHT;
+            } else {
+                key = itsHistory[sq] + SQUARE_PRIORITY[sq] * PRIORITY_WEIGHT;
+            }
+
+            // insertion sort, highest key first, ties keep square order
+            int i = count++;
+            while (i > 0 && keys[i - 1] < key) {
+                ordered[i] = ordered[i - 1];
+                keys[i] = keys[i - 1];
+                --i;
+            }
+            ordered[i] = sq;
+            keys[i] = key;
+        }
+
+        return count;
+    }
+
+    /**
+     * Credits a move that cut off with a killer slot at its nesting level
+     * and with the history table, so it is tried early elsewhere.
+     *
+     * @param nest  the current level of recursion nesting
+     * @param depth the number of plies below the position
+     * @param sq    the bit number of the move
+     */
+    private void rememberCutoff(int nest, int depth, int sq) {
+        int[] killers = itsKillers[nest];
+        if (killers[0] != sq) {
+            killers[1] = killers[0];
+            killers[0] = sq;
+        }
+        itsHistory[sq] += depth * depth;
+        if (itsHistory[sq] > HISTORY_LIMIT) {
+            ageHistory();
+        }
+    }
+
+    /**
+     * Searches the younger brothers of a position in parallel and waits for
+     * them to finish.  The split of the nesting level is reused, and the
+     * brother tasks come from the main search's free tasks, so once enough
+     * have been made nothing is allocated.
+     *
+     * @param nest      the recursion nesting of the position
+     * @param me        the pieces of the player taking the turn
+     * @param opponent  the pieces of his opponent
+     * @param first     the index in itsMoves[nest] of the first brother
+     * @param end       the index just past the last brother
+     * @param bestScore the best score so far
+     * @param goodScore the score to beat
+     * @return the split holding the brothers' scores from the point of view
+     * of me, in the order they would be searched
+     */
+    private Split split(int nest, long me, long opponent, int first, int end,
+                        int bestScore, int goodScore) {
+        int[] ordered = itsMoves[nest];
+        int count = end - first;
+        if (itsSplits[nest] == null) {
+            itsSplits[nest] = new Split();
+            itsBrothers[nest] = new Brother[MAX_MOVES];
+        }
+        Split split = itsSplits[nest];
+        split.reset(itsSplit, first, count, bestScore, goodScore);
+
+        Brother[] brothers = itsBrothers[nest];
+        itsRoot.acquire(brothers, count);
+        for (int i = 0; i < count; ++i) {
+            int sq = ordered[first + i];
+            long flipped = BitBoard.flips(me, opponent, sq);
+            brothers[i].itsSearch.prepare(this, split);
+            brothers[i].prepare(i, nest + 1, opponent & ~flipped,
+                    me | flipped | (1L << sq));
+        }
+
+        // fork the younger ones so the eldest is on top when we come to
+        // join them, then search the first one ourselves
+        for (int i = count - 1; i > 0; --i) {
+            brothers[i].fork();
+        }
+        brothers[0].invoke();
+        for (int i = 0; i < count; ++i) {
+            if (i > 0) {
+                brothers[i].join();
+            }
+            Search helper = brothers[i].itsSearch;
+            itsNodeCount += helper.itsNodeCount;
+            itsTableProbes += helper.itsTableProbes;
+            itsTableHits += helper.itsTableHits;
+            itsCutoffs += helper.itsCutoffs;
+            itsFirstMoveCutoffs += helper.itsFirstMoveCutoffs;
+        }
+        itsRoot.release(brothers, count);
+
+        return split;
+    }
+
+    /**
+     * Takes brother tasks from the free ones of this main search, making
+     * new ones when there are not enough.
+     *
+     * @param brothers where to put the tasks
+     * @param count    the number of tasks wanted
+     */
+    private synchronized void acquire(Brother[] brothers, int count) {
+        for (int i = 0; i < count; ++i) {
+            if (itsFreeCount > 0) {
+                brothers[i] = itsFreeBrothers[--itsFreeCount];
+                itsFreeBrothers[itsFreeCount] = null;
+                brothers[i].reinitialize();
+            } else {
+                brothers[i] = new Brother(new Search(this));
+            }
+        }
+    }
+
+    /**
+     * Gives finished brother tasks back to the free ones of this main
+     * search.
+     *
+     * @param brothers the tasks
+     * @param count    the number of tasks
+     */
+    private synchronized void release(Brother[] brothers, int count) {
+        if (itsFreeCount + count > itsFreeBrothers.length) {
+            itsFreeBrothers = Arrays.copyOf(itsFreeBrothers,
+                    Math.max(2 * itsFreeBrothers.length, itsFreeCount + count));
+        }
+        for (int i = 0; i < count; ++i) {
+            itsFreeBrothers[itsFreeCount++] = brothers[i];
+            brothers[i] = null;
+        }
+    }
+
+    /**
+     * Determines if the search has been stopped, or if this search is a
+     * younger brother, or the descendant of one, whose split has already cut
+     * off.
+     *
+     * @return true, if the search should stop without remembering anything
+     */
+    private boolean isAbandoned() {
+        if (itsRoot.itsStopped) {
+            return true;
+        }
+        for (Split split = itsSplit; split != null; split = split.itsParent) {
+            if (split.itsCutOff) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Stores a search result in the transposition table, if there is one.
+     *
+     * @param hash     the Zobrist hash of the position as it is kept
+     * @param symmetry the symmetry the position is kept under
+     * @param depth    the number of plies searched below the position
+     * @param bound    the kind of bound the score is
+     * @param score    the score found
+     * @param move     the best move found, or -1 if none
+     */
+    private void remember(long hash, int symmetry, int depth, int bound, int score, int move) {
+        if (itsTable != null && depth >= MIN_TABLE_DEPTH) {
+            itsTable.store(hash, depth, bound, score, Symmetry.square(move, symmetry));
+        }
+    }
+
+    /**
+     * Returns the symmetry a position is kept under in the transposition
+     * table.  Early in the game a position is often reached in one of its
+     * other symmetric forms, so it is kept in its canonical form, where all
+     * of them share an entry.  Later the forms hardly ever meet and are
+     * kept as they are, which saves finding the canonical one.
+     *
+     * @param me       the pieces of the player to move
+     * @param opponent the pieces of his opponent
+     * @return the symmetry to turn the position and its move by
+     */
+    static int tableSymmetry(long me, long opponent) {
+        return BitBoard.count(me | opponent) <= SYMMETRY_PIECES
+                ? Symmetry.canonical(me, opponent) : 0;
+    }
+
+    /**
+     * Scores a board at the deepest level of recursion by who has the
+     * corners and who is likely to give up the empty corners by occupying
+     * the squares diagonally adjacent to the corners.
+     *
+     * @param me       the pieces of the player taking the turn
+     * @param opponent the pieces of his opponent
+     * @return the score from the point of view of me
+     */
+    static int evaluate(long me, long opponent) {
+        int score = CORNER_SCORE * (BitBoard.count(me & BitBoard.CORNERS)
+                - BitBoard.count(opponent & BitBoard.CORNERS));
+
+        // move each empty corner diagonally inward onto its inside square
+        long emptyCorners = BitBoard.CORNERS & ~(me | opponent);
+        long inside = ((emptyCorners & 0x0000000000000001L) << 9)
+                | ((emptyCorners & 0x0000000000000080L) << 7)
+                | ((emptyCorners & 0x0100000000000000L) >>> 7)
+                | ((emptyCorners & 0x8000000000000000L) >>> 9);
+        score -= INSIDE_SCORE * (BitBoard.count(me & inside)
+                - BitBoard.count(opponent & inside));
+
+        return score;
+    }
+
+    /**
+     * This class holds the younger brothers of one position being searched
+     * in parallel and the best score found by them so far.  It is reset and
+     * reused for each split at its owner's nesting level.
+     */
+    private static final class Split {
+        /**
+         * the split the owner of this one is a brother in, or null
+         */
+        private Split itsParent;
+        /**
+         * the index of the first brother in the owner's ordered moves
+         */
+        private int itsFirst;
+        /**
+         * the score to beat
+         */
+        private int itsGoodScore;
+        /**
+         * each brother's score from the point of view of the owner
+         */
+        private final int[] itsScores = new int[MAX_MOVES];
+        /**
+         * whether each brother finished without being abandoned
+         */
+        private final boolean[] itsSearched = new boolean[MAX_MOVES];
+        /**
+         * the best score of the elder brothers and the finished ones
+         */
+        private int itsBestScore;
+        /**
+         * the index of the brother with the best score, -1 for an elder one
+         */
+        private int itsBestIndex = -1;
+        /**
+         * whether a brother has cut off, so the rest can be abandoned
+         */
+        private volatile boolean itsCutOff;
+
+        /**
+         * Readies the split for a new set of brothers.  The brothers are
+         * forked afterwards, which makes these values visible to them.
+         *
+         * @param parent    the split the owner is a brother in, or null
+         * @param first     the index of the first brother in the owner's
+         *                  ordered moves
+         * @param count     the number of younger brothers
+         * @param bestScore the best score of the brothers already searched
+         * @param goodScore the score to beat
+         */
+        void reset(Split parent, int first, int count, int bestScore, int goodScore) {
+            itsParent = parent;
+            itsFirst = first;
+            Arrays.fill(itsSearched, 0, count, false);
+            itsBestScore = bestScore;
+            itsBestIndex = -1;
+            itsGoodScore = goodScore;
+            itsCutOff = false;
+        }
+
+        /**
+         * Returns the score a brother must beat.  A brother searched after
+         * one that comes later in order must beat one less, so that a tie
+         * is found and won by the earlier brother as it would be by a single
+         * thread.
+         *
+         * @param index the brother's position in the search order
+         * @return the previous best score for the brother
+         */
+        synchronized int getPreviousScore(int index) {
+            return itsBestIndex > index ? itsBestScore - 1 : itsBestScore;
+        }
+
+        /**
+         * Records the score of a finished brother.
+         *
+         * @param index         the brother's position in the search order
+         * @param previousScore the previous best score he was searched with
+         * @param score         his score from the point of view of the owner
+         */
+        synchronized void finished(int index, int previousScore, int score) {
+            itsScores[index] = score;
+            itsSearched[index] = true;
+            if (score > previousScore && (score > itsBestScore
+                    || (score == itsBestScore && index < itsBestIndex))) {
+                itsBestScore = score;
+                itsBestIndex = index;
+            }
+            if (score >= itsGoodScore) {
+                itsCutOff = true;
+            }
+        }
+    }
+
+    /**
+     * This class searches one younger brother as a fork/join task with its
+     * own Search, so its node counts are not shared with other threads.  It
+     * is reinitialized and reused for each split at its owner's nesting
+     * level.
+     */
+    private static final class Brother extends RecursiveAction {
+        /**
+         * the helper doing the search
+         */
+        private final Search itsSearch;
+        /**
+         * the brother's position in the search order
+         */
+        private int itsIndex;
+        /**
+         * the recursion nesting of the brother
+         */
+        private int itsNest;
+        /**
+         * the pieces of the player to move in the brother
+         */
+        private long itsMe;
+        /**
+         * the pieces of his opponent
+         */
+        private long itsOpponent;
+
+        /**
+         * Constructor.
+         *
+         * @param search the helper doing the search
+         */
+        Brother(Search search) {
+            itsSearch = search;
+        }
+
+        /**
+         * Sets the brother to search next.
+         *
+         * @param index    the brother's position in the search order
+         * @param nest     the recursion nesting of the brother
+         * @param me       the pieces of the player to move
+         * @param opponent the pieces of his opponent
+         */
+        void prepare(int index, int nest, long me, long opponent) {
+            itsIndex = index;
+            itsNest = nest;
+            itsMe = me;
+            itsOpponent = opponent;
+        }
+
+        /**
+         * Searches the brother with the best score so far, unless a brother
+         * has already cut off, and records his score with the split.
+         */
+        protected void compute() {
+            Split split = itsSearch.itsSplit;
+            if (itsSearch.isAbandoned()) {
+                return;
+            }
+
+            // like any later move, a brother is first searched with a null
+            // window, and again with the full one only if he is better
+            int previousScore = split.getPreviousScore(itsIndex);
+            int goodScore = split.itsGoodScore;
+            int score;
+            if (goodScore - previousScore > 1) {
+                score = -itsSearch.play(itsNest, itsMe, itsOpponent,
+                        -previousScore - 1, -previousScore);
+                if (score > previousScore && score < goodScore && !itsSearch.isAbandoned()) {
+                    score = -itsSearch.play(itsNest, itsMe, itsOpponent,
+                            -goodScore, -previousScore);
+                }
+            } else {
+                score = -itsSearch.play(itsNest, itsMe, itsOpponent,
+                        -goodScore, -previousScore);
+            }
+            if (!itsSearch.isAbandoned()) {
+                split.finished(itsIndex, previousScore, score);
+            }
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package dev.jcps.engine;
+
+/*
+*****************************************************************************
+
+ Desdemona: The Java Othello game.
+ Copyright (C) 2001 Kenneth D. Huffman.
+
+ This program is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 2 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License (gnu.org/copyleft/gpl.html) for more details.
+
+ The author can be reached at www.huffmancoding.com.
+ *****************************************************************************
+ */
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * This class is the flight recorder event of one engine move: what was
+ * played, how deep and how hard the search looked for it.  Record it with
+ * <pre>
+ *     java -XX:StartFlightRecording:filename=desdemona.jfr ...
+ * </pre>
+ * and look for "Engine Search" under Desdemona.  The cutoff counts are only
+ * filled in when the desdemona.statistics system property is true.  When
+ * no recording is running the event is never committed and costs a few
+ * field stores per move.
+ *
+ * @author Ken Huffman
+ */
+@Name("dev.jcps.desdemona.Search")
+@Label("Engine Search")
+@Category("Desdemona")
+@Description("A move searched by the engine")
+final class SearchEvent extends Event {
+    /**
+     * the move played
+     */
+    @Name("move")
+    @Label("Move")
+    String itsMove;
+    /**
+     * the score of the move
+     */
+    @Name("score")
+    @Label("Score")
+    int itsScore;
+    /**
+     * the deepest level completed
+     */
+    @Name("level")
+    @Label("Level")
+    int itsLevel;
+    /**
+     * true if the endgame was solved
+     */
+    @Name("solved")
+    @Label("Solved")
+    boolean itsSolved;
+    /**
+     * the positions visited
+     */
+    @Name("nodes")
+    @Label("Nodes")
+    long itsNodes;
+    /**
+     * the positions visited per second
+     */
+    @Name("nodesPerSecond")
+    @Label("Nodes per Second")
+    long itsNodesPerSecond;
+    /**
+     * the effective branching factor: the level'th root of the nodes
+     */
+    @Name("branchingFactor")
+    @Label("Branching Factor")
+    double itsBranchingFactor;
+    /**
+     * the transposition table probes
+     */
+    @Name("tableProbes")
+    @Label("Table Probes")
+    long itsTableProbes;
+    /**
+     * the probes that found their position
+     */
+    @Name("tableHits")
+    @Label("Table Hits")
+    long itsTableHits;
+    /**
+     * the positions that cut off
+     */
+    @Name("cutoffs")
+    @Label("Cutoffs")
+    long itsCutoffs;
+    /**
+     * the positions that cut off on their first move
+     */
+    @Name("firstMoveCutoffs")
+    @Label("First Move Cutoffs")
+    long itsFirstMoveCutoffs;
+    /**
+     * the time spent searching
+     */
+    @Name("millis")
+    @Label("Search Time")
+    @Timespan(Timespan.MILLISECONDS)
+    long itsMillis;
+}
@@ -0,0 +1,198 @@
+package dev.jcps.engine;
+
+/*
+*****************************************************************************
+
+ Desdemona: The Java Othello game.
+ Copyright (C) 2001 Kenneth D. Huffman.
+
+ This program is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 2 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License (gnu.org/copyleft/gpl.html) for more details.
+
+ The author can be reached at www.huffmancoding.com.
+ *****************************************************************************
+ */
+
+/**
+ * This class holds what an Engine found for one position: the move to
+ * play, its score, the line of play expected after it, and how much work
+ * it took.  It never changes once made.
+ *
+ * @author Ken Huffman
+ */
+public final class SearchResult {
+    /**
+     * bit number of the best move, or -1 to pass
+     */
+    private final int itsMove;
+    /**
+     * the score of the position for the player to move
+     */
+    private final int itsScore;
+    /**
+     * the deepest level completed
+     */
+    private final int itsLevel;
+    /**
+     * whether the endgame was solved
+     */
+    private final boolean itsSolved;
+    /**
+     * whether the move came from the opening book
+     */
+    private final boolean itsFromBook;
+    /**
+     * the number of positions visited
+     */
+    private final long itsNodes;
+    /**
+     * how long the search took
+     */
+    private final long itsMillis;
+    /**
+     * the expected line of play, starting with the best move
+     */
+    private final int[] itsPrincipalVariation;
+
+    /**
+     * Constructor.
+     *
+     * @param move                bit number of the best move, or -1 to pass
+     * @param score               the score for the player to move
+     * @param level               the deepest level completed
+     * @param solved              whether the endgame was solved
+     * @param fromBook            whether the move came from the opening book
+     * @param nodes               the number of positions visited
+     * @param millis              how long the search took
+     * @param principalVariation  the expected line of play, -1 for a pass
+     */
+    public SearchResult(int move, int score, int level, boolean solved, boolean fromBook,
+                        long nodes, long millis, int[] principalVariation) {
+        itsMove = move;
+        itsScore = score;
+        itsLevel = level;
+        itsSolved = solved;
+        itsFromBook = fromBook;
+        itsNodes = nodes;
+        itsMillis = millis;
+        itsPrincipalVariation = principalVariation.clone();
+    }
+
+    /**
+     * Returns the best move.
+     *
+     * @return the bit number of the move, or -1 to pass
+     */
+    public int getMove() {
+        return itsMove;
+    }
+
+    /**
+     * Returns the score of the position.  It is an evaluation unless the
+     * endgame was solved, when it is the final disc difference (or 1, 0 or
+     * -1 for a win, draw or loss).
+     *
+     * @return the score from the point of view of the player to move
+     */
+    public int getScore() {
+        return itsScore;
+    }
+
+    /**
+     * Returns the deepest look ahead level completed.
+     *
+     * @return the level, or 0 if none was completed
+     */
+    public int getLevel() {
+        return itsLevel;
+    }
+
+    /**
+     * Determines if the endgame was solved.
+     *
+     * @return true, if the score is a final result
+     */
+    public boolean isSolved() {
+        return itsSolved;
+    }
+
+    /**
+     * Determines if the move came from the opening book, in which case the
+     * score is the book's value and nothing was searched.
+     *
+     * @return true, if it is a book move
+     */
+    public boolean isFromBook() {
+        return itsFromBook;
+    }
+
+    /**
+     * Returns the number of positions visited.
+     *
+     * @return the node count
+     */
+    public long getNodes() {
+        return itsNodes;
+    }
+
+    /**
+     * Returns how long the search took.
+     *
+     * @return the time in milliseconds
+     */
+    public long getMillis() {
+        return itsMillis;
+    }
+
+    /**
+     * Returns the line of play the search expects, starting with the best
+     * move.  Only its first move is certain to be the one searched; the
+     * rest is recovered from the transposition table.
+     *
+     * @return the bit numbers of the moves, -1 for a pass
+     */
+    public int[] getPrincipalVariation() {
+        return itsPrincipalVariation.clone();
+    }
+
+    /**
+     * Returns a readable summary, with moves written as a column letter and
+     * row number, like "d3".
+     *
+     * @return the summary
+     */
+    public String toString() {
+        StringBuilder line = new StringBuilder();
+        for (int move : itsPrincipalVariation) {
+            if (line.length() > 0) {
+                line.append(' ');
+            }
+            line.append(name(move));
+        }
+
+        return "move " + name(itsMove) + " score " + itsScore
+                + (itsFromBook ? " book" : itsSolved ? " solved" : " level " + itsLevel)
+                + " nodes " + itsNodes + " time " + itsMillis + " ms pv " + line;
+    }
+
+    /**
+     * Returns the usual name of a move.
+     *
+     * @param move the bit number of the move, or -1 to pass
+     * @return the column letter and row number, or "pass"
+     */
+    public static String name(int move) {
+        if (move < 0) {
+            return "pass";
+        }
+
+        return (char) ('a' + BitBoard.x(move)) + Integer.toString(BitBoard.y(move) + 1);
+    }
+}
@@ -0,0 +1,255 @@
+package dev.jcps.engine;
+
+/*
+*****************************************************************************
+
+ Desdemona: The Java Othello game.
+ Copyright (C) 2001 Kenneth D. Huffman.
+
+ This program is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 2 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License (gnu.org/copyleft/gpl.html) for more details.
+
+ The author can be reached at www.huffmancoding.com.
+ *****************************************************************************
+ */
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class adds up the statistics of every move searched by any Engine
+ * and publishes them as a management bean, so a monitoring tool can scrape
+ * them while the program runs.  Engines only add to it once per move, so
+ * it costs nothing inside the search.
+ *
+ * @author Ken Huffman
+ */
+public final class SearchStatistics implements SearchStatisticsMBean {
+    /**
+     * the name the bean is registered under
+     */
+    public static final String NAME = "dev.jcps.desdemona:type=SearchStatistics";
+    /**
+     * the one instance, registered when this class is first used
+     */
+    private static final SearchStatistics INSTANCE = new SearchStatistics();
+
+    static {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(INSTANCE, new ObjectName(NAME));
+        } catch (JMException e) {
+            System.err.println("Search statistics are not published: " + e.getMessage());
+        }
+
+        // the first flight recorder event sets up its event type, which
+        // takes a while: do it now rather than after the first move
+        new SearchEvent().shouldCommit();
+    }
+
+    /**
+     * the moves searched
+     */
+    private final LongAdder itsMoves = new LongAdder();
+    /**
+     * the positions visited
+     */
+    private final LongAdder itsNodes = new LongAdder();
+    /**
+     * the time spent searching
+     */
+    private final LongAdder itsNanos = new LongAdder();
+    /**
+     * the sum of the levels completed
+     */
+    private final LongAdder itsLevels = new LongAdder();
+    /**
+     * the transposition table probes
+     */
+    private final LongAdder itsTableProbes = new LongAdder();
+    /**
+     * the probes that found their position
+     */
+    private final LongAdder itsTableHits = new LongAdder();
+    /**
+     * the positions that cut off
+     */
+    private final LongAdder itsCutoffs = new LongAdder();
+    /**
+     * the positions that cut off on their first move
+     */
+    private final LongAdder itsFirstMoveCutoffs = new LongAdder();
+
+    /**
+     * Prevents instantiation, there is one instance.
+     */
+    private SearchStatistics() {
+    }
+
+    /**
+     * Returns the statistics of every engine.
+     *
+     * @return the one instance
+     */
+    public static SearchStatistics getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Adds a search's counts to the totals and, when the flight recorder is
+     * recording, commits its event.  A move answered from pondering has no
+     * search of its own, so its table and cutoff counts are left out.
+     *
+     * @param result the result of the search
+     * @param search the search, still holding its counters, or null for none
+     * @param nanos  the time spent searching
+     */
+    void record(SearchResult result, Search search, long nanos) {
+        itsMoves.increment();
+        itsNodes.add(result.getNodes());
+        itsNanos.add(nanos);
+        itsLevels.add(result.getLevel());
+        if (search != null) {
+            itsTableProbes.add(search.getTableProbes());
+            itsTableHits.add(search.getTableHits());
+            itsCutoffs.add(search.getCutoffs());
+            itsFirstMoveCutoffs.add(search.getFirstMoveCutoffs());
+        }
+
+        SearchEvent event = new SearchEvent();
+        if (event.shouldCommit()) {
+            event.itsMove = SearchResult.name(result.getMove());
+            event.itsScore = result.getScore();
+            event.itsLevel = result.getLevel();
+            event.itsSolved = result.isSolved();
+            event.itsNodes = result.getNodes();
+            event.itsNodesPerSecond = nanos > 0 ? result.getNodes() * 1000000000L / nanos : 0;
+            event.itsBranchingFactor = result.getLevel() > 0 && result.getNodes() > 0 ?
+                    Math.pow(result.getNodes(), 1.0 / result.getLevel()) : 0;
+            if (search != null) {
+                event.itsTableProbes = search.getTableProbes();
+                event.itsTableHits = search.getTableHits();
+                event.itsCutoffs = search.getCutoffs();
+                event.itsFirstMoveCutoffs = search.getFirstMoveCutoffs();
+            }
+            event.itsMillis = nanos / 1000000L;
+            event.commit();
+        }
+    }
+
+    /**
+     * Returns the number of moves searched.
+     *
+     * @return the move count
+     */
+    public long getMoves() {
+        return itsMoves.sum();
+    }
+
+    /**
+     * Returns the number of positions visited.
+     *
+     * @return the node count
+     */
+    public long getNodes() {
+        return itsNodes.sum();
+    }
+
+    /**
+     * Returns the time spent searching.
+     *
+     * @return the milliseconds
+     */
+    public long getSearchMillis() {
+        return itsNanos.sum() / 1000000L;
+    }
+
+    /**
+     * Returns the positions visited per second of searching.
+     *
+     * @return the node rate
+     */
+    public double getNodesPerSecond() {
+        long nanos = itsNanos.sum();
+        return nanos > 0 ? itsNodes.sum() * 1e9 / nanos : 0;
+    }
+
+    /**
+     * Returns the average deepest level completed per move.
+     *
+     * @return the average level
+     */
+    public double getAverageLevel() {
+        long moves = itsMoves.sum();
+        return moves > 0 ? (double) itsLevels.sum() / moves : 0;
+    }
+
+    /**
+     * Returns the number of transposition table probes.
+     *
+     * @return the probe count
+     */
+    public long getTableProbes() {
+        return itsTableProbes.sum();
+    }
+
+    /**
+     * Returns the fraction of probes that found their position.
+     *
+     * @return the hit rate from 0 to 1
+     */
+    public double getTableHitRate() {
+        long probes = itsTableProbes.sum();
+        return probes > 0 ? (double) itsTableHits.sum() / probes : 0;
+    }
+
+    /**
+     * Returns the number of positions that cut off.
+     *
+     * @return the cutoff count
+     */
+    public long getCutoffs() {
+        return itsCutoffs.sum();
+    }
+
+    /**
+     * Returns the fraction of cutoffs that came on the first move tried.
+     *
+     * @return the first move cutoff rate from 0 to 1
+     */
+    public double getFirstMoveCutoffRate() {
+        long cutoffs = itsCutoffs.sum();
+        return cutoffs > 0 ? (double) itsFirstMoveCutoffs.sum() / cutoffs : 0;
+    }
+
+    /**
+     * Returns true if cutoffs are being counted.
+     *
+     * @return the desdemona.statistics setting
+     */
+    public boolean isCountingCutoffs() {
+        return Search.STATISTICS;
+    }
+
+    /**
+     * Sets every statistic back to zero.
+     */
+    public void reset() {
+        itsMoves.reset();
+        itsNodes.reset();
+        itsNanos.reset();
+        itsLevels.reset();
+        itsTableProbes.reset();
+        itsTableHits.reset();
+        itsCutoffs.reset();
+        itsFirstMoveCutoffs.reset();
+    }
+}
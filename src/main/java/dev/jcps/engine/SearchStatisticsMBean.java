@@ -0,0 +1,107 @@
+package dev.jcps.engine;
+
+/*
+*****************************************************************************
+
+ Desdemona: The Java Othello game.
+ Copyright (C) 2001 Kenneth D. Huffman.
+
+ This program is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 2 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License (gnu.org/copyleft/gpl.html) for more details.
+
+ The author can be reached at www.huffmancoding.com.
+ *****************************************************************************
+ */
+
+/**
+ * This interface is the management view of the engine's search
+ * statistics, added up over every move searched since the program started
+ * or since reset.  It is registered with the platform MBean server as
+ * dev.jcps.desdemona:type=SearchStatistics.
+ *
+ * @author Ken Huffman
+ */
+public interface SearchStatisticsMBean {
+    /**
+     * Returns the number of moves searched.
+     *
+     * @return the move count
+     */
+    long getMoves();
+
+    /**
+     * Returns the number of positions visited.
+     *
+     * @return the node count
+     */
+    long getNodes();
+
+    /**
+     * Returns the time spent searching.
+     *
+     * @return the milliseconds
+     */
+    long getSearchMillis();
+
+    /**
+     * Returns the positions visited per second of searching.
+     *
+     * @return the node rate
+     */
+    double getNodesPerSecond();
+
+    /**
+     * Returns the average deepest level completed per move.
+     *
+     * @return the average level
+     */
+    double getAverageLevel();
+
+    /**
+     * Returns the number of transposition table probes.
+     *
+     * @return the probe count
+     */
+    long getTableProbes();
+
+    /**
+     * Returns the fraction of probes that found their position.
+     *
+     * @return the hit rate from 0 to 1
+     */
+    double getTableHitRate();
+
+    /**
+     * Returns the number of positions that cut off, which is only counted
+     * when the desdemona.statistics system property is true.
+     *
+     * @return the cutoff count
+     */
+    long getCutoffs();
+
+    /**
+     * Returns the fraction of cutoffs that came on the first move tried.
+     *
+     * @return the first move cutoff rate from 0 to 1
+     */
+    double getFirstMoveCutoffRate();
+
+    /**
+     * Returns true if cutoffs are being counted.
+     *
+     * @return the desdemona.statistics setting
+     */
+    boolean isCountingCutoffs();
+
+    /**
+     * Sets every statistic back to zero.
+     */
+    void reset();
+}
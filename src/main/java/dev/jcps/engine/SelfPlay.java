@@ -0,0 +1,313 @@
+package dev.jcps.engine;
+
+/*
+*****************************************************************************
+
+ Desdemona: The Java Othello game.
+ Copyright (C) 2001 Kenneth D. Huffman.
+
+ This program is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 2 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License (gnu.org/copyleft/gpl.html) for more details.
+
+ The author can be reached at www.huffmancoding.com.
+ *****************************************************************************
+ */
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class plays the computer against itself without any window, many
+ * games at once, and appends each finished game to a games file.  The
+ * first few moves of each game are random so the games differ, and the
+ * rest are searched to a fixed level.
+ * <p>
+ * Every worker thread has an engine of its own and takes the next game
+ * number when it finishes a game, so nothing is shared but the counter and
+ * the file.  Each game's random openings come from its number and the
+ * seed, so a run can be played again move for move.
+ * <p>
+ * The games file has one game per line as moves like "f5d6c3", with passes
+ * left out, as read by BookBuilder and Trainer.  A line is written whole
+ * when its game ends, so a run that is cut short leaves at most one
+ * unfinished line, which both of them skip.  Run it from the command line:
+ * <pre>
+ *     java -cp desdemona.jar dev.jcps.engine.SelfPlay games.txt count
+ *             [-level n] [-random n] [-solve n] [-threads n] [-seed n] [-weights file]
+ *             [-probcut file]
+ * </pre>
+ *
+ * @author Ken Huffman
+ */
+public final class SelfPlay {
+    /**
+     * the time budget of a solving search, in milliseconds, which is in
+     * practice no limit
+     */
+    private static final long SOLVE_MILLIS = 3600000L;
+    /**
+     * the size of each worker's transposition table
+     */
+    private static final int HASH_MEGABYTES = 4;
+
+    /**
+     * the level each move after the random ones is searched to
+     */
+    private final int itsLevel;
+    /**
+     * the number of random moves at the start of each game
+     */
+    private final int itsRandomPlies;
+    /**
+     * the most empty squares solved exactly instead of searched, 0 for none
+     */
+    private int itsSolveEmpties;
+    /**
+     * the weights every engine evaluates with, or null for the corner
+     * evaluation
+     */
+    private PatternEvaluator itsEvaluator;
+    /**
+     * the selective search parameters every engine uses, or null for none
+     */
+    private ProbCut itsProbCut;
+    /**
+     * the games won by black, drawn and won by white in the last run
+     */
+    private final AtomicInteger[] itsResults = {
+            new AtomicInteger(), new AtomicInteger(), new AtomicInteger()};
+
+    /**
+     * Constructor.
+     *
+     * @param level       the level each move is searched to
+     * @param randomPlies the number of random moves at the start of each
+     *                    game
+     */
+    public SelfPlay(int level, int randomPlies) {
+        itsLevel = level;
+        itsRandomPlies = randomPlies;
+    }
+
+    /**
+     * Sets when the rest of each game is solved exactly.
+     *
+     * @param empties the most empty squares to solve, 0 to never solve
+     */
+    public void setEndgame(int empties) {
+        itsSolveEmpties = empties;
+    }
+
+    /**
+     * Sets how the leaves of the search are scored.
+     *
+     * @param evaluator the pattern evaluator, or null for the corner
+     *                  evaluation
+     */
+    public void setEvaluator(PatternEvaluator evaluator) {
+        itsEvaluator = evaluator;
+    }
+
+    /**
+     * Sets whether the search cuts positions predicted by shallow searches.
+     *
+     * @param probCut the parameters fitted for the evaluator, or null to
+     *                search every position to the full level
+     */
+    public void setProbCut(ProbCut probCut) {
+        itsProbCut = probCut;
+    }
+
+    /**
+     * Returns how many games of the last run black won, were drawn and
+     * white won.
+     *
+     * @return the three counts
+     */
+    public int[] getResults() {
+        return new int[]{itsResults[0].get(), itsResults[1].get(), itsResults[2].get()};
+    }
+
+    /**
+     * Plays games on a fixed number of worker threads and appends them to
+     * a file.
+     *
+     * @param file    the games file, created if it does not exist
+     * @param games   the number of games
+     * @param threads the number of worker threads
+     * @param seed    where the random openings start
+     * @throws IOException if the file cannot be written
+     * @throws InterruptedException if interrupted while waiting for the
+     *                              workers
+     */
+    public void run(Path file, int games, int threads, long seed)
+            throws IOException, InterruptedException {
+        for (AtomicInteger result : itsResults) {
+            result.set(0);
+        }
+
+        AtomicInteger next = new AtomicInteger();
+        ExecutorService workers = Executors.newFixedThreadPool(threads);
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardOpenOption.CREATE,
+                StandardOpenOption.APPEND)) {
+            Future<?>[] futures = new Future<?>[threads];
+            for (int i = 0; i < threads; ++i) {
+                futures[i] = workers.submit(() -> {
+                    Engine engine = new Engine(HASH_MEGABYTES, null);
+                    engine.setEvaluator(itsEvaluator);
+                    engine.setProbCut(itsProbCut);
+                    engine.setEndgame(itsSolveEmpties, true);
+                    StringBuilder line = new StringBuilder();
+                    for (int game = next.getAndIncrement(); game < games; game = next.getAndIncrement()) {
+                        line.setLength(0);
+                        int blackDifference = play(engine, seed + game * 0x9E3779B97F4A7C15L, line);
+                        itsResults[1 - Integer.signum(blackDifference)].incrementAndGet();
+                        line.append('\n');
+                        try {
+                            synchronized (writer) {
+                                writer.append(line);
+                            }
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    }
+                });
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof UncheckedIOException io) {
+                throw io.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            workers.shutdownNow();
+        }
+    }
+
+    /**
+     * Plays one game.
+     *
+     * @param engine the engine to search with
+     * @param seed   where the random moves start
+     * @param line   appended with the moves
+     * @return the final disc difference for black
+     */
+    private int play(Engine engine, long seed, StringBuilder line) {
+        SplittableRandom random = new SplittableRandom(seed);
+        engine.newGame();
+        Position position = Position.START;
+        for (int ply = 0; ; ++ply) {
+            long me = position.getPlayer();
+            long opponent = position.getOpponent();
+            long legal = BitBoard.moves(me, opponent);
+            if (legal == 0) {
+                if (BitBoard.moves(opponent, me) == 0) {
+                    break;
+                }
+                position = position.play(-1);
+                continue;
+            }
+
+            int move;
+            if (ply < itsRandomPlies) {
+                for (int skip = random.nextInt(BitBoard.count(legal)); skip > 0; --skip) {
+                    legal &= legal - 1;
+                }
+                move = Long.numberOfTrailingZeros(legal);
+            } else if (position.getEmpties() <= itsSolveEmpties) {
+                move = engine.search(me, opponent, itsLevel, SOLVE_MILLIS).getMove();
+            } else {
+                move = engine.search(me, opponent, itsLevel).getMove();
+            }
+            line.append(SearchResult.name(move));
+            position = position.play(move);
+        }
+
+        int mine = BitBoard.count(position.getPlayer());
+        int his = BitBoard.count(position.getOpponent());
+        int difference = mine - his;
+        if (difference != 0) {
+            difference += Integer.signum(difference) * (BitBoard.SQUARES - mine - his);
+        }
+
+        return position.isBlackToMove() ? difference : -difference;
+    }
+
+    /**
+     * Plays games from the command line and reports how fast they went.
+     *
+     * @param args the games file, the number of games, then options
+     * @throws IOException if a file cannot be read or written
+     * @throws InterruptedException if interrupted while playing
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 2) {
+            System.err.println("Usage: SelfPlay games count [-level n] [-random n] [-solve n]"
+                    + " [-threads n] [-seed n] [-weights file] [-probcut file]");
+            System.exit(1);
+        }
+
+        Path file = Path.of(args[0]);
+        int games = Integer.parseInt(args[1]);
+        int level = 4;
+        int randomPlies = 8;
+        int solve = 0;
+        int threads = Runtime.getRuntime().availableProcessors();
+        long seed = System.nanoTime();
+        Path weights = null;
+        Path probCut = null;
+        for (int i = 2; i < args.length; i += 2) {
+            if (i + 1 == args.length) {
+                throw new IllegalArgumentException("Missing value for " + args[i]);
+            }
+            switch (args[i]) {
+                case "-level" -> level = Integer.parseInt(args[i + 1]);
+                case "-random" -> randomPlies = Integer.parseInt(args[i + 1]);
+                case "-solve" -> solve = Integer.parseInt(args[i + 1]);
+                case "-threads" -> threads = Integer.parseInt(args[i + 1]);
+                case "-seed" -> seed = Long.parseLong(args[i + 1]);
+                case "-weights" -> weights = Path.of(args[i + 1]);
+                case "-probcut" -> probCut = Path.of(args[i + 1]);
+                default -> throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+
+        SelfPlay selfPlay = new SelfPlay(level, randomPlies);
+        selfPlay.setEndgame(solve);
+        PatternEvaluator evaluator = weights != null ? PatternEvaluator.load(weights) : null;
+        selfPlay.setEvaluator(evaluator);
+        if (probCut != null) {
+            ProbCut parameters = ProbCut.load(probCut);
+            if (!parameters.fits(evaluator)) {
+                throw new IllegalArgumentException(probCut + " was fitted for other weights");
+            }
+            selfPlay.setProbCut(parameters);
+        }
+        long startTime = System.nanoTime();
+        selfPlay.run(file, games, threads, seed);
+        double seconds = (System.nanoTime() - startTime) / 1e9;
+        int[] results = selfPlay.getResults();
+        System.out.printf("%,d games in %.1f s, %.1f games/s on %d threads;"
+                        + " black %d, draws %d, white %d%n", games, seconds, games / seconds,
+                threads, results[0], results[1], results[2]);
+    }
+}
@@ -0,0 +1,274 @@
+package dev.jcps.engine;
+
+/*
+*****************************************************************************
+
+ Desdemona: The Java Othello game.
+ Copyright (C) 2001 Kenneth D. Huffman.
+
+ This program is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 2 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License (gnu.org/copyleft/gpl.html) for more details.
+
+ The author can be reached at www.huffmancoding.com.
+ *****************************************************************************
+ */
+
+/**
+ * This class keeps the score of a match played in pairs of games, the
+ * same opening with the colors swapped, and decides by a sequential
+ * probability ratio test whether the first player is stronger by elo1 or
+ * by no more than elo0.  The test can stop as soon as either is likely
+ * enough, which for a clear difference takes far fewer games than a fixed
+ * number would.
+ * <p>
+ * A pair scores 0, 1/2, 1, 3/2 or 2 points for the first player, and the
+ * test counts the five results.  The two games of a pair are far from
+ * independent, since the opening decides much of both, so treating pairs
+ * as units rather than games as units gets the spread of the score right.
+ * The log likelihood ratio uses the normal approximation of the mean pair
+ * score: with Elo differences turned into expected scores s0 and s1, it is
+ * pairs * (s1 - s0) * (2 * mean - s0 - s1) / (2 * variance), and the test
+ * stops when it leaves the bounds set by the error rates alpha (of
+ * accepting elo1 when elo0 holds) and beta (the other way round).  The
+ * variance is measured from the pairs themselves, so the test waits for
+ * MIN_PAIRS before it trusts it.
+ *
+ * @author Ken Huffman
+ */
+public final class Sprt {
+    /**
+     * the number of results a pair can have
+     */
+    public static final int PAIR_RESULTS = 5;
+    /**
+     * the fewest pairs the test decides on, since with fewer the spread of
+     * the score is too rough a guess
+     */
+    public static final int MIN_PAIRS = 20;
+    /**
+     * the normal quantile of a 95% confidence interval
+     */
+    private static final double Z95 = 1.959964;
+
+    /**
+     * the Elo difference of the null hypothesis
+     */
+    private final double itsElo0;
+    /**
+     * the Elo difference of the alternative hypothesis
+     */
+    private final double itsElo1;
+    /**
+     * the log likelihood ratio at which elo0 is accepted
+     */
+    private final double itsLowerBound;
+    /**
+     * the log likelihood ratio at which elo1 is accepted
+     */
+    private final double itsUpperBound;
+    /**
+     * the number of pairs that scored each number of half points
+     */
+    private final int[] itsPairs = new int[PAIR_RESULTS];
+
+    /**
+     * Constructor.
+     *
+     * @param elo0  the Elo difference of the null hypothesis
+     * @param elo1  the Elo difference of the alternative, more than elo0
+     * @param alpha the chance of accepting elo1 when elo0 holds
+     * @param beta  the chance of accepting elo0 when elo1 holds
+     */
+    public Sprt(double elo0, double elo1, double alpha, double beta) {
+        itsElo0 = elo0;
+        itsElo1 = elo1;
+        itsLowerBound = Math.log(beta / (1 - alpha));
+        itsUpperBound = Math.log((1 - beta) / alpha);
+    }
+
+    /**
+     * Counts the result of a pair of games.
+     *
+     * @param halfPoints the first player's score of the pair in half
+     *                   points, from 0 to 4
+     */
+    public synchronized void add(int halfPoints) {
+        ++itsPairs[halfPoints];
+    }
+
+    /**
+     * Returns the number of pairs that scored each number of half points.
+     *
+     * @return the counts, by half points from 0 to 4
+     */
+    public synchronized int[] getPairs() {
+        return itsPairs.clone();
+    }
+
+    /**
+     * Returns the number of pairs counted.
+     *
+     * @return the count
+     */
+    public synchronized int getPairCount() {
+        int count = 0;
+        for (int pairs : itsPairs) {
+            count += pairs;
+        }
+
+        return count;
+    }
+
+    /**
+     * Returns the log likelihood ratio of elo1 against elo0.
+     *
+     * @return the ratio, 0 until the scores vary
+     */
+    public synchronized double getLlr() {
+        int count = getPairCount();
+        double mean = mean();
+        double variance = variance(mean);
+        if (count == 0 || variance <= 0) {
+            return 0;
+        }
+
+        double s0 = expectedScore(itsElo0);
+        double s1 = expectedScore(itsElo1);
+        return count * (s1 - s0) * (2 * mean - s0 - s1) / (2 * variance);
+    }
+
+    /**
+     * Returns the log likelihood ratio at which elo0 is accepted.
+     *
+     * @return the lower bound
+     */
+    public double getLowerBound() {
+        return itsLowerBound;
+    }
+
+    /**
+     * Returns the log likelihood ratio at which elo1 is accepted.
+     *
+     * @return the upper bound
+     */
+    public double getUpperBound() {
+        return itsUpperBound;
+    }
+
+    /**
+     * Determines whether the test has decided.
+     *
+     * @return -1 if elo0 is accepted, 1 if elo1 is, 0 if neither yet
+     */
+    public synchronized int getDecision() {
+        if (getPairCount() < MIN_PAIRS) {
+            return 0;
+        }
+
+        double llr = getLlr();
+        return llr <= itsLowerBound ? -1 : llr >= itsUpperBound ? 1 : 0;
+    }
+
+    /**
+     * Returns the Elo difference of the first player that the score so far
+     * suggests.
+     *
+     * @return the difference, infinite if every game was won or lost
+     */
+    public synchronized double getElo() {
+        return elo(mean());
+    }
+
+    /**
+     * Returns half the width of the 95% confidence interval of the Elo
+     * difference.  The interval is not symmetric in Elo, so this is half
+     * the distance between its ends.
+     *
+     * @return the error bar, infinite until the scores vary
+     */
+    public synchronized double getEloError() {
+        int count = getPairCount();
+        double mean = mean();
+        double variance = variance(mean);
+        if (count == 0 || variance <= 0) {
+            return Double.POSITIVE_INFINITY;
+        }
+
+        double spread = Z95 * Math.sqrt(variance / count);
+        return (elo(mean + spread) - elo(mean - spread)) / 2;
+    }
+
+    /**
+     * Returns the mean score of a pair, as a fraction of its two points.
+     *
+     * @return the mean, 1/2 if no pairs were counted
+     */
+    private double mean() {
+        int count = getPairCount();
+        if (count == 0) {
+            return 0.5;
+        }
+
+        double sum = 0;
+        for (int halfPoints = 0; halfPoints < PAIR_RESULTS; ++halfPoints) {
+            sum += itsPairs[halfPoints] * halfPoints / 4.0;
+        }
+        return sum / count;
+    }
+
+    /**
+     * Returns the variance of the score of a pair, as a fraction of its
+     * two points.
+     *
+     * @param mean the mean score
+     * @return the variance
+     */
+    private double variance(double mean) {
+        int count = getPairCount();
+        if (count == 0) {
+            return 0;
+        }
+
+        double sum = 0;
+        for (int halfPoints = 0; halfPoints < PAIR_RESULTS; ++halfPoints) {
+            double deviation = halfPoints / 4.0 - mean;
+            sum += itsPairs[halfPoints] * deviation * deviation;
+        }
+        return sum / count;
+    }
+
+    /**
+     * Turns an Elo difference into the expected score of the stronger
+     * player.
+     *
+     * @param elo the Elo difference
+     * @return the score, as a fraction of a point
+     */
+    static double expectedScore(double elo) {
+        return 1 / (1 + Math.pow(10, -elo / 400));
+    }
+
+    /**
+     * Turns an expected score into an Elo difference.
+     *
+     * @param score the score, as a fraction of a point
+     * @return the difference, infinite for a score of 0 or 1
+     */
+    static double elo(double score) {
+        if (score <= 0) {
+            return Double.NEGATIVE_INFINITY;
+        }
+        if (score >= 1) {
+            return Double.POSITIVE_INFINITY;
+        }
+
+        return -400 * Math.log10(1 / score - 1);
+    }
+}
@@ -0,0 +1,267 @@
+package dev.jcps.engine;
+
+/*
+*****************************************************************************
+
+ Desdemona: The Java Othello game.
+ Copyright (C) 2001 Kenneth D. Huffman.
+
+ This program is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 2 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License (gnu.org/copyleft/gpl.html) for more details.
+
+ The author can be reached at www.huffmancoding.com.
+ *****************************************************************************
+ */
+
+/**
+ * This class finds pieces that can never be flipped again.  A piece on an
+ * edge can only be flipped along that edge, so its stability depends only
+ * on the edge: which of a player's edge pieces survive every sequence of
+ * moves on the empty squares of the edge, by either player, is worked out
+ * once for every edge and kept in a table.
+ * <p>
+ * A piece inside the board can be flipped along four lines.  Along each
+ * one it is safe if the line is full, or if it is next to a stable piece
+ * of its own on that line; a piece safe along all four is stable.  The
+ * stable pieces are grown from the edges inward until no more are found.
+ * <p>
+ * The count is only a lower bound on the stable pieces, but it is cheap
+ * enough to prove in the endgame that a player cannot reach a score, and
+ * to be a feature of the evaluation.
+ *
+ * @author Ken Huffman
+ */
+public final class Stability {
+    /**
+     * the top edge squares
+     */
+    private static final long TOP_EDGE = 0x00000000000000FFL;
+    /**
+     * the squares inside the edges
+     */
+    private static final long INSIDE = 0x007E7E7E7E7E7E00L;
+    /**
+     * the stable squares of the first player's pieces on an edge, indexed
+     * by his pieces times 256 plus his opponent's, bit x for the square at
+     * x along the edge
+     */
+    private static final byte[] EDGE_STABLE = new byte[1 << 16];
+    /**
+     * the squares of each line down and to the right, by the square at its
+     * top or left end
+     */
+    private static final long[] DIAGONALS = new long[15];
+    /**
+     * the squares of each line down and to the left, by the square at its
+     * top or right end
+     */
+    private static final long[] ANTI_DIAGONALS = new long[15];
+
+    static {
+        for (int player = 0; player < 256; ++player) {
+            for (int opponent = 0; opponent < 256; ++opponent) {
+                if ((player & opponent) == 0) {
+                    EDGE_STABLE[(player << 8) | opponent] =
+                            (byte) findEdgeStable(player, opponent, player);
+                }
+            }
+        }
+
+        for (int i = 0; i < DIAGONALS.length; ++i) {
+            int x = Math.max(0, i - 7);
+            int y = Math.max(0, 7 - i);
+            for (; x < BitBoard.SIZE && y < BitBoard.SIZE; ++x, ++y) {
+                DIAGONALS[i] |= 1L << BitBoard.square(x, y);
+                ANTI_DIAGONALS[i] |= 1L << BitBoard.square(7 - x, y);
+            }
+        }
+    }
+
+    /**
+     * Prevents instantiation, everything is static.
+     */
+    private Stability() {
+    }
+
+    /**
+     * Works out which of a player's pieces on an edge survive every
+     * sequence of moves on the edge's empty squares.  A piece may be put on
+     * any empty square by either player, since a move on the edge can be
+     * legal because of flips off the edge, and flips along the edge as a
+     * move there would.
+     *
+     * @param player   the player's pieces on the edge
+     * @param opponent his opponent's pieces on the edge
+     * @param stable   the player's original pieces not yet shown flippable
+     * @return the original pieces that are never flipped
+     */
+    private static int findEdgeStable(int player, int opponent, int stable) {
+        stable &= player;
+        int empty = ~(player | opponent) & 0xFF;
+        for (int x = 0; x < BitBoard.SIZE && stable != 0 && empty != 0; ++x) {
+            int bit = 1 << x;
+            if ((empty & bit) != 0) {
+                int flipped = edgeFlips(player, opponent, x);
+                stable = findEdgeStable(player | bit | flipped, opponent & ~flipped, stable);
+                flipped = edgeFlips(opponent, player, x);
+                stable = findEdgeStable(player & ~flipped, opponent | bit | flipped, stable);
+            }
+        }
+
+        return stable;
+    }
+
+    /**
+     * Returns the pieces flipped along an edge by a piece put on it.
+     *
+     * @param mover    the pieces of the player putting the piece down
+     * @param opponent the pieces of his opponent
+     * @param x        where the piece goes
+     * @return the flipped pieces
+     */
+    private static int edgeFlips(int mover, int opponent, int x) {
+        int flipped = 0;
+        int run = 0;
+        int y = x + 1;
+        for (; y < BitBoard.SIZE && (opponent & (1 << y)) != 0; ++y) {
+            run |= 1 << y;
+        }
+        if (y < BitBoard.SIZE && (mover & (1 << y)) != 0) {
+            flipped |= run;
+        }
+
+        run = 0;
+        y = x - 1;
+        for (; y >= 0 && (opponent & (1 << y)) != 0; --y) {
+            run |= 1 << y;
+        }
+        if (y >= 0 && (mover & (1 << y)) != 0) {
+            flipped |= run;
+        }
+
+        return flipped;
+    }
+
+    /**
+     * Returns the pieces of a player on the edges that can never be flipped.
+     *
+     * @param player   the pieces whose stability is wanted
+     * @param opponent the pieces of his opponent
+     * @return the mask of stable edge pieces
+     */
+    public static long edgeStable(long player, long opponent) {
+        // the left and right edges are the top and bottom rows transposed
+        long playerT = BitBoard.transpose(player);
+        long opponentT = BitBoard.transpose(opponent);
+        long sides = edge(playerT, opponentT, 0) | (edge(playerT, opponentT, 56) << 56);
+
+        return edge(player, opponent, 0) | (edge(player, opponent, 56) << 56)
+                | BitBoard.transpose(sides);
+    }
+
+    /**
+     * Looks up the stable pieces of the top or bottom row.
+     *
+     * @param player   the pieces whose stability is wanted
+     * @param opponent the pieces of his opponent
+     * @param shift    0 for the top row, 56 for the bottom
+     * @return the stable pieces as the row's 8 bits
+     */
+    private static long edge(long player, long opponent, int shift) {
+        int index = (int) ((player >>> shift) & TOP_EDGE) << 8
+                | (int) ((opponent >>> shift) & TOP_EDGE);
+        return EDGE_STABLE[index] & TOP_EDGE;
+    }
+
+    /**
+     * Returns all the pieces of a player that can never be flipped: those
+     * stable on the edges, then those inside whose every line is full or
+     * guarded by a stable piece of his next to it.
+     *
+     * @param player   the pieces whose stability is wanted
+     * @param opponent the pieces of his opponent
+     * @return the mask of stable pieces
+     */
+    public static long stable(long player, long opponent) {
+        long stable = edgeStable(player, opponent);
+        long inside = player & INSIDE;
+        if (inside == 0) {
+            return stable;
+        }
+
+        long occupied = player | opponent;
+        long fullRows = fullRows(occupied);
+        long fullColumns = fullColumns(occupied);
+        if (stable == 0 && (inside & fullRows & fullColumns) == 0) {
+            return 0; // nothing to grow from, and the diagonals cost most
+        }
+
+        long fullDiagonals = fullLines(occupied, DIAGONALS);
+        long fullAntiDiagonals = fullLines(occupied, ANTI_DIAGONALS);
+        stable |= inside & fullRows & fullColumns & fullDiagonals & fullAntiDiagonals;
+
+        // the shifts wrap from one row to the next, but only onto edge
+        // squares, and only inside squares are added
+        for (long old = 0; stable != old; ) {
+            old = stable;
+            long rows = (stable << 1) | (stable >>> 1) | fullRows;
+            long columns = (stable << 8) | (stable >>> 8) | fullColumns;
+            long diagonals = (stable << 9) | (stable >>> 9) | fullDiagonals;
+            long antiDiagonals = (stable << 7) | (stable >>> 7) | fullAntiDiagonals;
+            stable |= inside & rows & columns & diagonals & antiDiagonals;
+        }
+
+        return stable;
+    }
+
+    /**
+     * Returns the squares of the full rows.
+     *
+     * @param occupied the squares with pieces
+     * @return the full rows
+     */
+    private static long fullRows(long occupied) {
+        long full = occupied & (occupied >>> 1);
+        full &= full >>> 2;
+        full &= full >>> 4;
+        return (full & 0x0101010101010101L) * 0xFF;
+    }
+
+    /**
+     * Returns the squares of the full columns.
+     *
+     * @param occupied the squares with pieces
+     * @return the full columns
+     */
+    private static long fullColumns(long occupied) {
+        long full = occupied & (occupied >>> 8);
+        full &= full >>> 16;
+        full &= full >>> 32;
+        return (full & TOP_EDGE) * 0x0101010101010101L;
+    }
+
+    /**
+     * Returns the squares of the full lines of a direction.
+     *
+     * @param occupied the squares with pieces
+     * @param lines    the squares of every line of the direction
+     * @return the full lines
+     */
+    private static long fullLines(long occupied, long[] lines) {
+        long full = 0;
+        for (long line : lines) {
+            if ((occupied & line) == line) {
+                full |= line;
+            }
+        }
+
+        return full;
+    }
+}
@@ -0,0 +1,173 @@
+package dev.jcps.engine;
+
+/*
+*****************************************************************************
+
+ Desdemona: The Java Othello game.
+ Copyright (C) 2001 Kenneth D. Huffman.
+
+ This program is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 2 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License (gnu.org/copyleft/gpl.html) for more details.
+
+ The author can be reached at www.huffmancoding.com.
+ *****************************************************************************
+ */
+
+/**
+ * This class turns positions into one of their eight symmetric forms, so
+ * that a position and its rotations and mirror images can share one entry
+ * in a table or a book.  A symmetry is a number from 0 to 7 whose bits say
+ * which of three turns it makes, in order: upside down, then left to right,
+ * then about the a1-h8 diagonal.  Symmetry 0 leaves a position as it is.
+ * <p>
+ * The canonical form of a position is the symmetric form whose pieces sort
+ * first, as OpeningBook sorts them.  Anything found under the canonical
+ * form is in its squares, so a move is turned back by the inverse
+ * symmetry before it is played.
+ *
+ * @author Ken Huffman
+ */
+public final class Symmetry {
+    /**
+     * the number of symmetries
+     */
+    public static final int COUNT = 8;
+    /**
+     * the bit of a symmetry that turns the board upside down, and so the
+     * symmetry that only does that
+     */
+    static final int FLIP_VERTICAL = 1;
+    /**
+     * the bit of a symmetry that mirrors the board left to right
+     */
+    private static final int MIRROR_HORIZONTAL = 2;
+    /**
+     * the bit of a symmetry that flips the board about the a1-h8 diagonal
+     */
+    private static final int TRANSPOSE = 4;
+
+    /**
+     * Prevents instantiation, everything is static.
+     */
+    private Symmetry() {
+    }
+
+    /**
+     * Turns a mask by a symmetry.
+     *
+     * @param pieces   the mask
+     * @param symmetry the symmetry, from 0 to 7
+     * @return the turned mask
+     */
+    public static long apply(long pieces, int symmetry) {
+        if ((symmetry & FLIP_VERTICAL) != 0) {
+            pieces = BitBoard.flipVertical(pieces);
+        }
+        if ((symmetry & MIRROR_HORIZONTAL) != 0) {
+            pieces = BitBoard.mirrorHorizontal(pieces);
+        }
+        if ((symmetry & TRANSPOSE) != 0) {
+            pieces = BitBoard.transpose(pieces);
+        }
+
+        return pieces;
+    }
+
+    /**
+     * Turns a square by a symmetry.
+     *
+     * @param sq       the bit number of the square, or -1 for a pass
+     * @param symmetry the symmetry, from 0 to 7
+     * @return the bit number of the turned square, or -1 for a pass
+     */
+    public static int square(int sq, int symmetry) {
+        if (sq < 0) {
+            return sq;
+        }
+
+        int x = BitBoard.x(sq);
+        int y = BitBoard.y(sq);
+        if ((symmetry & FLIP_VERTICAL) != 0) {
+            y = BitBoard.SIZE - 1 - y;
+        }
+        if ((symmetry & MIRROR_HORIZONTAL) != 0) {
+            x = BitBoard.SIZE - 1 - x;
+        }
+        if ((symmetry & TRANSPOSE) != 0) {
+            int swap = x;
+            x = y;
+            y = swap;
+        }
+
+        return BitBoard.square(x, y);
+    }
+
+    /**
+     * Returns the symmetry that undoes a symmetry.  Turning upside down and
+     * mirroring undo themselves and each other's order does not matter,
+     * but on the other side of the diagonal flip each becomes the other.
+     *
+     * @param symmetry the symmetry, from 0 to 7
+     * @return the inverse symmetry
+     */
+    public static int inverse(int symmetry) {
+        if ((symmetry & TRANSPOSE) == 0) {
+            return symmetry;
+        }
+
+        return TRANSPOSE | ((symmetry & FLIP_VERTICAL) != 0 ? MIRROR_HORIZONTAL : 0)
+                | ((symmetry & MIRROR_HORIZONTAL) != 0 ? FLIP_VERTICAL : 0);
+    }
+
+    /**
+     * Finds the symmetry that turns a position into its canonical form.
+     * If several do, as for a symmetric position, the lowest is returned.
+     *
+     * @param player   the pieces of the player to move
+     * @param opponent the pieces of his opponent
+     * @return the symmetry, from 0 to 7
+     */
+    public static int canonical(long player, long opponent) {
+        int best = 0;
+        long bestPlayer = player;
+        long bestOpponent = opponent;
+        for (int symmetry = 1; symmetry < COUNT; ++symmetry) {
+            long turned = apply(player, symmetry);
+            int cmp = Long.compareUnsigned(turned, bestPlayer);
+            if (cmp == 0) {
+                long turnedOpponent = apply(opponent, symmetry);
+                if (Long.compareUnsigned(turnedOpponent, bestOpponent) < 0) {
+                    best = symmetry;
+                    bestOpponent = turnedOpponent;
+                }
+            } else if (cmp < 0) {
+                best = symmetry;
+                bestPlayer = turned;
+                bestOpponent = apply(opponent, symmetry);
+            }
+        }
+
+        return best;
+    }
+
+    /**
+     * Returns the Zobrist hash of a position turned by a symmetry, which is
+     * the same for all of its symmetric forms when the symmetry is the
+     * canonical one.
+     *
+     * @param player   the pieces of the player to move
+     * @param opponent the pieces of his opponent
+     * @param symmetry the symmetry, from 0 to 7
+     * @return the hash of the turned position
+     */
+    public static long hash(long player, long opponent, int symmetry) {
+        return Zobrist.hash(apply(player, symmetry), apply(opponent, symmetry));
+    }
+}
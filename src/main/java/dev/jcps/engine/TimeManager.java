@@ -0,0 +1,90 @@
+package dev.jcps.engine;
+
+/*
+*****************************************************************************
+
+ Desdemona: The Java Othello game.
+ Copyright (C) 2001 Kenneth D. Huffman.
+
+ This program is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 2 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License (gnu.org/copyleft/gpl.html) for more details.
+
+ The author can be reached at www.huffmancoding.com.
+ *****************************************************************************
+ */
+
+/**
+ * This class decides how long the computer may think about a move, given
+ * how much of its clock is left and how far the game has gone.  Othello
+ * always ends when the board is full, so the number of empty squares tells
+ * how many moves are still to be made.
+ * <p>
+ * The opening is played quickly, the middle game gets the most time because
+ * that is where the game is won or lost, and the endgame gets an even share
+ * since its searches are short anyway.  The budget is recomputed from the
+ * clock for every move, so time saved on one move is spent on later ones.
+ *
+ * @author Ken Huffman
+ */
+public final class TimeManager {
+    /**
+     * the part of the clock that is never budgeted, for overhead
+     */
+    private static final double RESERVE = 0.05;
+    /**
+     * the most empty squares for the middle game, more is the opening
+     */
+    private static final int OPENING_EMPTIES = 44;
+    /**
+     * the fewest empty squares for the middle game, fewer is the endgame
+     */
+    private static final int ENDGAME_EMPTIES = 20;
+    /**
+     * the share of an even split given to an opening move
+     */
+    private static final double OPENING_WEIGHT = 0.5;
+    /**
+     * the share of an even split given to a middle game move
+     */
+    private static final double MIDDLE_GAME_WEIGHT = 1.5;
+    /**
+     * the shortest budget, enough to always complete the first level
+     */
+    private static final long MIN_MILLIS = 10;
+
+    /**
+     * Prevents instantiation, everything is static.
+     */
+    private TimeManager() {
+    }
+
+    /**
+     * Returns the time to spend on the next move.
+     *
+     * @param remainingMillis the time left on the player's clock
+     * @param empties         the number of empty squares on the board
+     * @return the budget in milliseconds, never more than a third of the
+     * usable clock
+     */
+    public static long budget(long remainingMillis, int empties) {
+        long usable = (long) (remainingMillis * (1.0 - RESERVE));
+        int movesLeft = Math.max(1, (empties + 1) / 2);
+
+        double weight = 1.0;
+        if (empties > OPENING_EMPTIES) {
+            weight = OPENING_WEIGHT;
+        } else if (empties > ENDGAME_EMPTIES) {
+            weight = MIDDLE_GAME_WEIGHT;
+        }
+
+        long budget = (long) (usable * weight / movesLeft);
+        return Math.max(MIN_MILLIS, Math.min(budget, usable / 3));
+    }
+}
@@ -0,0 +1,424 @@
+package dev.jcps.engine;
+
+/*
+*****************************************************************************
+
+ Desdemona: The Java Othello game.
+ Copyright (C) 2001 Kenneth D. Huffman.
+
+ This program is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 2 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License (gnu.org/copyleft/gpl.html) for more details.
+
+ The author can be reached at www.huffmancoding.com.
+ *****************************************************************************
+ */
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * This class fits the weights of the pattern evaluator to the results of
+ * games.  Every position of a finished game is labeled with the final disc
+ * difference for the player to move, and the weights are moved toward
+ * predicting it by stochastic gradient descent on the squared error.
+ * <p>
+ * The games are streamed from disk one line at a time, once per epoch, so
+ * memory does not grow with the number of games: the reading thread only
+ * replays the games into a fixed number of reusable batches of positions
+ * and labels, and worker threads take them in turn, finding each
+ * position's features and training on it.  The workers share the weights
+ * without locking; each updates only the few weights its batch's positions
+ * use, so clashes are rare and harmless.
+ * <p>
+ * A games file has one game per line as moves like "f5d6c3", with passes
+ * left out, as written by BookBuilder's import and the self-play runner.
+ * Games that do not end are skipped.  Run it from the command line:
+ * <pre>
+ *     java -cp desdemona.jar dev.jcps.engine.Trainer games.txt desdemona.weights
+ *             [-epochs n] [-rate r] [-batch n] [-threads n] [-init weights]
+ * </pre>
+ *
+ * @author Ken Huffman
+ */
+public final class Trainer {
+    /**
+     * the score of one disc of final disc difference
+     */
+    private static final int DISC = PatternEvaluator.DISC;
+    /**
+     * the number of batches filled or being trained at any time, for each
+     * worker thread
+     */
+    private static final int BATCHES_PER_THREAD = 4;
+
+    /**
+     * the weights being fitted, by phase
+     */
+    private final float[][] itsWeights = new float[PatternEvaluator.PHASES][PatternEvaluator.PHASE_SIZE];
+    /**
+     * the number of worker threads
+     */
+    private final int itsThreads;
+    /**
+     * the number of positions in each batch
+     */
+    private final int itsBatchSize;
+    /**
+     * the learning rate
+     */
+    private final float itsRate;
+    /**
+     * the sum of the squared errors, in discs, of the current epoch
+     */
+    private double itsSquaredError;
+    /**
+     * the number of positions trained in the current epoch
+     */
+    private long itsPositions;
+
+    /**
+     * Constructor starts with all weights zero.
+     *
+     * @param threads   the number of worker threads
+     * @param batchSize the number of positions in each batch
+     * @param rate      the learning rate, about 0.01
+     */
+    public Trainer(int threads, int batchSize, double rate) {
+        itsThreads = Math.max(1, threads);
+        itsBatchSize = batchSize;
+        itsRate = (float) rate;
+    }
+
+    /**
+     * Starts from the weights of an evaluator instead of zero.
+     *
+     * @param evaluator the weights to start from
+     */
+    public void initialize(PatternEvaluator evaluator) {
+        for (int phase = 0; phase < PatternEvaluator.PHASES; ++phase) {
+            for (int i = 0; i < PatternEvaluator.PHASE_SIZE; ++i) {
+                itsWeights[phase][i] = evaluator.getWeight(phase, i);
+            }
+        }
+    }
+
+    /**
+     * Returns an evaluator with the fitted weights, rounded and made
+     * symmetric.
+     *
+     * @return the evaluator
+     */
+    public PatternEvaluator toEvaluator() {
+        PatternEvaluator evaluator = new PatternEvaluator();
+        for (int phase = 0; phase < PatternEvaluator.PHASES; ++phase) {
+            for (int i = 0; i < PatternEvaluator.PHASE_SIZE; ++i) {
+                evaluator.setWeight(phase, i, Math.round(itsWeights[phase][i]));
+            }
+        }
+        evaluator.symmetrize();
+
+        return evaluator;
+    }
+
+    /**
+     * Trains on every position of a games file once.
+     *
+     * @param games the games file
+     * @return the root mean squared error of the predictions, in discs,
+     * before each batch was trained
+     * @throws IOException if the file cannot be read
+     * @throws InterruptedException if interrupted while waiting for the
+     *                              workers
+     */
+    public double train(Path games) throws IOException, InterruptedException {
+        itsSquaredError = 0;
+        itsPositions = 0;
+
+        BlockingQueue<Batch> empty = new ArrayBlockingQueue<>(itsThreads * BATCHES_PER_THREAD);
+        BlockingQueue<Batch> full = new ArrayBlockingQueue<>(itsThreads * BATCHES_PER_THREAD);
+        for (int i = 0; i < itsThreads * BATCHES_PER_THREAD; ++i) {
+            empty.add(new Batch(itsBatchSize));
+        }
+
+        Thread[] workers = new Thread[itsThreads];
+        for (int i = 0; i < itsThreads; ++i) {
+            workers[i] = new Thread(() -> work(full, empty), "Trainer " + i);
+            workers[i].start();
+        }
+
+        try (BufferedReader reader = Files.newBufferedReader(games)) {
+            Batch batch = empty.take();
+            long[] players = new long[BitBoard.SQUARES];
+            long[] opponents = new long[BitBoard.SQUARES];
+            int[] scores = new int[BitBoard.SQUARES];
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                int count = replay(line, players, opponents, scores);
+                for (int i = 0; i < count; ++i) {
+                    batch.add(players[i], opponents[i], scores[i]);
+                    if (batch.itsCount == itsBatchSize) {
+                        full.put(batch);
+                        batch = empty.take();
+                    }
+                }
+            }
+            full.put(batch);
+        } finally {
+            for (int i = 0; i < itsThreads; ++i) {
+                Batch end = new Batch(0);
+                end.itsCount = -1;
+                full.put(end);
+            }
+            for (Thread worker : workers) {
+                worker.join();
+            }
+        }
+
+        return itsPositions > 0 ? Math.sqrt(itsSquaredError / itsPositions) : 0;
+    }
+
+    /**
+     * Trains the batches put in the full queue until one with a count of -1
+     * comes, returning each to the empty queue.
+     *
+     * @param full  the batches ready to train
+     * @param empty the batches ready to fill
+     */
+    private void work(BlockingQueue<Batch> full, BlockingQueue<Batch> empty) {
+        int[] indexes = new int[PatternEvaluator.PATTERNS];
+        try {
+            for (Batch batch = full.take(); batch.itsCount >= 0; batch = full.take()) {
+                double squaredError = train(batch, indexes);
+                synchronized (this) {
+                    itsSquaredError += squaredError;
+                    itsPositions += batch.itsCount;
+                }
+                batch.itsCount = 0;
+                empty.put(batch);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Takes a gradient step for each position of a batch in turn.  Each
+     * step is divided by the sum of the position's squared feature values,
+     * so positions with big mobility or stability differences do not
+     * overshoot, and the weights shared by every position, such as the
+     * bias, settle instead of moving by the sum of a whole batch of steps.
+     *
+     * @param batch   the positions
+     * @param indexes scratch space for one position's pattern feature
+     *                indexes
+     * @return the sum of the squared errors, in discs, before each step
+     */
+    private double train(Batch batch, int[] indexes) {
+        int patterns = PatternEvaluator.PATTERNS;
+        double squaredError = 0;
+        for (int j = 0; j < batch.itsCount; ++j) {
+            long player = batch.itsPlayers[j];
+            long opponent = batch.itsOpponents[j];
+            float[] weights = itsWeights[PatternEvaluator.features(player, opponent, indexes)];
+            int mobility = PatternEvaluator.mobility(player, opponent);
+            int potential = PatternEvaluator.potentialMobility(player, opponent);
+            int stability = PatternEvaluator.stability(player, opponent);
+            float prediction = weights[PatternEvaluator.BIAS]
+                    + weights[PatternEvaluator.MOBILITY] * mobility
+                    + weights[PatternEvaluator.POTENTIAL_MOBILITY] * potential
+                    + weights[PatternEvaluator.STABILITY] * stability;
+            for (int k = 0; k < patterns; ++k) {
+                prediction += weights[indexes[k]];
+            }
+
+            float error = batch.itsTargets[j] - prediction;
+            squaredError += (double) error * error / (DISC * DISC);
+            float step = itsRate * error / (patterns + 1 + mobility * mobility
+                    + potential * potential + stability * stability);
+            weights[PatternEvaluator.BIAS] += step;
+            weights[PatternEvaluator.MOBILITY] += step * mobility;
+            weights[PatternEvaluator.POTENTIAL_MOBILITY] += step * potential;
+            weights[PatternEvaluator.STABILITY] += step * stability;
+            for (int k = 0; k < patterns; ++k) {
+                weights[indexes[k]] += step;
+            }
+        }
+
+        return squaredError;
+    }
+
+    /**
+     * Plays a game through and labels each position where a move was made
+     * with the final disc difference for its player to move, the empty
+     * squares going to the winner.
+     *
+     * @param line      the moves of the game
+     * @param players   filled with the pieces of the player to move
+     * @param opponents filled with the pieces of his opponent
+     * @param scores    filled with the labels
+     * @return the number of positions, 0 if the game has a bad move or
+     * does not end
+     */
+    static int replay(String line, long[] players, long[] opponents, int[] scores) {
+        String moves = line.replaceAll("\\s", "").toLowerCase();
+        if (moves.isEmpty() || moves.startsWith("#")) {
+            return 0;
+        }
+
+        long me = Position.START.getPlayer();
+        long opponent = Position.START.getOpponent();
+        boolean black = true;
+        boolean[] blackToMove = new boolean[BitBoard.SQUARES];
+        int count = 0;
+        for (int i = 0; i + 1 < moves.length(); i += 2) {
+            if (BitBoard.moves(me, opponent) == 0) {
+                long swap = me;
+                me = opponent;
+                opponent = swap;
+                black = !black;
+            }
+
+            int x = moves.charAt(i) - 'a';
+            int y = moves.charAt(i + 1) - '1';
+            if (x < 0 || x >= BitBoard.SIZE || y < 0 || y >= BitBoard.SIZE || count == BitBoard.SQUARES) {
+                return 0;
+            }
+            int sq = BitBoard.square(x, y);
+            long flipped = BitBoard.flips(me, opponent, sq);
+            if (flipped == 0 || ((me | opponent) & (1L << sq)) != 0) {
+                return 0;
+            }
+
+            players[count] = me;
+            opponents[count] = opponent;
+            blackToMove[count++] = black;
+            long next = opponent & ~flipped;
+            opponent = me | flipped | (1L << sq);
+            me = next;
+            black = !black;
+        }
+        if (BitBoard.moves(me, opponent) != 0 || BitBoard.moves(opponent, me) != 0) {
+            return 0; // the game did not end
+        }
+
+        int mine = BitBoard.count(me);
+        int his = BitBoard.count(opponent);
+        int difference = mine - his;
+        if (difference != 0) {
+            difference += Integer.signum(difference) * (BitBoard.SQUARES - mine - his);
+        }
+        int blackDifference = black ? difference : -difference;
+        for (int i = 0; i < count; ++i) {
+            scores[i] = blackToMove[i] ? blackDifference : -blackDifference;
+        }
+
+        return count;
+    }
+
+    /**
+     * Trains weights from the command line.
+     *
+     * @param args the games file, the weights file to write, then options
+     * @throws IOException if a file cannot be read or written
+     * @throws InterruptedException if interrupted while training
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 2) {
+            System.err.println("Usage: Trainer games weights [-epochs n] [-rate r] [-batch n]"
+                    + " [-threads n] [-init weights]");
+            System.exit(1);
+        }
+
+        Path games = Path.of(args[0]);
+        Path weights = Path.of(args[1]);
+        int epochs = 10;
+        double rate = 0.01;
+        int batchSize = 4096;
+        int threads = Runtime.getRuntime().availableProcessors();
+        Path initial = null;
+        for (int i = 2; i < args.length; i += 2) {
+            if (i + 1 == args.length) {
+                throw new IllegalArgumentException("Missing value for " + args[i]);
+            }
+            switch (args[i]) {
+                case "-epochs" -> epochs = Integer.parseInt(args[i + 1]);
+                case "-rate" -> rate = Double.parseDouble(args[i + 1]);
+                case "-batch" -> batchSize = Integer.parseInt(args[i + 1]);
+                case "-threads" -> threads = Integer.parseInt(args[i + 1]);
+                case "-init" -> initial = Path.of(args[i + 1]);
+                default -> throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+
+        Trainer trainer = new Trainer(threads, batchSize, rate);
+        if (initial != null) {
+            trainer.initialize(PatternEvaluator.load(initial));
+        }
+        for (int epoch = 1; epoch <= epochs; ++epoch) {
+            long startTime = System.nanoTime();
+            double error = trainer.train(games);
+            System.out.printf("epoch %d: %,d positions, error %.2f discs, %,d ms%n", epoch,
+                    trainer.itsPositions, error, (System.nanoTime() - startTime) / 1000000L);
+        }
+        trainer.toEvaluator().save(weights);
+    }
+
+    /**
+     * This class holds the positions and labels of a batch, and is reused
+     * batch after batch.  The features are found by the worker training it,
+     * so the reading thread does no more than replay the games.
+     */
+    private static final class Batch {
+        /**
+         * the number of positions, or -1 to tell a worker to stop
+         */
+        private int itsCount;
+        /**
+         * the pieces of the player to move in each position
+         */
+        private final long[] itsPlayers;
+        /**
+         * the pieces of his opponent in each position
+         */
+        private final long[] itsOpponents;
+        /**
+         * the label of each position, in search units
+         */
+        private final int[] itsTargets;
+
+        /**
+         * Constructor.
+         *
+         * @param size the most positions
+         */
+        Batch(int size) {
+            itsPlayers = new long[size];
+            itsOpponents = new long[size];
+            itsTargets = new int[size];
+        }
+
+        /**
+         * Adds a position.
+         *
+         * @param player   the pieces of the player to move
+         * @param opponent the pieces of his opponent
+         * @param score    the final disc difference for the player to move
+         */
+        void add(long player, long opponent, int score) {
+            int j = itsCount++;
+            itsPlayers[j] = player;
+            itsOpponents[j] = opponent;
+            itsTargets[j] = score * DISC;
+        }
+    }
+}
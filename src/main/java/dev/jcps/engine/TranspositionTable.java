@@ -0,0 +1,365 @@
+package dev.jcps.engine;
+
+/*
+*****************************************************************************
+
+ Desdemona: The Java Othello game.
+ Copyright (C) 2001 Kenneth D. Huffman.
+
+ This program is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 2 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License (gnu.org/copyleft/gpl.html) for more details.
+
+ The author can be reached at www.huffmancoding.com.
+ *****************************************************************************
+ */
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * This class implements a fixed-size transposition table of search results
+ * keyed by Zobrist hash code.  Each entry remembers the depth searched, the
+ * kind of bound the score is, the score and the best move found, packed into
+ * a single long next to its key, so the table holds no objects at all.
+ * <p>
+ * The key is stored exclusive-or'ed with the data, so an entry that was torn
+ * by two threads writing it at once simply fails to match when probed.
+ * Entries from an earlier search are replaced first, which lets the table be
+ * kept for a whole game.  The engine starts a new search once for each move
+ * and each time it ponders, and the age of an entry has 16 bits, so an old
+ * entry only passes for a current one 65536 of those later.
+ * <p>
+ * A table can also be kept in a memory-mapped file, so what one run learns
+ * is there for the next without being loaded: the operating system reads
+ * the pages in as they are probed and writes them out as they change.  The
+ * file holds a fixed number of entries, so it never grows, and the age of
+ * the last search is kept with them, so the entries of earlier runs are the
+ * first to be replaced.  A file made for a different size or a different
+ * evaluation is started over.
+ *
+ * @author Ken Huffman
+ */
+public final class TranspositionTable {
+    /**
+     * the bound type of a score that is the exact value of the position
+     */
+    public static final int EXACT = 0;
+    /**
+     * the bound type of a score that is at most the value of the position
+     */
+    public static final int LOWER = 1;
+    /**
+     * the bound type of a score that is at least the value of the position
+     */
+    public static final int UPPER = 2;
+    /**
+     * the probe result when the position is not in the table
+     */
+    public static final long MISS = 0;
+    /**
+     * the stored move when no move was found, such as a pass
+     */
+    private static final int NO_MOVE = 0x7F;
+    /**
+     * the bit that marks data as a real entry so it is never MISS
+     */
+    private static final long VALID = 1L << 31;
+    /**
+     * the bits of an entry's data holding the age of its search
+     */
+    private static final int GENERATION_SHIFT = 48;
+    /**
+     * the number of bytes taken by one entry
+     */
+    private static final int ENTRY_BYTES = 2 * Long.BYTES;
+    /**
+     * the first eight bytes of a table file
+     */
+    private static final byte[] MAGIC = "DSDHASH2".getBytes(StandardCharsets.US_ASCII);
+    /**
+     * the size of a table file's header: the magic, the number of entries,
+     * the evaluation tag and the generation
+     */
+    private static final int HEADER_BYTES = 32;
+    /**
+     * the most entries in a table file, which is mapped as one buffer
+     */
+    private static final long MAX_FILE_ENTRIES = 1L << 26;
+    /**
+     * the hash codes exclusive-or'ed with their data, or null if the
+     * entries are in a file
+     */
+    private final long[] itsKeys;
+    /**
+     * the packed depth, bound, score, move and generation of each entry,
+     * or null if the entries are in a file
+     */
+    private final long[] itsData;
+    /**
+     * the mapped table file, or null if the entries are in memory
+     */
+    private final MappedByteBuffer itsFile;
+    /**
+     * the entries of the mapped file, each a key then its data, or null if
+     * the entries are in memory
+     */
+    private final LongBuffer itsEntries;
+    /**
+     * the mask turning a hash code into an index
+     */
+    private final int itsMask;
+    /**
+     * the age of the current search, kept in the top 16 bits of each entry
+     */
+    private int itsGeneration;
+
+    /**
+     * Constructor allocates the largest power of two entries that fits in
+     * the given size.
+     *
+     * @param megabytes the size of the table in megabytes, at least 1
+     */
+    public TranspositionTable(int megabytes) {
+        if (megabytes < 1) {
+            throw new IllegalArgumentException("table size must be at least 1 MB: " + megabytes);
+        }
+
+        long entries = Long.highestOneBit(((long) megabytes << 20) / ENTRY_BYTES);
+        entries = Math.min(entries, 1 << 30);
+        itsKeys = new long[(int) entries];
+        itsData = new long[(int) entries];
+        itsFile = null;
+        itsEntries = null;
+        itsMask = (int) entries - 1;
+    }
+
+    /**
+     * Constructor for a table kept in a mapped file.
+     *
+     * @param file    the mapped file, header and all
+     * @param entries the number of entries, a power of two
+     */
+    private TranspositionTable(MappedByteBuffer file, int entries) {
+        itsKeys = null;
+        itsData = null;
+        itsFile = file;
+        itsEntries = file.slice(HEADER_BYTES, entries * ENTRY_BYTES)
+                .order(ByteOrder.nativeOrder()).asLongBuffer();
+        itsMask = entries - 1;
+        itsGeneration = file.getInt(24) & 0xFFFF;
+    }
+
+    /**
+     * Maps a table file, creating it if it does not exist.  It holds the
+     * largest power of two entries that fits in the given size.  If the
+     * file was made for another size or with another evaluation tag, its
+     * entries are forgotten.  The searches of one process may share the
+     * table, and so may several processes.
+     *
+     * @param file      the table file
+     * @param megabytes the size of the table in megabytes, at least 1
+     * @param tag       a number that differs for each way of evaluating
+     *                  positions, since the scores depend on it
+     * @return the table
+     * @throws IOException if the file cannot be mapped
+     */
+    public static TranspositionTable map(Path file, int megabytes, long tag) throws IOException {
+        if (megabytes < 1) {
+            throw new IllegalArgumentException("table size must be at least 1 MB: " + megabytes);
+        }
+
+        long entries = Long.highestOneBit(((long) megabytes << 20) / ENTRY_BYTES);
+        entries = Math.min(entries, MAX_FILE_ENTRIES);
+        long size = HEADER_BYTES + entries * ENTRY_BYTES;
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            boolean fits = channel.size() == size;
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            byte[] magic = new byte[MAGIC.length];
+            buffer.get(0, magic);
+            if (!fits || !Arrays.equals(magic, MAGIC) || buffer.getLong(8) != entries
+                    || buffer.getLong(16) != tag) {
+                if (channel.size() > size) {
+                    channel.truncate(size);
+                }
+                buffer.put(0, MAGIC);
+                buffer.putLong(8, entries);
+                buffer.putLong(16, tag);
+                buffer.putInt(24, 0);
+                for (int i = HEADER_BYTES; i < size; i += Long.BYTES) {
+                    buffer.putLong(i, 0);
+                }
+            }
+        }
+
+        return new TranspositionTable(buffer, (int) entries);
+    }
+
+    /**
+     * Starts a new search so the entries of earlier searches age.  It is
+     * meant for each new position searched, not for each deepening of the
+     * same one.
+     */
+    public void newSearch() {
+        itsGeneration = (itsGeneration + 1) & 0xFFFF;
+        if (itsFile != null) {
+            itsFile.putInt(24, itsGeneration);
+        }
+    }
+
+    /**
+     * Determines if the table is kept in a file.
+     *
+     * @return true, if it was made by map
+     */
+    public boolean isMapped() {
+        return itsFile != null;
+    }
+
+    /**
+     * Writes the changes to a mapped table out to its file now, rather
+     * than whenever the operating system gets to them.
+     */
+    public void force() {
+        if (itsFile != null) {
+            itsFile.force();
+        }
+    }
+
+    /**
+     * Forgets every entry.
+     */
+    public void clear() {
+        if (itsFile != null) {
+            for (int i = 0; i < 2 * (itsMask + 1); ++i) {
+                itsEntries.put(i, 0);
+            }
+            return;
+        }
+
+        Arrays.fill(itsKeys, 0);
+        Arrays.fill(itsData, 0);
+    }
+
+    /**
+     * Looks up a position.
+     *
+     * @param hash the Zobrist hash of the position
+     * @return the packed entry to be read with the static accessors, or MISS
+     */
+    public long probe(long hash) {
+        int index = (int) hash & itsMask;
+        long key;
+        long data;
+        if (itsEntries == null) {
+            key = itsKeys[index];
+            data = itsData[index];
+        } else {
+            key = itsEntries.get(2 * index);
+            data = itsEntries.get(2 * index + 1);
+        }
+        if ((key ^ data) == hash && data != MISS) {
+            return data;
+        }
+
+        return MISS;
+    }
+
+    /**
+     * Records the result of searching a position.  An entry for a different
+     * position is only replaced if it is from an earlier search or was not
+     * searched deeper.
+     *
+     * @param hash  the Zobrist hash of the position
+     * @param depth the number of plies searched below the position
+     * @param bound EXACT, LOWER or UPPER
+     * @param score the score found
+     * @param move  the bit number of the best move, or -1 if none
+     */
+    public void store(long hash, int depth, int bound, int score, int move) {
+        int index = (int) hash & itsMask;
+        long oldKey;
+        long old;
+        if (itsEntries == null) {
+            oldKey = itsKeys[index];
+            old = itsData[index];
+        } else {
+            oldKey = itsEntries.get(2 * index);
+            old = itsEntries.get(2 * index + 1);
+        }
+        if (old != MISS && (oldKey ^ old) != hash
+                && (int) (old >>> GENERATION_SHIFT) == itsGeneration && depth(old) > depth) {
+            return;
+        }
+
+        long data = VALID
+                | ((long) (score & 0xFFFF) << 32)
+                | ((long) ((move < 0 ? NO_MOVE : move) & 0x7F) << 24)
+                | ((long) (bound & 0x3) << 22)
+                | ((long) (Math.max(0, Math.min(depth, 0x3FFF))) << 8)
+                | ((long) itsGeneration << GENERATION_SHIFT);
+        if (itsEntries == null) {
+            itsData[index] = data;
+            itsKeys[index] = hash ^ data;
+        } else {
+            itsEntries.put(2 * index + 1, data);
+            itsEntries.put(2 * index, hash ^ data);
+        }
+    }
+
+    /**
+     * Returns the depth of an entry.
+     *
+     * @param entry a packed entry returned by probe
+     * @return the number of plies searched below the position
+     */
+    public static int depth(long entry) {
+        return (int) (entry >>> 8) & 0x3FFF;
+    }
+
+    /**
+     * Returns the bound type of an entry.
+     *
+     * @param entry a packed entry returned by probe
+     * @return EXACT, LOWER or UPPER
+     */
+    public static int bound(long entry) {
+        return (int) (entry >>> 22) & 0x3;
+    }
+
+    /**
+     * Returns the best move of an entry.
+     *
+     * @param entry a packed entry returned by probe
+     * @return the bit number of the move, or -1 if none
+     */
+    public static int move(long entry) {
+        int move = (int) (entry >>> 24) & 0x7F;
+        return move == NO_MOVE ? -1 : move;
+    }
+
+    /**
+     * Returns the score of an entry.
+     *
+     * @param entry a packed entry returned by probe
+     * @return the score, sign extended
+     */
+    public static int score(long entry) {
+        return (short) (entry >>> 32);
+    }
+}
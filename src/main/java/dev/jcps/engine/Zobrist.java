@@ -0,0 +1,95 @@
+package dev.jcps.engine;
+
+/*
+*****************************************************************************
+
+ Desdemona: The Java Othello game.
+ Copyright (C) 2001 Kenneth D. Huffman.
+
+ This program is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 2 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License (gnu.org/copyleft/gpl.html) for more details.
+
+ The author can be reached at www.huffmancoding.com.
+ *****************************************************************************
+ */
+
+import java.util.SplittableRandom;
+
+/**
+ * This class computes Zobrist hash codes for BitBoard positions.  Every
+ * square has one random key for the player to move and one for his opponent,
+ * and a position hashes to the exclusive-or of the keys of its pieces.
+ * <p>
+ * Rather than walking all of the pieces, the keys are pre-combined for every
+ * possible content of each row, so a hash takes sixteen table lookups and
+ * gives exactly the same value as the square by square sum.
+ *
+ * @author Ken Huffman
+ */
+public final class Zobrist {
+    /**
+     * the seed for the keys, fixed so hash codes are the same on every run
+     */
+    private static final long SEED = 0x4465736465_6D6F6EL;
+    /**
+     * combined player keys, indexed by row and then by the row's 8 bits
+     */
+    private static final long[][] PLAYER_ROWS = new long[BitBoard.SIZE][256];
+    /**
+     * combined opponent keys, indexed by row and then by the row's 8 bits
+     */
+    private static final long[][] OPPONENT_ROWS = new long[BitBoard.SIZE][256];
+
+    static {
+        SplittableRandom random = new SplittableRandom(SEED);
+        long[] playerKeys = new long[BitBoard.SQUARES];
+        long[] opponentKeys = new long[BitBoard.SQUARES];
+        for (int sq = 0; sq < BitBoard.SQUARES; ++sq) {
+            playerKeys[sq] = random.nextLong();
+            opponentKeys[sq] = random.nextLong();
+        }
+
+        for (int row = 0; row < BitBoard.SIZE; ++row) {
+            for (int bits = 0; bits < 256; ++bits) {
+                for (int x = 0; x < BitBoard.SIZE; ++x) {
+                    if ((bits & (1 << x)) != 0) {
+                        int sq = BitBoard.square(x, row);
+                        PLAYER_ROWS[row][bits] ^= playerKeys[sq];
+                        OPPONENT_ROWS[row][bits] ^= opponentKeys[sq];
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Prevents instantiation, everything is static.
+     */
+    private Zobrist() {
+    }
+
+    /**
+     * Returns the hash code of a position.
+     *
+     * @param player   the pieces of the player to move
+     * @param opponent the pieces of his opponent
+     * @return the 64-bit Zobrist hash
+     */
+    public static long hash(long player, long opponent) {
+        long hash = 0;
+        for (int row = 0; row < BitBoard.SIZE; ++row) {
+            int shift = row * BitBoard.SIZE;
+            hash ^= PLAYER_ROWS[row][(int) (player >>> shift) & 0xFF]
+                    ^ OPPONENT_ROWS[row][(int) (opponent >>> shift) & 0xFF];
+        }
+
+        return hash;
+    }
+}